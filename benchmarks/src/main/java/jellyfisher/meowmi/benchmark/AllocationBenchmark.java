@@ -0,0 +1,68 @@
+package jellyfisher.meowmi.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import jellyfisher.meowmi.XmlToJsonConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory allocated by one conversion of a 1MB document of every shape, to the JSON tree and streamed.  The figure is the
+ * "gc.alloc.rate.norm" of the gc profiler, in bytes per conversion:
+ *
+ *     java -jar target/benchmarks.jar AllocationBenchmark -prof gc
+ *
+ * Only convert(InputStream) and convert(InputStream, Writer) are used, so the benchmark also builds against older versions
+ * of the converter and their allocations can be compared, i.e. before and after the tree and emitter kept their
+ * bookkeeping in slot arrays and reused frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class AllocationBenchmark {
+
+	@Param({ "WIDE_SIBLINGS", "DEEP_NESTING", "ATTRIBUTE_HEAVY", "MIXED_CONTENT", "LARGE_TEXT" })
+	public DocumentShape shape;
+
+	@Param({ "1MB" })
+	public String size;
+
+	private byte[] document;
+
+	// Shared by the conversions, so its per-thread parser state is reused as in a long running service
+	private XmlToJsonConverter converter;
+
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		this.document = this.shape.generate(DocumentShape.parseSize(this.size)).getBytes("UTF-8");
+		this.converter = new XmlToJsonConverter();
+	}
+
+	@Benchmark
+	public String tree() throws Exception {
+		return this.converter.convert(new ByteArrayInputStream(this.document));
+	}
+
+	@Benchmark
+	public long streaming() throws Exception {
+		ConversionBenchmark.CountingWriter writer = new ConversionBenchmark.CountingWriter();
+		this.converter.convert(new ByteArrayInputStream(this.document), writer);
+
+		return writer.count;
+	}
+}
@@ -0,0 +1,128 @@
+package jellyfisher.meowmi.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import jellyfisher.meowmi.XmlToJsonConverter;
+import jellyfisher.meowmi.XmlToJsonOutputString;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the XML to JSON conversion for every document shape and size.  Besides operations per second, the
+ * "bytes" counter reports the XML bytes converted per second.  Run with "-prof gc" to get the allocation rate.
+ *
+ *     java -jar target/benchmarks.jar ConversionBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+	@Param({ "WIDE_SIBLINGS", "DEEP_NESTING", "ATTRIBUTE_HEAVY", "MIXED_CONTENT", "LARGE_TEXT" })
+	public DocumentShape shape;
+
+	@Param({ "1KB", "1MB", "100MB" })
+	public String size;
+
+	private byte[] document;
+
+	private XmlToJsonConverter converter;
+
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		this.document = this.shape.generate(DocumentShape.parseSize(this.size)).getBytes("UTF-8");
+		this.converter = new XmlToJsonConverter();
+	}
+
+	/**
+	 * XML bytes converted, reported by JMH as bytes per second
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+		public long bytes;
+	}
+
+	@Benchmark
+	public String parseToString(Bytes counter) throws Exception {
+		XmlToJsonOutputString converter = new XmlToJsonOutputString(new ByteArrayInputStream(this.document));
+		String json = converter.parse();
+		converter.close();
+
+		counter.bytes += this.document.length;
+		return json;
+	}
+
+	@Benchmark
+	public long parseToWriter(Bytes counter) throws Exception {
+		CountingWriter writer = new CountingWriter();
+
+		XmlToJsonOutputString converter = new XmlToJsonOutputString(new ByteArrayInputStream(this.document));
+		converter.parse(writer);
+		converter.close();
+
+		counter.bytes += this.document.length;
+		return writer.count;
+	}
+
+	@Benchmark
+	public String parseToStringEventReader(Bytes counter) throws Exception {
+		XmlToJsonOutputString converter = new XmlToJsonOutputString(new ByteArrayInputStream(this.document), true);
+		String json = converter.parse();
+		converter.close();
+
+		counter.bytes += this.document.length;
+		return json;
+	}
+
+	@Benchmark
+	public String sharedConverter(Bytes counter) throws Exception {
+		String json = this.converter.convert(new ByteArrayInputStream(this.document));
+
+		counter.bytes += this.document.length;
+		return json;
+	}
+
+	/**
+	 * Writer that only counts the characters, so the benchmark measures the conversion and not the output
+	 */
+	static class CountingWriter extends Writer {
+
+		long count;
+
+		public void write(char[] buffer, int offset, int length) {
+			this.count += length;
+		}
+
+		public void write(int c) {
+			this.count++;
+		}
+
+		public void write(String value, int offset, int length) {
+			this.count += length;
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package jellyfisher.meowmi.benchmark;
+
+/**
+ * XML document shapes that stress different parts of the converter.  Each shape repeats a small block of XML until the
+ * document reaches the requested size, so the same shape can be measured at any size.
+ */
+public enum DocumentShape {
+
+	// <rows><row>...</row> x N</rows>, the repeated element path (array promotion)
+	WIDE_SIBLINGS {
+		void appendBlock(StringBuilder xml, int index, long size) {
+			xml.append("<row><id>").append(index).append("</id><name>row ").append(index)
+				.append("</name><status>active</status></row>");
+		}
+	},
+
+	// 64 levels of nested elements per block, the element stack walk
+	DEEP_NESTING {
+		void appendBlock(StringBuilder xml, int index, long size) {
+			for (int level = 0; level < 64; level++) xml.append("<level").append(level).append('>');
+			xml.append(index);
+			for (int level = 63; level >= 0; level--) xml.append("</level").append(level).append('>');
+		}
+	},
+
+	// Elements carrying 16 attributes each, the attribute handling path
+	ATTRIBUTE_HEAVY {
+		void appendBlock(StringBuilder xml, int index, long size) {
+			xml.append("<item");
+			for (int i = 0; i < 16; i++) xml.append(" attr").append(i).append("=\"value ").append(index).append('"');
+			xml.append("/>");
+		}
+	},
+
+	// Data strings mixed with inner elements, the "#text" path
+	MIXED_CONTENT {
+		void appendBlock(StringBuilder xml, int index, long size) {
+			xml.append("<p>Paragraph ").append(index).append(" has <b>bold</b> and <i>italic</i> text, ")
+				.append("<a href=\"#").append(index).append("\">a link</a> and a tail.</p>");
+		}
+	},
+
+	// Data strings of up to 64KB, the data string path
+	LARGE_TEXT {
+		void appendBlock(StringBuilder xml, int index, long size) {
+			xml.append("<blob id=\"").append(index).append("\">");
+			for (int i = 0; i < Math.min(1024, size / 64); i++) xml.append("QUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVphYmNkZWZnaGlqa2xtbm9wcXJzdHV2");
+			xml.append("</blob>");
+		}
+	};
+
+	/**
+	 * Append one block of this shape
+	 *
+	 * @param xml
+	 * The document being generated
+	 *
+	 * @param index
+	 * Sequence number of the block, so blocks are not all identical
+	 *
+	 * @param size
+	 * Requested document size, so a block never makes a small document much bigger than requested
+	 */
+	abstract void appendBlock(StringBuilder xml, int index, long size);
+
+	/**
+	 * Generate a document of this shape.  Blocks are added until the document reaches the requested size; the document
+	 * always has at least one block
+	 *
+	 * @param size
+	 * Approximate document size in bytes
+	 *
+	 * @return
+	 * The XML document
+	 */
+	public String generate(long size) {
+		StringBuilder xml = new StringBuilder((int) Math.min(size + 1024, Integer.MAX_VALUE - 8));
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><document>");
+
+		int index = 0;
+		do {
+			appendBlock(xml, index++, size);
+		} while (xml.length() < size);
+
+		return xml.append("</document>").toString();
+	}
+
+	/**
+	 * Parse a size such as "1KB", "1MB" or "100MB" into bytes
+	 *
+	 * @param size
+	 * Size with a KB or MB suffix, or a plain number of bytes
+	 *
+	 * @return
+	 * Number of bytes
+	 */
+	public static long parseSize(String size) {
+		if (size.endsWith("KB")) return Long.parseLong(size.substring(0, size.length() - 2)) * 1024;
+		if (size.endsWith("MB")) return Long.parseLong(size.substring(0, size.length() - 2)) * 1024 * 1024;
+		return Long.parseLong(size);
+	}
+}
@@ -0,0 +1,237 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the JSON value of a converted document as CBOR (RFC 7049) into an output stream.  CBOR has the same data model as
+ * JSON, but keys and strings are length prefixed UTF-8 and numbers are binary, so the output is smaller than the JSON text
+ * and the receiver doesn't scan for quotes, escapes or digits.
+ *
+ * Objects and arrays are written with their definite size, taken from the JsonElement tree.  Numbers without a fraction or
+ * an exponent which fit in 64 bits are written as integers, any other number as a double.  The bytes go through a buffer
+ * reused by all the conversions of a thread.
+ */
+class CborSink implements JsonSink {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	// Major types, in the top 3 bits of the initial byte
+	private static final int UNSIGNED = 0x00;
+	private static final int NEGATIVE = 0x20;
+	private static final int TEXT = 0x60;
+	private static final int ARRAY = 0x80;
+	private static final int MAP = 0xa0;
+
+	private static final int FALSE = 0xf4;
+	private static final int TRUE = 0xf5;
+	private static final int NULL = 0xf6;
+	private static final int DOUBLE = 0xfb;
+
+	private OutputStream outputStream;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+
+	/**
+	 * Start writing to another output stream.  Anything left in the buffer is dropped
+	 *
+	 * @param outputStream
+	 * The output stream where the CBOR bytes are written to, or null to release the previous one
+	 */
+	void reset(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		this.position = 0;
+	}
+
+	/**
+	 * Write the buffered bytes to the output stream and flush it
+	 *
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		flushBuffer();
+		this.outputStream.flush();
+	}
+
+	public void startObject(int size) throws IOException {
+		writeHead(MAP, size);
+	}
+
+	public void endObject() {
+	}
+
+	public void startArray(int size) throws IOException {
+		writeHead(ARRAY, size);
+	}
+
+	public void endArray() {
+	}
+
+	public void key(String key) throws IOException {
+		string(key);
+	}
+
+	public void attributeKey(String name) throws IOException {
+		writeHead(TEXT, utf8Length(name) + 1);
+		this.buffer[this.position++] = '@';
+		writeUtf8(name);
+	}
+
+	public void string(String value) throws IOException {
+		writeHead(TEXT, utf8Length(value));
+		writeUtf8(value);
+	}
+
+	public void number(String value) throws IOException {
+		boolean integer = (value.indexOf('.') < 0) && (value.indexOf('e') < 0) && (value.indexOf('E') < 0);
+
+		// 19 digits always fit in a long, longer integers are checked by the parser
+		if (integer && (value.length() <= 20)) {
+			try {
+				long number = Long.parseLong(value);
+
+				if (number >= 0) writeHead(UNSIGNED, number);
+				else writeHead(NEGATIVE, -1 - number);
+				return;
+
+			} catch (NumberFormatException e) {
+				// Beyond 64 bits, written as a double
+			}
+		}
+
+		long bits = Double.doubleToLongBits(Double.parseDouble(value));
+
+		ensure(9);
+		this.buffer[this.position++] = (byte) DOUBLE;
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.buffer[this.position++] = (byte) (bits >>> shift);
+		}
+	}
+
+	public void bool(boolean value) throws IOException {
+		ensure(1);
+		this.buffer[this.position++] = (byte) (value ? TRUE : FALSE);
+	}
+
+	public void nullValue() throws IOException {
+		ensure(1);
+		this.buffer[this.position++] = (byte) NULL;
+	}
+
+	/**
+	 * Values serialized as JSON text only come from the skeleton of a split document, which is always written as JSON text
+	 */
+	public void json(String json) {
+		throw new UnsupportedOperationException("A value serialized as JSON text can't be written as CBOR");
+	}
+
+	/**
+	 * Write the initial byte of a data item with its argument (length, size or integer value) in the shortest form.  The
+	 * buffer is left with room for one more byte, i.e. the "@" of an attribute key
+	 */
+	private void writeHead(int majorType, long argument) throws IOException {
+		ensure(10);
+
+		if (argument < 24) {
+			this.buffer[this.position++] = (byte) (majorType | argument);
+		}
+		else if (argument < 0x100) {
+			this.buffer[this.position++] = (byte) (majorType | 24);
+			this.buffer[this.position++] = (byte) argument;
+		}
+		else if (argument < 0x10000) {
+			this.buffer[this.position++] = (byte) (majorType | 25);
+			this.buffer[this.position++] = (byte) (argument >> 8);
+			this.buffer[this.position++] = (byte) argument;
+		}
+		else if (argument < 0x100000000L) {
+			this.buffer[this.position++] = (byte) (majorType | 26);
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				this.buffer[this.position++] = (byte) (argument >> shift);
+			}
+		}
+		else {
+			this.buffer[this.position++] = (byte) (majorType | 27);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.buffer[this.position++] = (byte) (argument >>> shift);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of bytes of a string encoded in UTF-8.  Lone surrogates are encoded as "?", the way the UTF-8 charset does
+	 */
+	private static int utf8Length(String value) {
+		int length = value.length();
+		int bytes = length;
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) continue;
+
+			if (c < 0x800) {
+				bytes++;
+			}
+			else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+				// 4 bytes for the 2 characters of the pair
+				bytes += 2;
+				i++;
+			}
+			else if (! Character.isSurrogate(c)) {
+				bytes += 2;
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Write the UTF-8 bytes of a string, the length of which was written by writeHead()
+	 */
+	private void writeUtf8(String value) throws IOException {
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+			if (this.position + 4 > this.buffer.length) flushBuffer();
+
+			char c = value.charAt(i);
+
+			if (c < 0x80) {
+				this.buffer[this.position++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				this.buffer[this.position++] = (byte) (0xc0 | (c >> 6));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+			}
+			else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				this.buffer[this.position++] = (byte) (0xf0 | (codePoint >> 18));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+			else if (Character.isSurrogate(c)) {
+				this.buffer[this.position++] = '?';
+			}
+			else {
+				this.buffer[this.position++] = (byte) (0xe0 | (c >> 12));
+				this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Make room for a number of bytes in the buffer
+	 */
+	private void ensure(int count) throws IOException {
+		if (this.position + count > this.buffer.length) flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.position == 0) return;
+
+		this.outputStream.write(this.buffer, 0, this.position);
+		this.position = 0;
+	}
+}
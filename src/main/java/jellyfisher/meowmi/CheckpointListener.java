@@ -0,0 +1,20 @@
+package jellyfisher.meowmi;
+
+/**
+ * Receives the checkpoints of a record conversion, see XmlToJsonConverter.convertRecords(File, String, JsonRecordHandler,
+ * ConversionCheckpoint, CheckpointListener).  Each checkpoint follows the records handed to the record handler before it,
+ * so the listener can flush the output of those records and store the checkpoint with it.
+ */
+public interface CheckpointListener {
+
+	/**
+	 * Handle a checkpoint
+	 *
+	 * @param checkpoint
+	 * Where the conversion resumes if it fails from now on
+	 *
+	 * @throws Exception
+	 * Stops the conversion
+	 */
+	void checkpoint(ConversionCheckpoint checkpoint) throws Exception;
+}
@@ -0,0 +1,171 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+/**
+ * Where a record conversion of a large XML file can resume after a failure, see XmlToJsonConverter.convertRecords(File,
+ * String, JsonRecordHandler, ConversionCheckpoint, CheckpointListener).  A checkpoint is taken at the end of a record, and
+ * holds what is needed to read the rest of the file without its beginning:
+ *
+ *     offset       the byte offset in the file following the last record converted
+ *     records      the number of records converted up to the offset
+ *     encoding     the encoding of the file, from its XML declaration
+ *     parents      the elements from the root to the parent of the records, which are open at the offset
+ *     namespaces   the namespace declarations in scope at the parent of the records, as written in the file
+ *
+ * The attributes of the parent elements are not kept, since the records are converted without them.  A checkpoint is a
+ * small value object, which is stored and loaded as a properties file.
+ */
+public class ConversionCheckpoint {
+
+	private long offset;
+	private long recordCount;
+	private String encoding;
+	private String[] parentNames;
+	private String namespaces;
+
+	/**
+	 * Constructor
+	 *
+	 * @param offset
+	 * Byte offset in the file following the last record converted
+	 *
+	 * @param recordCount
+	 * Number of records converted up to the offset
+	 *
+	 * @param encoding
+	 * Encoding of the file
+	 *
+	 * @param parentNames
+	 * Names of the elements from the root to the parent of the records
+	 *
+	 * @param namespaces
+	 * Namespace declarations in scope at the parent of the records, i.e. xmlns:a="urn:a" xmlns="urn:b"
+	 */
+	ConversionCheckpoint(long offset, long recordCount, String encoding, String[] parentNames, String namespaces) {
+		this.offset = offset;
+		this.recordCount = recordCount;
+		this.encoding = encoding;
+		this.parentNames = parentNames;
+		this.namespaces = namespaces;
+	}
+
+	/**
+	 * Get the byte offset in the file following the last record converted
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * Get the number of records converted up to the offset
+	 */
+	public long getRecordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * Get the names of the elements from the root to the parent of the records
+	 */
+	public String[] getParentNames() {
+		return this.parentNames.clone();
+	}
+
+	/**
+	 * Write the checkpoint as a properties file
+	 *
+	 * @param outputStream
+	 * The output stream where the checkpoint is written to, not closed
+	 *
+	 * @throws IOException
+	 */
+	public void store(OutputStream outputStream) throws IOException {
+		// Error checking
+		if (outputStream == null) {
+			throw new NullPointerException("Input parameter \"Output Stream\" can't be null");
+		}
+
+		StringBuilder parents = new StringBuilder();
+		for (String name : this.parentNames) {
+			if (parents.length() > 0) parents.append('/');
+			parents.append(name);
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("offset", String.valueOf(this.offset));
+		properties.setProperty("records", String.valueOf(this.recordCount));
+		properties.setProperty("encoding", this.encoding);
+		properties.setProperty("parents", parents.toString());
+		properties.setProperty("namespaces", this.namespaces);
+
+		properties.store(outputStream, "meowmi conversion checkpoint");
+	}
+
+	/**
+	 * Read a checkpoint written by store()
+	 *
+	 * @param inputStream
+	 * The input stream where the checkpoint is read from, not closed
+	 *
+	 * @return
+	 * The checkpoint
+	 *
+	 * @throws IOException
+	 * The checkpoint can't be read, or it is incomplete
+	 */
+	public static ConversionCheckpoint load(InputStream inputStream) throws IOException {
+		// Error checking
+		if (inputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+
+		Properties properties = new Properties();
+		properties.load(inputStream);
+
+		String offset = properties.getProperty("offset");
+		String records = properties.getProperty("records");
+		String encoding = properties.getProperty("encoding");
+		String parents = properties.getProperty("parents");
+		String namespaces = properties.getProperty("namespaces");
+
+		if ((offset == null) || (records == null) || (encoding == null) || (parents == null) || (parents.length() == 0)
+				|| (namespaces == null)) {
+			throw new IOException("The checkpoint is incomplete");
+		}
+
+		try {
+			return new ConversionCheckpoint(Long.parseLong(offset), Long.parseLong(records), encoding, parents.split("/"), namespaces);
+
+		} catch (NumberFormatException e) {
+			throw new IOException("The checkpoint has an invalid offset or record count");
+		}
+	}
+
+	/**
+	 * Build the XML standing in for the file before the offset: the XML declaration, and the start tags of the parent
+	 * elements with the namespace declarations on the first one
+	 *
+	 * @return
+	 * The prologue in the encoding of the file
+	 */
+	byte[] getPrologue() {
+		StringBuilder prologue = new StringBuilder();
+		prologue.append("<?xml version=\"1.0\" encoding=\"").append(this.encoding).append("\"?>");
+
+		for (int i = 0; i < this.parentNames.length; i++) {
+			prologue.append('<').append(this.parentNames[i]);
+			if ((i == 0) && (this.namespaces.length() > 0)) prologue.append(' ').append(this.namespaces);
+			prologue.append('>');
+		}
+
+		return prologue.toString().getBytes(Charset.forName(this.encoding));
+	}
+
+	public String toString() {
+		return "checkpoint at offset " + this.offset + " after " + this.recordCount + " records";
+	}
+}
@@ -0,0 +1,60 @@
+package jellyfisher.meowmi;
+
+/**
+ * Thrown when a document exceeds one of the ConversionLimits of the converter.  The conversion stops as soon as the limit is
+ * exceeded, and nothing of the document is returned.
+ */
+public class ConversionLimitException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private String limit;
+	private long maximum;
+
+	/**
+	 * Constructor
+	 *
+	 * @param limit
+	 * Name of the limit, i.e. "max depth"
+	 *
+	 * @param maximum
+	 * Value of the limit
+	 */
+	ConversionLimitException(String limit, long maximum) {
+		super("Encounter error when parsing the XML: the document exceeds the " + limit + " of " + maximum);
+
+		this.limit = limit;
+		this.maximum = maximum;
+	}
+
+	/**
+	 * Constructor for a limit enforced by the XML parser
+	 *
+	 * @param limit
+	 * Name of the limit, i.e. "max entity expansions"
+	 *
+	 * @param maximum
+	 * Value of the limit
+	 *
+	 * @param cause
+	 * The error of the XML parser
+	 */
+	ConversionLimitException(String limit, long maximum, Throwable cause) {
+		this(limit, maximum);
+		initCause(cause);
+	}
+
+	/**
+	 * Get the name of the limit exceeded, i.e. "max depth"
+	 */
+	public String getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Get the value of the limit exceeded
+	 */
+	public long getMaximum() {
+		return this.maximum;
+	}
+}
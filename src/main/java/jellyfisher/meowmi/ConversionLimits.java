@@ -0,0 +1,129 @@
+package jellyfisher.meowmi;
+
+/**
+ * Limits on the documents a converter accepts, so a hostile or broken document fails within milliseconds instead of taking a
+ * core and the heap for as long as it takes to build its JSON.  The limits are checked while the XML stream is read, and the
+ * conversion stops at the first one exceeded with a ConversionLimitException.
+ *
+ *     max depth               element nesting, the root element being at depth 1
+ *     max output chars        characters of the keys, attribute values and data strings read so far, which is what the
+ *                             JSON is made of (the JSON punctuation around them is not counted)
+ *     max text length         characters of one data string or attribute value
+ *     max attributes          attributes of one element
+ *     max entity expansions   entity references the XML parser expands in the document, i.e. the "billion laughs" attack.
+ *                             This one is enforced by the JDK parser, and is only applied to an XMLInputFactory that
+ *                             supports it, through the converter's own copy of the factory
+ *
+ * Every limit is off until set.  The limits must be complete before they are given to a converter, which may share them
+ * across threads.
+ */
+public class ConversionLimits {
+
+	private int maxDepth = Integer.MAX_VALUE;
+	private long maxOutputChars = Long.MAX_VALUE;
+	private int maxTextLength = Integer.MAX_VALUE;
+	private int maxAttributes = Integer.MAX_VALUE;
+	private int maxEntityExpansions = -1;
+
+	/**
+	 * Limit the element nesting
+	 *
+	 * @param maxDepth
+	 * The deepest element nesting allowed, the root element being at depth 1
+	 *
+	 * @return
+	 * This object, so the limits can be chained
+	 */
+	public ConversionLimits setMaxDepth(int maxDepth) {
+		this.maxDepth = checkPositive(maxDepth, "Max Depth");
+		return this;
+	}
+
+	/**
+	 * Limit the size of the JSON output
+	 *
+	 * @param maxOutputChars
+	 * The most characters of keys, attribute values and data strings allowed in a document
+	 *
+	 * @return
+	 * This object, so the limits can be chained
+	 */
+	public ConversionLimits setMaxOutputChars(long maxOutputChars) {
+		this.maxOutputChars = checkPositive(maxOutputChars, "Max Output Chars");
+		return this;
+	}
+
+	/**
+	 * Limit the size of one data string or attribute value
+	 *
+	 * @param maxTextLength
+	 * The most characters allowed in one data string or attribute value
+	 *
+	 * @return
+	 * This object, so the limits can be chained
+	 */
+	public ConversionLimits setMaxTextLength(int maxTextLength) {
+		this.maxTextLength = checkPositive(maxTextLength, "Max Text Length");
+		return this;
+	}
+
+	/**
+	 * Limit the number of attributes of one element
+	 *
+	 * @param maxAttributes
+	 * The most attributes allowed on one element
+	 *
+	 * @return
+	 * This object, so the limits can be chained
+	 */
+	public ConversionLimits setMaxAttributes(int maxAttributes) {
+		this.maxAttributes = checkPositive(maxAttributes, "Max Attributes");
+		return this;
+	}
+
+	/**
+	 * Limit the number of entity references the XML parser expands in a document
+	 *
+	 * @param maxEntityExpansions
+	 * The most entity expansions allowed in a document
+	 *
+	 * @return
+	 * This object, so the limits can be chained
+	 */
+	public ConversionLimits setMaxEntityExpansions(int maxEntityExpansions) {
+		this.maxEntityExpansions = checkPositive(maxEntityExpansions, "Max Entity Expansions");
+		return this;
+	}
+
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	public long getMaxOutputChars() {
+		return this.maxOutputChars;
+	}
+
+	public int getMaxTextLength() {
+		return this.maxTextLength;
+	}
+
+	public int getMaxAttributes() {
+		return this.maxAttributes;
+	}
+
+	/**
+	 * @return
+	 * The most entity expansions allowed in a document, or -1 if the XML parser's own limit applies
+	 */
+	public int getMaxEntityExpansions() {
+		return this.maxEntityExpansions;
+	}
+
+	private static <T extends Number> T checkPositive(T value, String name) {
+		if (value.longValue() <= 0) {
+			throw new IllegalArgumentException("Input parameter \"" + name + "\" must be greater than 0");
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,17 @@
+package jellyfisher.meowmi;
+
+/**
+ * Receives the metrics of each conversion done by an XmlToJsonConverter, see XmlToJsonConverter.setConversionListener().
+ * The listener is called on the thread which did the conversion, right after it, so it should only record the metrics
+ * (i.e. into counters or a histogram) and return.
+ */
+public interface ConversionListener {
+
+	/**
+	 * Handle the metrics of a successful conversion
+	 *
+	 * @param metrics
+	 * What the conversion did and where its time went
+	 */
+	void converted(ConversionMetrics metrics);
+}
@@ -0,0 +1,83 @@
+package jellyfisher.meowmi;
+
+/**
+ * What one conversion did and where its time went, handed to the ConversionListener of the converter once the conversion is
+ * done.  The counters are kept by the reader and the JSON builders as plain fields while the document is read, so collecting
+ * them costs an increment per XML event and a few clock readings per document.
+ *
+ *     bytes read            XML bytes read from the input stream
+ *     events                start elements, attributes and data strings passed to the JSON builders
+ *     max depth             deepest element nesting, the root element being at depth 1
+ *     array promotions      runs of same named siblings turned into a JSON array once a second sibling showed up
+ *     shifted chars         JSON characters moved to insert the opening bracket of such an array in front of its first item
+ *     peak buffered chars   largest JSON text held in memory before being handed out: the whole document for a JSON string,
+ *                           the largest record for records, the largest pending element when streaming
+ *     read time             reading the XML stream, including the JSON written while streaming
+ *     write time            serializing the JSON tree once the XML stream was read, zero when streaming and for records
+ */
+public class ConversionMetrics {
+
+	private long bytesRead;
+	private long events;
+	private int maxDepth;
+	private long arrayPromotions;
+	private long shiftedChars;
+	private long peakBufferedChars;
+	private long readNanos;
+	private long writeNanos;
+
+	/**
+	 * Constructor
+	 */
+	ConversionMetrics(long bytesRead, long events, int maxDepth, long arrayPromotions, long shiftedChars, long peakBufferedChars,
+			long readNanos, long writeNanos) {
+		this.bytesRead = bytesRead;
+		this.events = events;
+		this.maxDepth = maxDepth;
+		this.arrayPromotions = arrayPromotions;
+		this.shiftedChars = shiftedChars;
+		this.peakBufferedChars = peakBufferedChars;
+		this.readNanos = readNanos;
+		this.writeNanos = writeNanos;
+	}
+
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	public long getEvents() {
+		return this.events;
+	}
+
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	public long getArrayPromotions() {
+		return this.arrayPromotions;
+	}
+
+	public long getShiftedChars() {
+		return this.shiftedChars;
+	}
+
+	public long getPeakBufferedChars() {
+		return this.peakBufferedChars;
+	}
+
+	public long getReadNanos() {
+		return this.readNanos;
+	}
+
+	public long getWriteNanos() {
+		return this.writeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "bytesRead=" + this.bytesRead + " events=" + this.events + " maxDepth=" + this.maxDepth
+				+ " arrayPromotions=" + this.arrayPromotions + " shiftedChars=" + this.shiftedChars
+				+ " peakBufferedChars=" + this.peakBufferedChars + " readMs=" + (this.readNanos / 1000000)
+				+ " writeMs=" + (this.writeNanos / 1000000);
+	}
+}
@@ -0,0 +1,123 @@
+package jellyfisher.meowmi;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What the conversions of one document type (documents with the same root element key) learned about its shape, see
+ * XmlToJsonConverter.setPlanLearning().  A plan learns from the first documents of the type, then it is compiled:
+ *
+ *     repeated keys     element keys which were an array in every run of same named siblings while learning.  The streaming
+ *                       conversion opens their array at the first item, instead of buffering the item or inserting the
+ *                       bracket in front of it once the second item shows up
+ *     output estimate   the size of the JSON string, which the output buffer of the tree conversion is sized to up front
+ *
+ * A plan only ever saves work, it never changes the JSON: a run of a repeated key with a single item is written as a single
+ * value by taking its bracket back, and that key is dropped from the plan.  A document larger than the estimate grows the
+ * buffer as usual.
+ *
+ * A plan is shared by every thread converting documents of its type.  It is read without locking once compiled; learning and
+ * dropping keys are synchronized, which happens once per learning document and once per key the plan was wrong about.
+ */
+class ConversionPlan {
+
+	private int learningDocuments;
+
+	// What the learning documents showed: keys of runs promoted to an array, keys of runs with one item, and output sizes
+	private HashSet<String> promotedKeys = new HashSet<String>();
+	private HashSet<String> singleKeys = new HashSet<String>();
+	private int shapeDocuments;
+	private long outputChars;
+	private int outputDocuments;
+
+	// The compiled plan, null while it is being learned
+	private volatile Set<String> repeatedKeys;
+	private volatile int outputEstimate = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param learningDocuments
+	 * Number of documents the plan learns from before it is compiled
+	 */
+	ConversionPlan(int learningDocuments) {
+		this.learningDocuments = learningDocuments;
+	}
+
+	/**
+	 * Get the element keys whose runs of siblings are arrays
+	 *
+	 * @return
+	 * The keys, or null while the plan is learned from the streaming conversions
+	 */
+	Set<String> getRepeatedKeys() {
+		return this.repeatedKeys;
+	}
+
+	/**
+	 * Get the estimated size of the JSON string
+	 *
+	 * @return
+	 * The number of characters, or -1 while the plan is learned from the tree conversions
+	 */
+	int getOutputEstimate() {
+		return this.outputEstimate;
+	}
+
+	/**
+	 * Learn from the runs of same named siblings of a streaming conversion
+	 *
+	 * @param promoted
+	 * Keys of the runs which turned into an array
+	 *
+	 * @param single
+	 * Keys of the runs which had a single item
+	 */
+	synchronized void learnShape(Set<String> promoted, Set<String> single) {
+		if (this.repeatedKeys != null) return;
+
+		this.promotedKeys.addAll(promoted);
+		this.singleKeys.addAll(single);
+
+		if (++this.shapeDocuments < this.learningDocuments) return;
+
+		HashSet<String> repeated = new HashSet<String>(this.promotedKeys);
+		repeated.removeAll(this.singleKeys);
+
+		this.repeatedKeys = Collections.unmodifiableSet(repeated);
+		this.promotedKeys = null;
+		this.singleKeys = null;
+	}
+
+	/**
+	 * Learn from the size of the JSON string of a tree conversion
+	 *
+	 * @param length
+	 * Number of characters of the JSON string
+	 */
+	synchronized void learnOutput(int length) {
+		if (this.outputEstimate >= 0) return;
+
+		this.outputChars += length;
+		if (++this.outputDocuments < this.learningDocuments) return;
+
+		// The average plus a quarter, so most documents fit without growing the buffer
+		long average = this.outputChars / this.outputDocuments;
+		this.outputEstimate = (int) Math.min(Integer.MAX_VALUE - 8, average + average / 4);
+	}
+
+	/**
+	 * Drop a key from the repeated keys, after a run of it turned out to have a single item
+	 *
+	 * @param key
+	 * Element key
+	 */
+	synchronized void dropRepeatedKey(String key) {
+		if ((this.repeatedKeys == null) || ! this.repeatedKeys.contains(key)) return;
+
+		HashSet<String> repeated = new HashSet<String>(this.repeatedKeys);
+		repeated.remove(key);
+		this.repeatedKeys = Collections.unmodifiableSet(repeated);
+	}
+}
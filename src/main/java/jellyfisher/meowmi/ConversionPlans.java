@@ -0,0 +1,54 @@
+package jellyfisher.meowmi;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The conversion plans of a converter, one per document type, see ConversionPlan.  The type of a document is the key of its
+ * root element, which is known at the first start element, before any work the plan could save.  The number of types is
+ * bounded, so documents with arbitrary root elements can't grow the cache without end; documents of a type beyond the
+ * bound are converted without a plan.
+ */
+class ConversionPlans {
+
+	// Most document types a converter keeps plans for
+	private static final int MAX_TYPES = 256;
+
+	private int learningDocuments;
+	private ConcurrentHashMap<String, ConversionPlan> plans = new ConcurrentHashMap<String, ConversionPlan>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param learningDocuments
+	 * Number of documents each plan learns from before it is compiled
+	 */
+	ConversionPlans(int learningDocuments) {
+		this.learningDocuments = learningDocuments;
+	}
+
+	/**
+	 * Get the number of documents each plan learns from
+	 */
+	int getLearningDocuments() {
+		return this.learningDocuments;
+	}
+
+	/**
+	 * Find the plan of a document type, creating it if the type is new
+	 *
+	 * @param rootName
+	 * Key of the root element
+	 *
+	 * @return
+	 * The plan, or null if there are plans for too many types already
+	 */
+	ConversionPlan find(String rootName) {
+		ConversionPlan plan = this.plans.get(rootName);
+		if ((plan != null) || (this.plans.size() >= MAX_TYPES)) return plan;
+
+		plan = new ConversionPlan(this.learningDocuments);
+		ConversionPlan existing = this.plans.putIfAbsent(rootName, plan);
+
+		return (existing != null) ? existing : plan;
+	}
+}
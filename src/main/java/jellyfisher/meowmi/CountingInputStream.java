@@ -0,0 +1,73 @@
+package jellyfisher.meowmi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read through it, for the metrics of a conversion.  The XML parser reads in large blocks,
+ * so the count costs one addition per block.  Like the rest of the conversion state, one stream is reused by all the
+ * conversions of a thread.
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private long count;
+
+	CountingInputStream() {
+		super(null);
+	}
+
+	/**
+	 * Start counting the bytes of another input stream
+	 *
+	 * @param inputStream
+	 * The input stream to read from, or null to release the previous one
+	 */
+	void reset(InputStream inputStream) {
+		this.in = inputStream;
+		this.count = 0;
+	}
+
+	/**
+	 * Get the number of bytes read since the last reset
+	 */
+	long getCount() {
+		return this.count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = this.in.read();
+		if (b >= 0) this.count++;
+
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = this.in.read(buffer, offset, length);
+		if (read > 0) this.count += read;
+
+		return read;
+	}
+
+	@Override
+	public long skip(long length) throws IOException {
+		long skipped = this.in.skip(length);
+		if (skipped > 0) this.count += skipped;
+
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * The input stream belongs to the caller and is not closed
+	 */
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,388 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream handing out the XML documents of a stream holding many of them back to back, i.e. a message log, one
+ * document at a time.  The bytes are tokenized as they are read (tags, comments, CDATA, processing instructions and
+ * declarations) only to find where the root element of each document ends, and the stream ends there; nextDocument() moves
+ * on to the next one.  The XML parser reading a document never sees the bytes of the next one, so it doesn't complain about
+ * a second root element.
+ *
+ * Between two documents, whitespace, comments and processing instructions are skipped: a document starts at its XML
+ * declaration, its document type declaration or its root element, so each document can have its own XML declaration, and
+ * a stream can end with a comment.  Like RecordSplitter, only ASCII compatible encodings can be tokenized at the byte level.
+ *
+ * The scanner keeps its state from one read to the next, so markup of any length can span reads, and the buffer is reused
+ * by all the documents of the stream.
+ */
+class DocumentStream extends InputStream {
+
+	// Where the scanner is: in text, after a "<", in a start tag, end tag, processing instruction, after "<!", after "<!-",
+	// in a comment, CDATA section or declaration, and after a "<", "<!", "<!-" or in a comment of an internal DTD subset
+	private static final int TEXT = 0;
+	private static final int MARKUP = 1;
+	private static final int START_TAG = 2;
+	private static final int END_TAG = 3;
+	private static final int INSTRUCTION = 4;
+	private static final int BANG = 5;
+	private static final int COMMENT_START = 6;
+	private static final int COMMENT = 7;
+	private static final int CDATA = 8;
+	private static final int DECLARATION = 9;
+	private static final int SUBSET_MARKUP = 10;
+	private static final int SUBSET_BANG = 11;
+	private static final int SUBSET_COMMENT_START = 12;
+	private static final int SUBSET_COMMENT = 13;
+
+	private InputStream input;
+	private byte[] buffer = new byte[64 * 1024];
+
+	// The bytes handed out next, the bytes scanned so far (which belong to the current document), and the bytes read
+	private int position;
+	private int scanned;
+	private int limit;
+
+	private boolean started;
+	private boolean inputEnded;
+
+	// The end of the root element of the current document was scanned
+	private boolean documentEnded;
+
+	private int state = TEXT;
+
+	// Depth of the open elements, and whether the root element was started
+	private int depth;
+	private boolean rootStarted;
+
+	// Quote of the attribute or literal value the tag or declaration is in, or 0, and the previous byte of the markup
+	private byte quote;
+	private byte previous;
+
+	// Number of consecutive "-" of a comment or "]" of a CDATA section
+	private int count;
+
+	// Depth of the "[" of a declaration, i.e. its internal DTD subset
+	private int brackets;
+
+	/**
+	 * Constructor
+	 *
+	 * @param input
+	 * The stream of documents
+	 */
+	DocumentStream(InputStream input) {
+		this.input = input;
+	}
+
+	/**
+	 * Move on to the next document, skipping the whitespace, comments and processing instructions before it
+	 *
+	 * @return
+	 * False at the end of the stream
+	 *
+	 * @throws Exception
+	 * The current document was not read to its end, the stream ended inside a comment or processing instruction, or the
+	 * stream is not in an ASCII compatible encoding
+	 */
+	boolean nextDocument() throws Exception {
+		if (this.started && (! this.documentEnded)) {
+			throw new Exception("Encounter error when parsing the XML: the document ended before all the elements were closed");
+		}
+
+		// The parser may stop reading right after the end of the root element
+		this.position = this.scanned;
+
+		this.documentEnded = false;
+		this.depth = 0;
+		this.rootStarted = false;
+		this.state = TEXT;
+
+		// UTF-16 and UTF-32 documents start with a byte order mark or a zero byte
+		if ((! this.started) && ensure(1)) {
+			byte b = this.buffer[this.position];
+
+			if ((b == 0) || (b == (byte) 0xFE) || (b == (byte) 0xFF)) {
+				throw new Exception("Encounter error when parsing the XML: a stream of documents must be in an ASCII compatible encoding");
+			}
+		}
+
+		this.started = true;
+
+		while (true) {
+			if (! ensure(1)) return false;
+
+			byte b = this.buffer[this.position];
+
+			if ((b == ' ') || (b == '\n') || (b == '\r') || (b == '\t')) {
+				this.position++;
+				continue;
+			}
+
+			// Comment or processing instruction other than the XML declaration, outside of any document
+			ensure(6);
+
+			if (startsWith("<!--")) skipMarkup(4, "-->");
+			else if (startsWith("<?") && ! isXmlDeclaration()) skipMarkup(2, "?>");
+			else break;
+		}
+
+		this.scanned = this.position;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (! available(1)) return -1;
+
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) return 0;
+		if (! available(length)) return -1;
+
+		int count = Math.min(length, this.scanned - this.position);
+		System.arraycopy(this.buffer, this.position, bytes, offset, count);
+		this.position += count;
+
+		return count;
+	}
+
+	/**
+	 * The input stream belongs to the caller and is not closed
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Make sure there are scanned bytes of the current document to hand out
+	 *
+	 * @param length
+	 * Number of bytes wanted, up to which the scanning goes on
+	 *
+	 * @return
+	 * False at the end of the document
+	 */
+	private boolean available(int length) throws IOException {
+		while (this.position == this.scanned) {
+			if (this.documentEnded) return false;
+
+			if ((this.scanned == this.limit) && ! ensure(1)) return false;
+
+			scan(Math.min(this.limit, this.scanned + length));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Make sure the buffer holds a number of bytes from the position, moving the bytes not handed out yet to the start of
+	 * the buffer and reading the next bytes of the stream after them
+	 *
+	 * @param length
+	 * Number of bytes, at most the size of the buffer
+	 *
+	 * @return
+	 * False if the stream ends before
+	 */
+	private boolean ensure(int length) throws IOException {
+		while (this.limit - this.position < length) {
+			if (this.inputEnded) return false;
+
+			if (this.position > 0) {
+				System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+				this.limit -= this.position;
+				this.scanned -= this.position;
+				this.position = 0;
+			}
+
+			int count = this.input.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+			if (count < 0) this.inputEnded = true;
+			else this.limit += count;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if the bytes at the position start with an ASCII string
+	 */
+	private boolean startsWith(String ascii) {
+		if (this.limit - this.position < ascii.length()) return false;
+
+		for (int i = 0; i < ascii.length(); i++) {
+			if (this.buffer[this.position + i] != ascii.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if the processing instruction at the position is the XML declaration, i.e. <?xml version="1.0"?>
+	 */
+	private boolean isXmlDeclaration() {
+		if (! startsWith("<?xml") || (this.limit - this.position < 6)) return false;
+
+		byte b = this.buffer[this.position + 5];
+		return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t');
+	}
+
+	/**
+	 * Skip a comment or processing instruction between two documents
+	 *
+	 * @param start
+	 * Length of its opening, i.e. "<!--"
+	 *
+	 * @param terminator
+	 * Its closing, i.e. "-->"
+	 */
+	private void skipMarkup(int start, String terminator) throws Exception {
+		this.position += start;
+
+		while (true) {
+			if (! ensure(terminator.length())) {
+				throw new Exception("Encounter error when parsing the XML: the stream ended inside a markup");
+			}
+
+			if (startsWith(terminator)) {
+				this.position += terminator.length();
+				return;
+			}
+
+			this.position++;
+		}
+	}
+
+	/**
+	 * Scan the bytes up to the end index, or up to the end of the root element if it comes first
+	 */
+	private void scan(int end) {
+		byte[] data = this.buffer;
+		int index = this.scanned;
+
+		for (; index < end; index++) {
+			byte b = data[index];
+
+			switch (this.state) {
+
+			case TEXT:
+				if (b == '<') this.state = MARKUP;
+				break;
+
+			case MARKUP:
+				if (b == '/') this.state = END_TAG;
+				else if (b == '?') this.state = INSTRUCTION;
+				else if (b == '!') this.state = BANG;
+				else {
+					this.state = START_TAG;
+					this.quote = 0;
+				}
+				this.previous = b;
+				break;
+
+			case START_TAG:
+				if (this.quote != 0) {
+					if (b == this.quote) this.quote = 0;
+				}
+				else if ((b == '"') || (b == '\'')) {
+					this.quote = b;
+				}
+				else if (b == '>') {
+					this.state = TEXT;
+					this.rootStarted = true;
+
+					// Empty element i.e. <person/>
+					if (this.previous != '/') this.depth++;
+					else if (this.depth == 0) this.documentEnded = true;
+				}
+				this.previous = b;
+				break;
+
+			case END_TAG:
+				if (b == '>') {
+					this.state = TEXT;
+					if ((--this.depth == 0) && this.rootStarted) this.documentEnded = true;
+				}
+				break;
+
+			case INSTRUCTION:
+				if ((b == '>') && (this.previous == '?')) this.state = TEXT;
+				this.previous = b;
+				break;
+
+			case BANG:
+				this.count = 0;
+				if (b == '-') this.state = COMMENT_START;
+				else if (b == '[') this.state = CDATA;
+				else {
+					this.state = DECLARATION;
+					this.quote = 0;
+					this.brackets = 0;
+					if (b == '>') this.state = TEXT;
+				}
+				break;
+
+			case COMMENT_START:
+				this.state = COMMENT;
+				break;
+
+			case COMMENT:
+				if ((b == '>') && (this.count >= 2)) this.state = TEXT;
+				this.count = (b == '-') ? this.count + 1 : 0;
+				break;
+
+			case CDATA:
+				if ((b == '>') && (this.count >= 2)) this.state = TEXT;
+				this.count = (b == ']') ? this.count + 1 : 0;
+				break;
+
+			case DECLARATION:
+				// An internal DTD subset holds declarations of its own, whose literal values can hold any bracket
+				if (this.quote != 0) {
+					if (b == this.quote) this.quote = 0;
+				}
+				else if ((b == '"') || (b == '\'')) this.quote = b;
+				else if (b == '[') this.brackets++;
+				else if (b == ']') this.brackets--;
+				else if ((b == '<') && (this.brackets > 0)) this.state = SUBSET_MARKUP;
+				else if ((b == '>') && (this.brackets == 0)) this.state = TEXT;
+				break;
+
+			case SUBSET_MARKUP:
+				// Anything but a comment is scanned as part of the declaration
+				this.state = DECLARATION;
+				if (b == '!') this.state = SUBSET_BANG;
+				else index--;
+				break;
+
+			case SUBSET_BANG:
+				this.state = DECLARATION;
+				if (b == '-') this.state = SUBSET_COMMENT_START;
+				else index--;
+				break;
+
+			case SUBSET_COMMENT_START:
+				this.state = SUBSET_COMMENT;
+				this.count = 0;
+				break;
+
+			case SUBSET_COMMENT:
+				if ((b == '>') && (this.count >= 2)) this.state = DECLARATION;
+				this.count = (b == '-') ? this.count + 1 : 0;
+				break;
+			}
+
+			if (this.documentEnded) {
+				index++;
+				break;
+			}
+		}
+
+		this.scanned = index;
+	}
+}
@@ -0,0 +1,19 @@
+package jellyfisher.meowmi;
+
+/**
+ * Receives the documents converted by XmlToJsonConverter.convertDocuments(), one JSON string per document of the stream,
+ * as soon as the end of its root element has been read.
+ */
+public interface JsonDocumentHandler {
+
+	/**
+	 * Handle one converted document
+	 *
+	 * @param json
+	 * The JSON string of the document, the same as converting the document on its own with convert()
+	 *
+	 * @throws Exception
+	 * Stops the conversion
+	 */
+	void document(String json) throws Exception;
+}
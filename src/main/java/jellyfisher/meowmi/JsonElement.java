@@ -0,0 +1,371 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+
+/**
+ * Intermediate value of one XML element.  It collects the attributes, the inner elements grouped by element key and the data
+ * strings of the element while the XML stream is read, and it is serialized to JSON only once the whole document has been read.
+ *
+ * Inner elements with the same key are kept in one chain in document order; a chain with more than one item is promoted to a
+ * JSON array when serialized.  This replaces rewriting already serialized JSON strings every time a repeated element is discovered.
+ *
+ * The bookkeeping is kept in plain arrays instead of collections.  Each distinct inner element key gets a slot, found by
+ * checking the slot of the previous inner element first (repeated elements are usually adjacent), then by scanning the
+ * few slots of a typical element, and through an open-addressed index once the element has many distinct keys.  Keys come
+ * from the name table of the reader, so the same key is usually the same String instance and compares by identity.
+ */
+class JsonElement {
+
+	// Number of distinct inner element keys from which the slots are found through the index instead of a scan
+	private static final int INDEXED_KEYS = 8;
+
+	// Shape hints of this element, see XmlShapeHints
+	private int hints;
+
+	// Attribute keys and values in the order they were discovered, stored as key, value, key, value...  The shape hints
+	// of the attributes are only kept once an attribute has any
+	private String[] attributes;
+	private int attributeLength;
+	private int[] attributeHints;
+
+	// Inner elements grouped by element key, one slot per key in the order the keys were first discovered.  The elements of
+	// a slot are chained through their next field
+	private String[] childKeys;
+	private JsonElement[] firstChildren;
+	private JsonElement[] lastChildren;
+	private int[] childCounts;
+	private boolean[] childArrays;
+	private int keyCount;
+	private int lastSlot;
+
+	// Open-addressed index from key hash to slot + 1, only built for elements with many distinct keys
+	private int[] keyIndex;
+
+	// Next inner element of the parent with the same key
+	private JsonElement next;
+
+	// Complete data strings of this element
+	private String[] texts;
+	private int textCount;
+
+	// JSON value converted elsewhere (i.e. by a parallel conversion) which replaces the value of this element
+	private String json;
+
+	/**
+	 * Constructor
+	 *
+	 * @param hints
+	 * Shape hints of the element, see XmlShapeHints
+	 */
+	JsonElement(int hints) {
+		this.hints = hints;
+	}
+
+	/**
+	 * Add an attribute discovered at the start element
+	 *
+	 * @param name
+	 * Attribute key without the "@" prefix
+	 *
+	 * @param value
+	 * Attribute value
+	 *
+	 * @param hints
+	 * Shape hints of the attribute
+	 */
+	void addAttribute(String name, String value, int hints) {
+		if (this.attributes == null) {
+			this.attributes = new String[8];
+		}
+		else if (this.attributeLength == this.attributes.length) {
+			String[] grown = new String[this.attributeLength * 2];
+			System.arraycopy(this.attributes, 0, grown, 0, this.attributeLength);
+			this.attributes = grown;
+		}
+
+		if ((hints != 0) || (this.attributeHints != null)) {
+			if (this.attributeHints == null) this.attributeHints = new int[this.attributes.length / 2];
+			else if (this.attributeHints.length < this.attributes.length / 2) {
+				int[] grown = new int[this.attributes.length / 2];
+				System.arraycopy(this.attributeHints, 0, grown, 0, this.attributeHints.length);
+				this.attributeHints = grown;
+			}
+
+			this.attributeHints[this.attributeLength / 2] = hints;
+		}
+
+		this.attributes[this.attributeLength++] = name;
+		this.attributes[this.attributeLength++] = value;
+	}
+
+	/**
+	 * Add a new inner element.  If an inner element with the same key already exists, the new element is chained after it
+	 *
+	 * @param name
+	 * Element key of the inner element
+	 *
+	 * @param hints
+	 * Shape hints of the inner element
+	 *
+	 * @return
+	 * The new, empty inner element
+	 */
+	JsonElement addChild(String name, int hints) {
+		JsonElement child = new JsonElement(hints);
+
+		int slot = findSlot(name);
+
+		if (slot < 0) {
+			slot = addSlot(name);
+			this.firstChildren[slot] = child;
+			this.childArrays[slot] = (hints & XmlShapeHints.ARRAY) != 0;
+		}
+		else {
+			this.lastChildren[slot].next = child;
+		}
+
+		this.lastChildren[slot] = child;
+		this.childCounts[slot]++;
+		this.lastSlot = slot;
+
+		return child;
+	}
+
+	/**
+	 * Add a complete data string
+	 *
+	 * @param text
+	 * The trimmed data string
+	 */
+	void addText(String text) {
+		if (this.texts == null) {
+			this.texts = new String[1];
+		}
+		else if (this.textCount == this.texts.length) {
+			String[] grown = new String[this.textCount * 2];
+			System.arraycopy(this.texts, 0, grown, 0, this.textCount);
+			this.texts = grown;
+		}
+
+		this.texts[this.textCount++] = text;
+	}
+
+	/**
+	 * Get the number of distinct inner element keys
+	 */
+	int getChildKeyCount() {
+		return this.keyCount;
+	}
+
+	/**
+	 * Get the element key of a slot
+	 *
+	 * @param slot
+	 * Index of the key, in the order the keys were first discovered
+	 */
+	String getChildKey(int slot) {
+		return this.childKeys[slot];
+	}
+
+	/**
+	 * Get the first inner element of a key, the others follow through getNext()
+	 *
+	 * @param slot
+	 * Index of the key, in the order the keys were first discovered
+	 */
+	JsonElement getFirstChild(int slot) {
+		return this.firstChildren[slot];
+	}
+
+	/**
+	 * Get the number of inner elements of a key
+	 *
+	 * @param slot
+	 * Index of the key, in the order the keys were first discovered
+	 */
+	int getChildCount(int slot) {
+		return this.childCounts[slot];
+	}
+
+	/**
+	 * Get the number of inner elements with the key of the inner element added last
+	 */
+	int getLastChildCount() {
+		return this.childCounts[this.lastSlot];
+	}
+
+	/**
+	 * Get the next inner element of the parent with the same key
+	 *
+	 * @return
+	 * The next element, or null if this is the last one
+	 */
+	JsonElement getNext() {
+		return this.next;
+	}
+
+	/**
+	 * Replace the value of this element with a JSON value that was converted elsewhere
+	 *
+	 * @param json
+	 * The JSON value written instead of this element's content
+	 */
+	void setJson(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * Serialize this element as a JSON value.  An element with only a data string is a JSON string, an empty element is an
+	 * empty JSON string, and everything else is a JSON object of attributes ("@" prefixed), inner elements and "#text"
+	 *
+	 * @param sink
+	 * Where the JSON value is written to
+	 *
+	 * @throws IOException
+	 */
+	void writeTo(JsonSink sink) throws IOException {
+		// Value converted elsewhere, i.e. a record in the skeleton of a split document
+		if (this.json != null) {
+			sink.json(this.json);
+			return;
+		}
+
+		// Only data string, or empty element i.e. <person/>
+		if ((this.attributeLength == 0) && (this.keyCount == 0) && (this.textCount < 2)) {
+			XmlShapeHints.writeValue(sink, (this.textCount == 0) ? "" : this.texts[0], this.hints);
+			return;
+		}
+
+		sink.startObject(this.attributeLength / 2 + this.keyCount + ((this.textCount > 0) ? 1 : 0));
+
+		for (int i = 0; i < this.attributeLength; i += 2) {
+			sink.attributeKey(this.attributes[i]);
+			XmlShapeHints.writeValue(sink, this.attributes[i + 1], (this.attributeHints == null) ? 0 : this.attributeHints[i / 2]);
+		}
+
+		for (int slot = 0; slot < this.keyCount; slot++) {
+			sink.key(this.childKeys[slot]);
+
+			// Repeated element or array hint, promote to array
+			if ((this.childCounts[slot] > 1) || this.childArrays[slot]) {
+				sink.startArray(this.childCounts[slot]);
+				for (JsonElement child = this.firstChildren[slot]; child != null; child = child.next) {
+					child.writeTo(sink);
+				}
+				sink.endArray();
+			}
+			else {
+				this.firstChildren[slot].writeTo(sink);
+			}
+		}
+
+		if (this.textCount > 0) {
+			sink.key(XmlToJsonOutputString.TEXT);
+
+			if (this.textCount == 1) {
+				XmlShapeHints.writeValue(sink, this.texts[0], this.hints);
+			}
+			else {
+				sink.startArray(this.textCount);
+				for (int i = 0; i < this.textCount; i++) {
+					XmlShapeHints.writeValue(sink, this.texts[i], this.hints);
+				}
+				sink.endArray();
+			}
+		}
+
+		sink.endObject();
+	}
+
+	/**
+	 * Find the slot of an inner element key
+	 *
+	 * @return
+	 * The slot, or -1 if the key has no slot yet
+	 */
+	private int findSlot(String name) {
+		if (this.keyCount == 0) return -1;
+
+		String last = this.childKeys[this.lastSlot];
+		if ((last == name) || last.equals(name)) return this.lastSlot;
+
+		if (this.keyIndex == null) {
+			for (int slot = 0; slot < this.keyCount; slot++) {
+				if (this.childKeys[slot].equals(name)) return slot;
+			}
+			return -1;
+		}
+
+		int mask = this.keyIndex.length - 1;
+		for (int index = name.hashCode() & mask; this.keyIndex[index] != 0; index = (index + 1) & mask) {
+			int slot = this.keyIndex[index] - 1;
+			if (this.childKeys[slot].equals(name)) return slot;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Give a new inner element key its slot
+	 *
+	 * @return
+	 * The new slot
+	 */
+	private int addSlot(String name) {
+		if (this.childKeys == null) {
+			this.childKeys = new String[4];
+			this.firstChildren = new JsonElement[4];
+			this.lastChildren = new JsonElement[4];
+			this.childCounts = new int[4];
+			this.childArrays = new boolean[4];
+		}
+		else if (this.keyCount == this.childKeys.length) {
+			int size = this.keyCount * 2;
+
+			String[] childKeys = new String[size];
+			JsonElement[] firstChildren = new JsonElement[size];
+			JsonElement[] lastChildren = new JsonElement[size];
+			int[] childCounts = new int[size];
+			boolean[] childArrays = new boolean[size];
+
+			System.arraycopy(this.childKeys, 0, childKeys, 0, this.keyCount);
+			System.arraycopy(this.firstChildren, 0, firstChildren, 0, this.keyCount);
+			System.arraycopy(this.lastChildren, 0, lastChildren, 0, this.keyCount);
+			System.arraycopy(this.childCounts, 0, childCounts, 0, this.keyCount);
+			System.arraycopy(this.childArrays, 0, childArrays, 0, this.keyCount);
+
+			this.childKeys = childKeys;
+			this.firstChildren = firstChildren;
+			this.lastChildren = lastChildren;
+			this.childCounts = childCounts;
+			this.childArrays = childArrays;
+		}
+
+		int slot = this.keyCount++;
+		this.childKeys[slot] = name;
+
+		// The index is kept at most half full
+		if (this.keyCount >= INDEXED_KEYS) {
+			if ((this.keyIndex == null) || (this.keyCount * 2 > this.keyIndex.length)) {
+				this.keyIndex = new int[Integer.highestOneBit(this.keyCount) * 4];
+				for (int i = 0; i < this.keyCount; i++) index(i);
+			}
+			else {
+				index(slot);
+			}
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Add a slot to the key index
+	 */
+	private void index(int slot) {
+		int mask = this.keyIndex.length - 1;
+		int index = this.childKeys[slot].hashCode() & mask;
+
+		while (this.keyIndex[index] != 0) index = (index + 1) & mask;
+		this.keyIndex[index] = slot + 1;
+	}
+}
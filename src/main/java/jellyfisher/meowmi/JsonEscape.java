@@ -0,0 +1,102 @@
+package jellyfisher.meowmi;
+
+/**
+ * Writes keys and data strings as JSON strings.  Quotes, backslashes and control characters are escaped as the JSON grammar
+ * requires; every other character, including non ASCII characters, is written as is.
+ *
+ * The characters needing an escape are found through a table indexed by the character, and the runs of characters in between
+ * are appended in one call, so a string without anything to escape is one scan and one copy.
+ */
+class JsonEscape {
+
+	// Escape sequence of each ASCII character, null if the character is written as is
+	private static final String[] ESCAPES = new String[128];
+
+	static {
+		for (int c = 0; c < 0x20; c++) {
+			ESCAPES[c] = String.format("\\u%04x", c);
+		}
+
+		ESCAPES['"'] = "\\\"";
+		ESCAPES['\\'] = "\\\\";
+		ESCAPES['\b'] = "\\b";
+		ESCAPES['\f'] = "\\f";
+		ESCAPES['\n'] = "\\n";
+		ESCAPES['\r'] = "\\r";
+		ESCAPES['\t'] = "\\t";
+	}
+
+	/**
+	 * Write a value as a JSON string, wrapped in double quote
+	 *
+	 * @param out
+	 * Where the JSON string is written to
+	 *
+	 * @param value
+	 * The key or data string
+	 */
+	static void writeString(StringBuilder out, String value) {
+		out.append('"');
+		writeEscaped(out, value);
+		out.append('"');
+	}
+
+	/**
+	 * Write the escaped characters of a value, without the double quotes around them
+	 *
+	 * @param out
+	 * Where the escaped characters are written to
+	 *
+	 * @param value
+	 * The key or data string
+	 */
+	static void writeEscaped(StringBuilder out, String value) {
+		int length = value.length();
+		int start = 0;
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if ((c >= 128) || (ESCAPES[c] == null)) continue;
+
+			// Copy the run of characters before the escaped one at once
+			if (i > start) out.append(value, start, i);
+			out.append(ESCAPES[c]);
+			start = i + 1;
+		}
+
+		if (start == 0) out.append(value);
+		else if (start < length) out.append(value, start, length);
+	}
+
+	/**
+	 * Write the escaped characters of a part of a character array, without the double quotes around them.  This lets a
+	 * large data string be escaped where it was collected, a piece at a time
+	 *
+	 * @param out
+	 * Where the escaped characters are written to
+	 *
+	 * @param value
+	 * The array holding the data string
+	 *
+	 * @param begin
+	 * Index of the first character to write
+	 *
+	 * @param end
+	 * Index after the last character to write
+	 */
+	static void writeEscaped(StringBuilder out, char[] value, int begin, int end) {
+		int start = begin;
+
+		for (int i = begin; i < end; i++) {
+			char c = value[i];
+			if ((c >= 128) || (ESCAPES[c] == null)) continue;
+
+			// Copy the run of characters before the escaped one at once
+			if (i > start) out.append(value, start, i - start);
+			out.append(ESCAPES[c]);
+			start = i + 1;
+		}
+
+		if (start < end) out.append(value, start, end - start);
+	}
+}
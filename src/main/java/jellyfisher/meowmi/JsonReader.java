@@ -0,0 +1,381 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull tokenizer of a JSON text, reading the characters through its own buffer.  Each call to next() reads one token, so
+ * the memory used is the buffer, the longest string or number, and one flag per open object or array; a document is never
+ * held as a whole.  The grammar is checked as the tokens are read: keys only in objects, commas and colons where they
+ * belong, and nothing but whitespace after the top level value.
+ *
+ * Open objects and arrays are tracked in an array instead of by recursion, so a deeply nested document can't overflow the
+ * call stack.
+ */
+class JsonReader {
+
+	static final int START_OBJECT = 1;
+	static final int END_OBJECT = 2;
+	static final int START_ARRAY = 3;
+	static final int END_ARRAY = 4;
+	static final int KEY = 5;
+	static final int STRING = 6;
+	static final int NUMBER = 7;
+	static final int TRUE = 8;
+	static final int FALSE = 9;
+	static final int NULL = 10;
+	static final int END = 11;
+
+	// What the next token can be: a value, the first value of an array or its end, the first key of an object or its end,
+	// a key, or a comma or the end of the enclosing object or array
+	private static final int VALUE = 0;
+	private static final int FIRST_VALUE = 1;
+	private static final int FIRST_KEY = 2;
+	private static final int NEXT_KEY = 3;
+	private static final int AFTER_VALUE = 4;
+
+	private Reader reader;
+	private char[] buffer = new char[8 * 1024];
+	private int position;
+	private int limit;
+
+	// Number of characters read before the buffer, for the error messages
+	private long offset;
+
+	private int state = VALUE;
+
+	// Open objects (true) and arrays (false)
+	private boolean[] containers = new boolean[32];
+	private int depth;
+
+	// Text of the last key, string or number
+	private StringBuilder text = new StringBuilder();
+
+	/**
+	 * Constructor
+	 *
+	 * @param reader
+	 * Where the JSON text is read from
+	 */
+	JsonReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Read the next token
+	 *
+	 * @return
+	 * The token, END once the top level value is complete
+	 *
+	 * @throws Exception
+	 * The JSON text is not valid
+	 */
+	int next() throws Exception {
+		int c = skipWhitespace();
+
+		if (this.state == AFTER_VALUE) {
+			if (this.depth == 0) {
+				if (c < 0) return END;
+				throw error("unexpected character after the end of the JSON text", c);
+			}
+
+			if (c == ',') {
+				this.position++;
+				this.state = this.containers[this.depth - 1] ? NEXT_KEY : VALUE;
+				c = skipWhitespace();
+			}
+			else return endContainer(c);
+		}
+
+		switch (this.state) {
+		case FIRST_KEY:
+			if (c == '}') return endContainer(c);
+			return readKey(c);
+
+		case NEXT_KEY:
+			return readKey(c);
+
+		case FIRST_VALUE:
+			if (c == ']') return endContainer(c);
+			return readValue(c);
+
+		default:
+			return readValue(c);
+		}
+	}
+
+	/**
+	 * Read a key starting with the character c, and the colon after it
+	 */
+	private int readKey(int c) throws Exception {
+		if (c != '"') throw error("expected a key", c);
+		readString();
+
+		c = skipWhitespace();
+		if (c != ':') throw error("expected a colon after the key", c);
+		this.position++;
+
+		this.state = VALUE;
+		return KEY;
+	}
+
+	/**
+	 * Get the text of the last key, string or number read
+	 */
+	String getText() {
+		return this.text.toString();
+	}
+
+	/**
+	 * Read a value starting with the character c
+	 */
+	private int readValue(int c) throws Exception {
+		this.state = AFTER_VALUE;
+
+		switch (c) {
+		case '{':
+			this.position++;
+			startContainer(true);
+			this.state = FIRST_KEY;
+			return START_OBJECT;
+
+		case '[':
+			this.position++;
+			startContainer(false);
+			this.state = FIRST_VALUE;
+			return START_ARRAY;
+
+		case '"':
+			readString();
+			return STRING;
+
+		case 't':
+			readLiteral("true");
+			return TRUE;
+
+		case 'f':
+			readLiteral("false");
+			return FALSE;
+
+		case 'n':
+			readLiteral("null");
+			return NULL;
+
+		default:
+			if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+				readNumber();
+				return NUMBER;
+			}
+			throw error("expected a value", c);
+		}
+	}
+
+	/**
+	 * Open an object or an array
+	 */
+	private void startContainer(boolean object) {
+		if (this.depth == this.containers.length) {
+			boolean[] grown = new boolean[this.depth * 2];
+			System.arraycopy(this.containers, 0, grown, 0, this.depth);
+			this.containers = grown;
+		}
+
+		this.containers[this.depth++] = object;
+	}
+
+	/**
+	 * Close the innermost object or array with the character c
+	 */
+	private int endContainer(int c) throws Exception {
+		boolean object = this.containers[this.depth - 1];
+
+		if (c != (object ? '}' : ']')) {
+			throw error(object ? "expected a comma or the end of the object" : "expected a comma or the end of the array", c);
+		}
+
+		this.position++;
+		this.depth--;
+		this.state = AFTER_VALUE;
+
+		return object ? END_OBJECT : END_ARRAY;
+	}
+
+	/**
+	 * Read a string from its opening double quote, unescaping it into the text
+	 */
+	private void readString() throws Exception {
+		this.position++;
+		this.text.setLength(0);
+
+		while (true) {
+			if ((this.position == this.limit) && ! fill()) throw error("unterminated string", -1);
+
+			// Copy the run of characters up to the next quote, backslash or control character at once
+			int start = this.position;
+			char c = 0;
+
+			while (this.position < this.limit) {
+				c = this.buffer[this.position];
+				if ((c == '"') || (c == '\\') || (c < ' ')) break;
+				this.position++;
+			}
+
+			this.text.append(this.buffer, start, this.position - start);
+			if (this.position == this.limit) continue;
+
+			if (c == '"') {
+				this.position++;
+				return;
+			}
+			if (c < ' ') throw error("control character inside a string", c);
+
+			this.position++;
+			this.text.append(readEscape());
+		}
+	}
+
+	/**
+	 * Read an escape sequence after its backslash
+	 */
+	private char readEscape() throws Exception {
+		int c = read();
+
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0) throw error("invalid unicode escape", -1);
+				value = (value << 4) | digit;
+			}
+			return (char) value;
+		default:
+			throw error("invalid escape sequence", c);
+		}
+	}
+
+	/**
+	 * Read a number into the text, checking its grammar: -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+	 */
+	private void readNumber() throws Exception {
+		this.text.setLength(0);
+
+		if (peek() == '-') this.text.append((char) read());
+
+		if (peek() == '0') this.text.append((char) read());
+		else if (readDigits() == 0) throw error("invalid number", peek());
+
+		if (peek() == '.') {
+			this.text.append((char) read());
+			if (readDigits() == 0) throw error("invalid number", peek());
+		}
+
+		if ((peek() == 'e') || (peek() == 'E')) {
+			this.text.append((char) read());
+			if ((peek() == '+') || (peek() == '-')) this.text.append((char) read());
+			if (readDigits() == 0) throw error("invalid number", peek());
+		}
+	}
+
+	/**
+	 * Read a run of digits into the text
+	 *
+	 * @return
+	 * Number of digits read
+	 */
+	private int readDigits() throws IOException {
+		int count = 0;
+
+		while ((peek() >= '0') && (peek() <= '9')) {
+			this.text.append((char) read());
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Read the literal true, false or null
+	 */
+	private void readLiteral(String literal) throws Exception {
+		for (int i = 0; i < literal.length(); i++) {
+			int c = read();
+			if (c != literal.charAt(i)) throw error("expected " + literal, c);
+		}
+	}
+
+	/**
+	 * Skip whitespace
+	 *
+	 * @return
+	 * The next character, which is not consumed, or -1 at the end of the JSON text
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			if ((this.position == this.limit) && ! fill()) return -1;
+
+			char c = this.buffer[this.position];
+			if ((c != ' ') && (c != '\n') && (c != '\r') && (c != '\t')) return c;
+
+			this.position++;
+		}
+	}
+
+	/**
+	 * Get the next character without consuming it, or -1 at the end of the JSON text
+	 */
+	private int peek() throws IOException {
+		if ((this.position == this.limit) && ! fill()) return -1;
+		return this.buffer[this.position];
+	}
+
+	/**
+	 * Consume the next character, or get -1 at the end of the JSON text
+	 */
+	private int read() throws IOException {
+		if ((this.position == this.limit) && ! fill()) return -1;
+		return this.buffer[this.position++];
+	}
+
+	/**
+	 * Read the next characters into the buffer once all of it is consumed
+	 *
+	 * @return
+	 * False at the end of the JSON text
+	 */
+	private boolean fill() throws IOException {
+		this.offset += this.limit;
+		this.position = 0;
+		this.limit = 0;
+
+		int count = this.reader.read(this.buffer, 0, this.buffer.length);
+		if (count <= 0) return false;
+
+		this.limit = count;
+		return true;
+	}
+
+	/**
+	 * Build the error of invalid JSON text, at the current offset
+	 */
+	private Exception error(String message, int c) {
+		String found = (c < 0) ? "the end of the JSON text" : (c < ' ') ? String.format("\\u%04x", c) : "'" + (char) c + "'";
+
+		return new Exception("Encounter error when parsing the JSON: " + message + ", found " + found + " at offset "
+				+ (this.offset + this.position));
+	}
+}
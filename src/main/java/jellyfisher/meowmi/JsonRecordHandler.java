@@ -0,0 +1,19 @@
+package jellyfisher.meowmi;
+
+/**
+ * Receives the records converted by XmlToJsonConverter.convertRecords(), one JSON string per record, as soon as the end
+ * element of each record has been read.
+ */
+public interface JsonRecordHandler {
+
+	/**
+	 * Handle one converted record
+	 *
+	 * @param json
+	 * The JSON string of the record, the same as converting the record element as a document on its own i.e. {"record":{...}}
+	 *
+	 * @throws Exception
+	 * Stops the conversion
+	 */
+	void record(String json) throws Exception;
+}
@@ -0,0 +1,120 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+
+/**
+ * Receives the JSON value of a converted document one token at a time, in document order, and encodes it in its own output
+ * format.  JsonTextSink writes JSON text and CborSink writes CBOR, so the JsonElement tree is serialized the same way whatever
+ * the format.
+ *
+ * The sizes of the objects and arrays are known from the tree before their members are written, so formats with length
+ * prefixed containers don't need to buffer anything.  A value handed over as JSON text with json() is only written by
+ * JsonTextSink.
+ */
+interface JsonSink {
+
+	/**
+	 * Start an object.  The members follow as key() or attributeKey() calls, each followed by its value
+	 *
+	 * @param size
+	 * Number of key-value pairs in the object
+	 *
+	 * @throws IOException
+	 */
+	void startObject(int size) throws IOException;
+
+	/**
+	 * End the most recent open object
+	 *
+	 * @throws IOException
+	 */
+	void endObject() throws IOException;
+
+	/**
+	 * Start an array.  The items follow as values
+	 *
+	 * @param size
+	 * Number of items in the array
+	 *
+	 * @throws IOException
+	 */
+	void startArray(int size) throws IOException;
+
+	/**
+	 * End the most recent open array
+	 *
+	 * @throws IOException
+	 */
+	void endArray() throws IOException;
+
+	/**
+	 * Write the key of the next object member
+	 *
+	 * @param key
+	 * Object key
+	 *
+	 * @throws IOException
+	 */
+	void key(String key) throws IOException;
+
+	/**
+	 * Write the key of the next object member for an attribute, i.e. "@id".  The prefix is added here, so no key String is
+	 * created per attribute
+	 *
+	 * @param name
+	 * Attribute key without the "@" prefix
+	 *
+	 * @throws IOException
+	 */
+	void attributeKey(String name) throws IOException;
+
+	/**
+	 * Write a string value
+	 *
+	 * @param value
+	 * The data string or attribute value
+	 *
+	 * @throws IOException
+	 */
+	void string(String value) throws IOException;
+
+	/**
+	 * Write a number value
+	 *
+	 * @param value
+	 * The number, already checked to follow the JSON number grammar
+	 *
+	 * @throws IOException
+	 */
+	void number(String value) throws IOException;
+
+	/**
+	 * Write a boolean value
+	 *
+	 * @param value
+	 * The boolean
+	 *
+	 * @throws IOException
+	 */
+	void bool(boolean value) throws IOException;
+
+	/**
+	 * Write a null value
+	 *
+	 * @throws IOException
+	 */
+	void nullValue() throws IOException;
+
+	/**
+	 * Write a value that was already serialized as JSON text, i.e. a record converted by another thread
+	 *
+	 * @param json
+	 * The JSON text of the value
+	 *
+	 * @throws IOException
+	 *
+	 * @throws UnsupportedOperationException
+	 * The format can't take JSON text
+	 */
+	void json(String json) throws IOException;
+}
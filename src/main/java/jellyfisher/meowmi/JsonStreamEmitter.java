@@ -0,0 +1,835 @@
+package jellyfisher.meowmi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the JSON representation of an XML document while the document is being read.  Unlike the JsonElement tree used by
+ * XmlToJsonOutputString.parse(), finished JSON fragments are handed to the writer as soon as they can no longer change, so
+ * the memory used is bounded by the depth of the document and the size of a single pending element, not by the size of the document.
+ *
+ * An element can only be written out once we know whether it is a single value or the first item of an array.  For that reason
+ * the first element of every run of same named siblings is kept in a buffer until the next sibling (or the parent "end element")
+ * shows whether the run continues.  From the second item on, array items are written straight to the output.  Repeated elements
+ * are grouped into one array when they are adjacent siblings.  A repeated element separated from its run by a different
+ * sibling would need the run to be written again, after it was handed to the writer, so the conversion fails instead of
+ * writing the key twice; such documents need the tree conversion.
+ *
+ * Only the children of the root need a buffer of their own, since deeper elements are written into the buffer of their
+ * ancestor right away; if a run turns out to be an array, the opening bracket is inserted in front of its first item.  A run
+ * with the array shape hint is known to be an array from its first item, so it is never buffered.  The frames are kept in an
+ * array indexed by depth and reused from one element to the next, so no state is allocated per element.
+ *
+ * The data string of an element with nothing else in it is escaped from the array where it was collected, without becoming a
+ * String.  When the element writes to the output, a large data string is escaped and handed to the writer a piece at a time.
+ *
+ * With a conversion plan (see ConversionPlan), a run whose key the plan knows to repeat is opened as an array at its first
+ * item, like a run with the array hint, and neither buffered nor shifted.  The output is held back from the writer until
+ * the second item shows up; if it never does, the bracket is taken back and the plan is told.
+ *
+ * With a spill budget, a buffer growing beyond the budget moves its characters to a SpillFile and goes on with an empty
+ * buffer, and the file is copied to the writer when the buffer is written out.  Since the beginning of the buffer may be in
+ * the file by the time a run turns out to be an array, the bracket is then never inserted: the first item of a run in a
+ * buffer starts with a placeholder character that is overwritten with the bracket, or skipped when the output is written.
+ * The placeholder is the NUL character, which the JSON strings never hold unescaped.
+ */
+class JsonStreamEmitter implements XmlContentHandler {
+
+	// Buffers growing beyond this size for a large element are not kept for the next element
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	// Output written to the writer every few kilobytes, appending to the writer a few characters at a time is slow
+	private static final int WRITE_THRESHOLD = 8 * 1024;
+
+	private Writer writer;
+	private StringBuilder output = new StringBuilder();
+	private char[] chunk = new char[WRITE_THRESHOLD];
+
+	// Pseudo element representing the document itself.  It is the parent of the root element and always writes straight to the output
+	private Frame documentFrame;
+
+	// Open elements indexed by depth, the most recent visited element is at the top.  Frames above the top are kept for reuse
+	private Frame[] frames = new Frame[16];
+	private int depth;
+
+	// Writes the values of the data strings and attributes into the output of their element
+	private JsonTextSink valueSink = new JsonTextSink();
+
+	// Metrics of the document: runs turned into an array, characters moved to insert their opening bracket, and the
+	// largest element held in a buffer
+	private long arrayPromotions;
+	private long shiftedChars;
+	private long peakBufferedChars;
+
+	// Data string being collected for the element at the top of the stack
+	private TextCollector text = new TextCollector();
+
+	// Plans learned per document type, the plan of the document and its repeated keys (null while it is learned)
+	private ConversionPlans plans;
+	private ConversionPlan plan;
+	private Set<String> repeatedKeys;
+
+	// Keys of the runs which turned into an array and of the runs with a single item, while the plan is learned
+	private HashSet<String> promotedKeys = new HashSet<String>();
+	private HashSet<String> singleKeys = new HashSet<String>();
+
+	// Number of runs opened as an array on the plan's word, whose first item is still in the output of the document
+	private int heldRuns;
+
+	// Number of characters from which a buffer is spilled to a file (0 to keep buffers in memory), and where the files go
+	private int spillBudget;
+	private File spillDirectory;
+
+	/**
+	 * Constructor
+	 *
+	 * @param writer
+	 * The writer where the JSON output is written to
+	 */
+	JsonStreamEmitter(Writer writer) {
+		reset(writer);
+	}
+
+	/**
+	 * Drop the state of the previous document so the emitter can be used for the next one
+	 *
+	 * @param writer
+	 * The writer where the JSON output of the next document is written to
+	 */
+	void reset(Writer writer) {
+		this.writer = writer;
+		this.depth = 0;
+		this.text.reset();
+
+		this.arrayPromotions = 0;
+		this.shiftedChars = 0;
+		this.peakBufferedChars = 0;
+
+		this.plan = null;
+		this.repeatedKeys = null;
+		this.promotedKeys.clear();
+		this.singleKeys.clear();
+		this.heldRuns = 0;
+
+		// Files left by a failed conversion
+		for (Frame frame : this.frames) {
+			if (frame != null) frame.closeSpills();
+		}
+
+		// An output that grew for a large element is not kept
+		if (this.output.capacity() > MAX_RETAINED_BUFFER) this.output = new StringBuilder();
+		this.output.setLength(0);
+
+		this.documentFrame = new Frame();
+		this.documentFrame.reset(null);
+		this.documentFrame.output = this.output;
+	}
+
+	/**
+	 * Handle the start element i.e. <person>
+	 *
+	 * @param name
+	 * Element key
+	 *
+	 * @param hints
+	 * Shape hints of the element
+	 *
+	 * @throws Exception
+	 */
+	public void startElement(String name, int hints) throws Exception {
+		Frame parent = currentFrame();
+		Frame frame = pushFrame(parent);
+		frame.hints = hints;
+
+		// The root element is never part of an array, so it's written straight to the output
+		if (parent == this.documentFrame) {
+			if (parent.memberCount > 0) {
+				throw new Exception("Encounter error when parsing the XML: there are more than one root element");
+			}
+
+			parent.output.append('{');
+			writeKey(parent, name);
+			frame.output = parent.output;
+			frame.owner = null;
+
+			if (this.plans != null) {
+				this.plan = this.plans.find(name);
+				if (this.plan != null) this.repeatedKeys = this.plan.getRepeatedKeys();
+			}
+			return;
+		}
+
+		flushText(parent);
+		openObject(parent);
+
+		// Same element as the previous sibling, the run is an array now.  If this is the second item, the first one is either
+		// still in the buffer and written out together with the array opening bracket, or the bracket is inserted in front of it
+		if (name.equals(parent.runName)) {
+			// The plan was right, the array opened at the first item stays
+			if (parent.runPlanned) {
+				parent.runPlanned = false;
+				this.arrayPromotions++;
+				if (parent.output == this.output) this.heldRuns--;
+			}
+
+			else if (! parent.runArray) {
+				parent.runArray = true;
+				this.arrayPromotions++;
+				if ((this.plan != null) && (this.repeatedKeys == null)) this.promotedKeys.add(name);
+
+				if (parent.runFirst != null) {
+					writeKey(parent, name);
+					parent.output.append('[');
+					writeFirst(parent);
+				}
+				else if (this.spillBudget > 0) {
+					setChar(parent, parent.runStart, '[');
+				}
+				else {
+					this.shiftedChars += parent.output.length() - parent.runStart;
+					parent.output.insert((int) parent.runStart, '[');
+				}
+			}
+
+			parent.output.append(',');
+			frame.output = parent.output;
+			frame.owner = parent.owner;
+		}
+
+		// New run of siblings.  A key whose run was closed already can't be grouped with it anymore
+		else {
+			if (parent.closedRuns.contains(name)) {
+				throw new Exception("Encounter error when parsing the XML: the element \"" + name + "\" repeats after a different "
+						+ "sibling, which the streaming conversion can't group into one array; use the tree conversion instead");
+			}
+
+			closeRun(parent);
+
+			parent.runName = name;
+			parent.runArray = (hints & XmlShapeHints.ARRAY) != 0;
+			// The output of the document can't be held back for the plan when buffers are spilled, it could grow without bound
+			parent.runPlanned = (! parent.runArray) && (this.repeatedKeys != null) && this.repeatedKeys.contains(name)
+					&& ((this.spillBudget == 0) || (parent.output != this.output));
+
+			// The run is an array whatever follows, or the plan says so, open it right away
+			if (parent.runArray || parent.runPlanned) {
+				writeKey(parent, name);
+				parent.runStart = position(parent);
+				parent.output.append('[');
+				frame.output = parent.output;
+				frame.owner = parent.owner;
+
+				if (parent.runPlanned) {
+					parent.runArray = true;
+					if (parent.output == this.output) this.heldRuns++;
+				}
+			}
+
+			// The parent is buffered, write the element into the same buffer and remember where its value starts
+			else if (parent.output != this.output) {
+				writeKey(parent, name);
+				parent.runStart = position(parent);
+				if (this.spillBudget > 0) parent.output.append('\0');
+
+				frame.output = parent.output;
+				frame.owner = parent.owner;
+			}
+
+			// The parent writes to the output, buffer this element until we know if the run is an array or not
+			else {
+				frame.buffer.setLength(0);
+				frame.output = frame.buffer;
+				frame.owner = frame;
+			}
+		}
+	}
+
+	/**
+	 * Handle an attribute of the most recent start element
+	 *
+	 * @param name
+	 * Attribute key without the "@" prefix
+	 *
+	 * @param value
+	 * Attribute value
+	 *
+	 * @param hints
+	 * Shape hints of the attribute
+	 *
+	 * @throws IOException
+	 */
+	public void attribute(String name, String value, int hints) throws IOException {
+		Frame frame = currentFrame();
+
+		if (frame.attributes.length() > 0) frame.attributes.append(',');
+		frame.attributes.append("\"@");
+		JsonEscape.writeEscaped(frame.attributes, name);
+		frame.attributes.append("\":");
+		writeValue(frame.attributes, value, hints);
+		frame.attributeCount++;
+	}
+
+	/**
+	 * Handle a data string i.e. <person>data</person>.  Consecutive data strings are collected together until the next element
+	 * event shows the text is complete
+	 *
+	 * @param text
+	 * Character array holding the raw data string
+	 *
+	 * @param start
+	 * Offset of the data string in the array
+	 *
+	 * @param length
+	 * Length of the data string
+	 *
+	 * @throws IOException
+	 */
+	public void characters(char[] text, int start, int length) throws IOException {
+		// Data outside the root element (i.e. whitespace between prolog and root) doesn't belong to any element
+		if (this.depth == 0) return;
+
+		this.text.append(text, start, length);
+	}
+
+	/**
+	 * Handle the end element i.e. </person>.  Once the element ends its complete JSON value is written to its output
+	 *
+	 * @throws Exception
+	 */
+	public void endElement() throws Exception {
+		Frame frame = this.frames[--this.depth];
+		Frame parent = frame.parent;
+
+		// Only data string, escaped from where it was collected unless it went to the sidecar or has a shape hint.  A typed
+		// value is scanned there too, and written as it is if it's a number or a boolean
+		if (frame.texts.isEmpty() && (! frame.objectOpen) && (frame.attributeCount == 0) && (! this.text.isEmpty())
+				&& this.text.isCollected() && ((frame.hints & (XmlShapeHints.NUMBER | XmlShapeHints.BOOLEAN)) == 0)) {
+			if (((frame.hints & (XmlShapeHints.TYPED | XmlShapeHints.TEXT)) == XmlShapeHints.TYPED)
+					&& (XmlShapeHints.typeOf(this.text.getText()) != XmlShapeHints.STRING)) {
+				frame.output.append(this.text.getChars(), 0, this.text.getLength());
+				this.text.clear();
+			}
+			else {
+				writeText(frame);
+			}
+		}
+		else {
+			flushText(frame);
+			writeValue(frame);
+		}
+
+		if ((this.spillBudget > 0) && (frame.owner != null)) checkBudget(frame.owner);
+
+		// The element was buffered, hand it to the parent which decides how it will be written
+		if (frame.output != parent.output) {
+			long length = position(frame);
+			if (length > this.peakBufferedChars) this.peakBufferedChars = length;
+
+			parent.runFirst = frame.buffer;
+			parent.runFirstSpill = frame.spill;
+			frame.spill = null;
+		}
+
+		// The root element is done, the document is complete
+		if (parent == this.documentFrame) {
+			parent.output.append('}');
+			writeOutput();
+			this.writer.flush();
+
+			if ((this.plan != null) && (this.repeatedKeys == null)) this.plan.learnShape(this.promotedKeys, this.singleKeys);
+		}
+
+		// Hand the finished elements to the writer, unless a bracket in the output may still be taken back
+		else if ((this.output.length() >= WRITE_THRESHOLD) && (this.heldRuns == 0)) {
+			writeOutput();
+		}
+	}
+
+	/**
+	 * Handle the end of the XML stream
+	 *
+	 * @throws Exception
+	 */
+	public void endDocument() throws Exception {
+		if ((this.documentFrame.memberCount != 1) || (this.depth > 0)) {
+			throw new Exception("Encounter error when parsing the XML: the document doesn't have exactly one complete root element");
+		}
+
+		this.writer.flush();
+	}
+
+	/**
+	 * Write the data strings from a length on to a sidecar, see TextSidecar
+	 *
+	 * @param sidecar
+	 * Where large data strings go, or null to write every data string into the JSON
+	 *
+	 * @param threshold
+	 * Length from which a data string goes to the sidecar
+	 */
+	void setTextSidecar(TextSidecar sidecar, int threshold) {
+		this.text.setSidecar(sidecar, threshold);
+	}
+
+	/**
+	 * Spill the buffers growing beyond a budget to temporary files
+	 *
+	 * @param budget
+	 * Number of characters from which a buffer is spilled, or 0 to keep every buffer in memory
+	 *
+	 * @param directory
+	 * Where the files go, or null for the default temporary directory
+	 */
+	void setSpill(int budget, File directory) {
+		this.spillBudget = budget;
+		this.spillDirectory = directory;
+	}
+
+	/**
+	 * Use the plans learned per document type for the next documents
+	 *
+	 * @param plans
+	 * The plans of the converter, or null to convert without plans
+	 */
+	void setPlans(ConversionPlans plans) {
+		this.plans = plans;
+	}
+
+	/**
+	 * Get the number of runs of same named siblings turned into an array when their second item showed up
+	 */
+	long getArrayPromotions() {
+		return this.arrayPromotions;
+	}
+
+	/**
+	 * Get the number of characters moved to insert the opening bracket of an array in front of its first item
+	 */
+	long getShiftedChars() {
+		return this.shiftedChars;
+	}
+
+	/**
+	 * Get the size of the largest element held in a buffer until it was known if it starts an array
+	 */
+	long getPeakBufferedChars() {
+		return this.peakBufferedChars;
+	}
+
+	/**
+	 * Write the output collected so far to the writer
+	 *
+	 * @throws IOException
+	 */
+	private void writeOutput() throws IOException {
+		for (int start = 0, length = this.output.length(); start < length; start += this.chunk.length) {
+			int end = Math.min(start + this.chunk.length, length);
+			this.output.getChars(start, end, this.chunk, 0);
+			writeChunk(end - start);
+		}
+
+		this.output.setLength(0);
+	}
+
+	/**
+	 * Write the characters of the chunk to the writer, skipping the placeholders of the runs which were not arrays
+	 *
+	 * @param length
+	 * Number of characters in the chunk
+	 *
+	 * @throws IOException
+	 */
+	private void writeChunk(int length) throws IOException {
+		if (this.spillBudget == 0) {
+			this.writer.write(this.chunk, 0, length);
+			return;
+		}
+
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			if (this.chunk[i] != 0) continue;
+
+			if (i > start) this.writer.write(this.chunk, start, i - start);
+			start = i + 1;
+		}
+
+		if (start < length) this.writer.write(this.chunk, start, length - start);
+	}
+
+	/**
+	 * Write the buffered first item of a run to the output of the document.  The part of it in a spill file goes to the
+	 * writer right away, after what the output holds so far
+	 *
+	 * @param frame
+	 * The parent element frame of the run
+	 *
+	 * @throws IOException
+	 */
+	private void writeFirst(Frame frame) throws IOException {
+		if (frame.runFirstSpill != null) {
+			writeOutput();
+
+			int count;
+			for (long index = 0; (count = frame.runFirstSpill.read(index, this.chunk)) > 0; index += count) {
+				writeChunk(count);
+			}
+
+			frame.runFirstSpill.close();
+			frame.runFirstSpill = null;
+		}
+
+		frame.output.append(frame.runFirst);
+		frame.runFirst = null;
+	}
+
+	/**
+	 * Spill a buffer to its file once it holds more characters than the budget
+	 *
+	 * @param owner
+	 * The frame owning the buffer
+	 *
+	 * @throws IOException
+	 */
+	private void checkBudget(Frame owner) throws IOException {
+		if (owner.buffer.length() <= this.spillBudget) return;
+
+		if (owner.spill == null) owner.spill = new SpillFile(this.spillDirectory);
+
+		owner.spill.append(owner.buffer, 0, owner.buffer.length());
+		owner.buffer.setLength(0);
+	}
+
+	/**
+	 * Get the position following the last character written to the output of an element, counting the characters of its
+	 * buffer which were spilled
+	 */
+	private long position(Frame frame) {
+		long position = frame.output.length();
+		if ((frame.owner != null) && (frame.owner.spill != null)) position += frame.owner.spill.length();
+
+		return position;
+	}
+
+	/**
+	 * Overwrite a character of the output of an element, in its buffer or in the spill file of the buffer
+	 *
+	 * @param frame
+	 * The element frame
+	 *
+	 * @param position
+	 * Position of the character, see position()
+	 *
+	 * @param c
+	 * The new character
+	 *
+	 * @throws IOException
+	 */
+	private void setChar(Frame frame, long position, char c) throws IOException {
+		long spilled = ((frame.owner != null) && (frame.owner.spill != null)) ? frame.owner.spill.length() : 0;
+
+		if (position < spilled) frame.owner.spill.set(position, c);
+		else frame.output.setCharAt((int) (position - spilled), c);
+	}
+
+	/**
+	 * Get the top of the element stack, or the document frame if no element is open
+	 */
+	private Frame currentFrame() {
+		if (this.depth == 0) return this.documentFrame;
+		return this.frames[this.depth - 1];
+	}
+
+	/**
+	 * Put the frame of a new element at the top of the stack, reusing the frame left at that depth by a previous element
+	 */
+	private Frame pushFrame(Frame parent) {
+		if (this.depth == this.frames.length) {
+			Frame[] grown = new Frame[this.depth * 2];
+			System.arraycopy(this.frames, 0, grown, 0, this.depth);
+			this.frames = grown;
+		}
+
+		Frame frame = this.frames[this.depth];
+		if (frame == null) {
+			frame = new Frame();
+			this.frames[this.depth] = frame;
+		}
+
+		frame.reset(parent);
+		this.depth++;
+
+		return frame;
+	}
+
+	/**
+	 * Open the JSON object of an element and write the attributes discovered at its start element.  This is done when the first
+	 * inner element is discovered, or when the element ends and has attributes
+	 *
+	 * @param frame
+	 * The element frame
+	 *
+	 */
+	private void openObject(Frame frame) {
+		if (frame.objectOpen) return;
+
+		frame.output.append('{').append(frame.attributes);
+		frame.memberCount = frame.attributeCount;
+		frame.objectOpen = true;
+	}
+
+	/**
+	 * Write the complete JSON value of an element to its output
+	 *
+	 * @param frame
+	 * The element frame
+	 *
+	 * @throws IOException
+	 */
+	private void writeValue(Frame frame) throws IOException {
+		// The element has inner elements, so the object was already opened. Close the last run of siblings and add "#text" if any
+		if (frame.objectOpen) {
+			closeRun(frame);
+			writeTexts(frame);
+			frame.output.append('}');
+		}
+
+		// No inner elements but attributes, the element is an object with "#text" as the data string
+		else if (frame.attributeCount > 0) {
+			openObject(frame);
+			writeTexts(frame);
+			frame.output.append('}');
+		}
+
+		// Only data string
+		else if (frame.texts.size() > 0) {
+			writeValue(frame.output, frame.texts.get(0), frame.hints);
+		}
+
+		// Empty element i.e. <person/>, null when the values are typed
+		else {
+			writeValue(frame.output, "", frame.hints);
+		}
+	}
+
+	/**
+	 * Write out the run of same named siblings that's currently open, either as a single value or by closing the array
+	 *
+	 * @param frame
+	 * The parent element frame of the run
+	 *
+	 */
+	private void closeRun(Frame frame) throws IOException {
+		// The plan was wrong, the run has a single item.  Take the bracket back and drop the key from the plan
+		if (frame.runPlanned) {
+			if (this.spillBudget > 0) {
+				setChar(frame, frame.runStart, '\0');
+			}
+			else {
+				this.shiftedChars += frame.output.length() - frame.runStart - 1;
+				frame.output.deleteCharAt((int) frame.runStart);
+			}
+
+			if (frame.output == this.output) this.heldRuns--;
+			this.plan.dropRepeatedKey(frame.runName);
+		}
+
+		// A single value is either already written in place, or still in the buffer
+		else if (frame.runArray) {
+			frame.output.append(']');
+		}
+		else {
+			if (frame.runFirst != null) {
+				writeKey(frame, frame.runName);
+				writeFirst(frame);
+			}
+
+			if ((this.plan != null) && (this.repeatedKeys == null) && (frame.runName != null)) this.singleKeys.add(frame.runName);
+		}
+
+		if (frame.runName != null) frame.closedRuns.add(frame.runName);
+
+		frame.runName = null;
+		frame.runArray = false;
+		frame.runPlanned = false;
+	}
+
+	/**
+	 * Write the "#text" key-value pair for all the data strings discovered for an element
+	 *
+	 * @param frame
+	 * The element frame
+	 *
+	 * @throws IOException
+	 */
+	private void writeTexts(Frame frame) throws IOException {
+		if (frame.texts.isEmpty()) return;
+
+		writeKey(frame, XmlToJsonOutputString.TEXT);
+
+		if (frame.texts.size() == 1) {
+			writeValue(frame.output, frame.texts.get(0), frame.hints);
+			return;
+		}
+
+		frame.output.append('[');
+		for (int i = 0; i < frame.texts.size(); i++) {
+			if (i > 0) frame.output.append(',');
+			writeValue(frame.output, frame.texts.get(i), frame.hints);
+		}
+		frame.output.append(']');
+	}
+
+	/**
+	 * Write an object key, preceded by a comma if the object has members already
+	 *
+	 * @param frame
+	 * The element frame owning the object
+	 *
+	 * @param key
+	 * Object key
+	 *
+	 */
+	private void writeKey(Frame frame, String key) {
+		if (frame.memberCount > 0) frame.output.append(',');
+		JsonEscape.writeString(frame.output, key);
+		frame.output.append(':');
+		frame.memberCount++;
+	}
+
+	/**
+	 * Move the collected data string of an element into its list of data strings.  Skip this data if the entire thing is whitespace
+	 *
+	 * @param frame
+	 * The element frame
+	 */
+	private void flushText(Frame frame) throws IOException {
+		if (this.text.isEmpty()) return;
+
+		String data = this.text.take();
+		if (data != null) frame.texts.add(data);
+	}
+
+	/**
+	 * Write the collected data string as a JSON string, escaping it in place.  The output of the document is handed to the
+	 * writer every few kilobytes of escaped text, so a large data string is never escaped as a whole in memory
+	 *
+	 * @param frame
+	 * The element frame
+	 *
+	 * @throws IOException
+	 */
+	private void writeText(Frame frame) throws IOException {
+		StringBuilder output = frame.output;
+		char[] chars = this.text.getChars();
+		int length = this.text.getLength();
+
+		output.append('"');
+
+		for (int start = 0; start < length; start += WRITE_THRESHOLD) {
+			JsonEscape.writeEscaped(output, chars, start, Math.min(start + WRITE_THRESHOLD, length));
+
+			if (output == this.output) {
+				if ((output.length() >= WRITE_THRESHOLD) && (this.heldRuns == 0)) writeOutput();
+			}
+			else if (this.spillBudget > 0) {
+				checkBudget(frame.owner);
+			}
+		}
+
+		output.append('"');
+		this.text.clear();
+	}
+
+	/**
+	 * Write a data string or attribute value as a JSON value, following its shape hints
+	 */
+	private void writeValue(StringBuilder output, String value, int hints) throws IOException {
+		this.valueSink.reset(output);
+		XmlShapeHints.writeValue(this.valueSink, value, hints);
+	}
+
+	/**
+	 * The state kept for each open element.  Frames are reused, the buffers are kept from one element to the next
+	 */
+	private static class Frame {
+
+		Frame parent;
+
+		// Shape hints of the element
+		int hints;
+
+		// Where the JSON value of this element is written to. Either the parent's output, or the buffer if the element is the
+		// first of a run whose parent writes to the output of the document
+		StringBuilder output;
+		StringBuilder buffer = new StringBuilder();
+
+		// The frame whose buffer the output is (null for the output of the document), and the file its buffer was spilled to
+		Frame owner;
+		SpillFile spill;
+
+		// Attributes discovered at the start element, already formatted as JSON key-value pairs
+		StringBuilder attributes = new StringBuilder();
+		int attributeCount;
+
+		// Complete data strings discovered so far
+		ArrayList<String> texts = new ArrayList<String>();
+
+		// Whether "{" has been written, and how many key-value pairs the object has
+		boolean objectOpen;
+		int memberCount;
+
+		// The run of same named inner elements currently being written, whether it is known to be an array, whether it was
+		// opened as an array on the plan's word and has a single item so far, where the value of its first item starts in the
+		// output, or the buffer holding the first item
+		String runName;
+		boolean runArray;
+		boolean runPlanned;
+		long runStart;
+		StringBuilder runFirst;
+		SpillFile runFirstSpill;
+
+		// Keys of the runs of inner elements which were closed already
+		HashSet<String> closedRuns = new HashSet<String>();
+
+		/**
+		 * Clear the state of the previous element using this frame
+		 */
+		void reset(Frame parent) {
+			this.parent = parent;
+			this.output = null;
+
+			// A buffer that grew for a large element is not kept
+			if (this.buffer.capacity() > MAX_RETAINED_BUFFER) this.buffer = new StringBuilder();
+
+			this.attributes.setLength(0);
+			this.attributeCount = 0;
+			this.texts.clear();
+
+			this.objectOpen = false;
+			this.memberCount = 0;
+
+			this.runName = null;
+			this.runArray = false;
+			this.runPlanned = false;
+			this.runFirst = null;
+			this.closedRuns.clear();
+
+			closeSpills();
+		}
+
+		/**
+		 * Close the spill files of the buffers left by the previous element
+		 */
+		void closeSpills() {
+			if (this.spill != null) this.spill.close();
+			if (this.runFirstSpill != null) this.runFirstSpill.close();
+
+			this.spill = null;
+			this.runFirstSpill = null;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package jellyfisher.meowmi;
+
+/**
+ * Writes the JSON value of a converted document as JSON text into a StringBuilder
+ */
+class JsonTextSink implements JsonSink {
+
+	private StringBuilder out;
+
+	// Whether the next key or value follows another member or item, and needs a comma in front of it
+	private boolean separate;
+
+	/**
+	 * Start writing into another StringBuilder
+	 *
+	 * @param out
+	 * Where the JSON text is appended to
+	 */
+	void reset(StringBuilder out) {
+		this.out = out;
+		this.separate = false;
+	}
+
+	public void startObject(int size) {
+		separate();
+		this.out.append('{');
+	}
+
+	public void endObject() {
+		this.out.append('}');
+		this.separate = true;
+	}
+
+	public void startArray(int size) {
+		separate();
+		this.out.append('[');
+	}
+
+	public void endArray() {
+		this.out.append(']');
+		this.separate = true;
+	}
+
+	public void key(String key) {
+		separate();
+		JsonEscape.writeString(this.out, key);
+		this.out.append(':');
+	}
+
+	public void attributeKey(String name) {
+		separate();
+		this.out.append("\"@");
+		JsonEscape.writeEscaped(this.out, name);
+		this.out.append("\":");
+	}
+
+	public void string(String value) {
+		separate();
+		JsonEscape.writeString(this.out, value);
+		this.separate = true;
+	}
+
+	public void number(String value) {
+		separate();
+		this.out.append(value);
+		this.separate = true;
+	}
+
+	public void bool(boolean value) {
+		separate();
+		this.out.append(value ? "true" : "false");
+		this.separate = true;
+	}
+
+	public void nullValue() {
+		separate();
+		this.out.append("null");
+		this.separate = true;
+	}
+
+	public void json(String json) {
+		separate();
+		this.out.append(json);
+		this.separate = true;
+	}
+
+	/**
+	 * Write the comma in front of a member or item which follows another one
+	 */
+	private void separate() {
+		if (this.separate) {
+			this.out.append(',');
+			this.separate = false;
+		}
+	}
+}
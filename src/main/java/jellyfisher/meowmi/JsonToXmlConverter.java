@@ -0,0 +1,537 @@
+package jellyfisher.meowmi;
+
+import java.io.*;
+import java.util.ArrayList;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Converter from JSON back to XML, the reverse of XmlToJsonConverter.  It reads the JSON conventions the XML to JSON side
+ * writes:
+ *
+ *     {"order":{...}}               the single key of the top level object is the root element
+ *     "@id":"1"                     an "@" prefixed key is an attribute of the element
+ *     "#text":"..." or [...]        the data strings of an element with attributes or inner elements
+ *     "item":[{...},{...}]          an array is the same element repeated
+ *     "{urn:a}item", "@{urn:a}id"   a namespace qualified name, declared with a generated prefix
+ *
+ * A string, number or boolean is the data string of the element, and "" or null an empty element.  The data strings of
+ * "#text" are written where the key is, one after the other, since the JSON doesn't keep where they were between the inner
+ * elements.  Keys written with a prefix by a namespace policy, i.e. "cbc:ID", are written as they are, without a namespace
+ * declaration, so the XML can only be read back by a parser which isn't namespace aware or within an envelope declaring
+ * the prefixes.  A key which isn't an XML name, i.e. "a b" or "1x", fails the conversion, and so does a string holding a
+ * character XML 1.0 doesn't allow, i.e. "\u0001" or an unpaired surrogate.
+ *
+ * The JSON is read one token at a time and written to an XMLStreamWriter as it is read, so the memory used doesn't grow
+ * with the size of the document, only with its depth and its longest string.  The inner elements of an object whose value
+ * is a string, number, boolean or null are held back until the first inner object, array or "#text" of the object, so its
+ * attributes can come anywhere among them; an attribute after an inner object, array or "#text" fails.  XmlToJsonConverter
+ * writes the attributes first.
+ *
+ * A converter can be shared across threads: the XMLOutputFactory is looked up once, and the state of each conversion is
+ * local to it.
+ */
+public class JsonToXmlConverter {
+
+	private XMLOutputFactory xmlOutputFactory;
+
+	/**
+	 * Constructor
+	 */
+	public JsonToXmlConverter() {
+		this(XMLOutputFactory.newFactory());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param xmlOutputFactory
+	 * The factory used to create the XML writers.  The factory must be fully configured before it is passed in, and must not
+	 * repair namespaces, since the converter declares them itself
+	 *
+	 * @throws NullPointerException
+	 * The factory is null
+	 */
+	public JsonToXmlConverter(XMLOutputFactory xmlOutputFactory) {
+		// Error checking
+		if (xmlOutputFactory == null) {
+			throw new NullPointerException("Input parameter \"XML Output Factory\" can't be null");
+		}
+
+		this.xmlOutputFactory = xmlOutputFactory;
+	}
+
+	/**
+	 * Convert a JSON string into an XML document
+	 *
+	 * @param json
+	 * The JSON string
+	 *
+	 * @return
+	 * The XML document
+	 *
+	 * @throws Exception
+	 */
+	public String convert(String json) throws Exception {
+		// Error checking
+		if (json == null) {
+			throw new NullPointerException("Input parameter \"JSON\" can't be null");
+		}
+
+		StringWriter writer = new StringWriter(json.length() + 64);
+		convert(new StringReader(json), writer);
+
+		return writer.toString();
+	}
+
+	/**
+	 * Convert the JSON read from the reader and write the XML document to the writer while the JSON is being read.  The writer
+	 * is flushed but not closed
+	 *
+	 * @param jsonReader
+	 * Reader of the JSON text
+	 *
+	 * @param writer
+	 * The writer where the XML document is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(Reader jsonReader, Writer writer) throws Exception {
+		// Error checking
+		if (writer == null) {
+			throw new NullPointerException("Input parameter \"Writer\" can't be null");
+		}
+
+		XMLStreamWriter xmlStreamWriter = this.xmlOutputFactory.createXMLStreamWriter(writer);
+
+		try {
+			xmlStreamWriter.writeStartDocument("1.0");
+			convert(jsonReader, xmlStreamWriter);
+			xmlStreamWriter.writeEndDocument();
+			xmlStreamWriter.flush();
+
+		} finally {
+			xmlStreamWriter.close();
+		}
+	}
+
+	/**
+	 * Convert the JSON read from the input stream in UTF-8 and write the XML document to the output stream in UTF-8 while
+	 * the JSON is being read.  The output stream is flushed but not closed
+	 *
+	 * @param jsonInputStream
+	 * Input stream of the JSON text
+	 *
+	 * @param outputStream
+	 * The output stream where the XML document is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(InputStream jsonInputStream, OutputStream outputStream) throws Exception {
+		// Error checking
+		if (jsonInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (outputStream == null) {
+			throw new NullPointerException("Input parameter \"Output Stream\" can't be null");
+		}
+
+		XMLStreamWriter xmlStreamWriter = this.xmlOutputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+
+		try {
+			xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
+			convert(new InputStreamReader(jsonInputStream, "UTF-8"), xmlStreamWriter);
+			xmlStreamWriter.writeEndDocument();
+			xmlStreamWriter.flush();
+
+		} finally {
+			xmlStreamWriter.close();
+		}
+	}
+
+	/**
+	 * Convert the JSON read from the reader into an element written to the XML stream writer, i.e. to write it inside an
+	 * envelope.  Neither the start nor the end of the document is written
+	 *
+	 * @param jsonReader
+	 * Reader of the JSON text
+	 *
+	 * @param xmlStreamWriter
+	 * The writer where the root element is written to.  It must not repair namespaces
+	 *
+	 * @throws Exception
+	 */
+	public void convert(Reader jsonReader, XMLStreamWriter xmlStreamWriter) throws Exception {
+		// Error checking
+		if (jsonReader == null) {
+			throw new NullPointerException("Input parameter \"Reader\" can't be null");
+		}
+		if (xmlStreamWriter == null) {
+			throw new NullPointerException("Input parameter \"XML Stream Writer\" can't be null");
+		}
+
+		new Conversion(new JsonReader(jsonReader), xmlStreamWriter).run();
+	}
+
+	/**
+	 * The state of one conversion: the elements open in the XML stream writer, and the prefixes generated for namespaces
+	 */
+	private static class Conversion {
+
+		private JsonReader json;
+		private XMLStreamWriter xml;
+
+		// Open objects and arrays, innermost last: the key of each array, null for each object
+		private ArrayList<String> containers = new ArrayList<String>();
+
+		// Whether an inner element or data string of each open object was written, after which attributes can't be
+		private boolean[] contentWritten = new boolean[32];
+		private int objectDepth;
+
+		// Key and text of the inner elements of the innermost object held back while its attributes may still come
+		private ArrayList<String> pending = new ArrayList<String>();
+
+		private int prefixCount;
+
+		Conversion(JsonReader json, XMLStreamWriter xml) {
+			this.json = json;
+			this.xml = xml;
+		}
+
+		/**
+		 * Convert the whole JSON text
+		 */
+		void run() throws Exception {
+			if (this.json.next() != JsonReader.START_OBJECT) {
+				throw error("the JSON text must be an object");
+			}
+			if (this.json.next() != JsonReader.KEY) {
+				throw error("the top level object must have the root element as its key");
+			}
+
+			String rootName = this.json.getText();
+			int token = this.json.next();
+
+			if (token == JsonReader.START_ARRAY) {
+				throw error("the root element can't be an array");
+			}
+
+			value(rootName, token);
+
+			// Everything nested inside the root element
+			while (! this.containers.isEmpty()) {
+				token = this.json.next();
+
+				if (this.containers.get(this.containers.size() - 1) == null) objectToken(token);
+				else arrayToken(token);
+			}
+
+			if (this.json.next() != JsonReader.END_OBJECT) {
+				throw error("the top level object can only have one key, the root element");
+			}
+
+			this.json.next();
+		}
+
+		/**
+		 * Handle the next token of the innermost object
+		 */
+		private void objectToken(int token) throws Exception {
+			if (token == JsonReader.END_OBJECT) {
+				writePending();
+				this.xml.writeEndElement();
+				this.objectDepth--;
+				this.containers.remove(this.containers.size() - 1);
+				return;
+			}
+
+			String key = this.json.getText();
+			token = this.json.next();
+
+			if (key.startsWith("@")) {
+				if (this.contentWritten[this.objectDepth - 1]) {
+					throw error("the attribute \"" + key + "\" comes after inner objects, arrays or data strings");
+				}
+
+				attribute(key.substring(1), scalar(key, token));
+				return;
+			}
+
+			// An inner element with a data string waits for the attributes which may come after it
+			if ((! this.contentWritten[this.objectDepth - 1]) && (token != JsonReader.START_OBJECT)
+					&& (token != JsonReader.START_ARRAY) && (! key.equals(XmlToJsonOutputString.TEXT))) {
+				this.pending.add(key);
+				this.pending.add(scalar(key, token));
+				return;
+			}
+
+			writePending();
+			this.contentWritten[this.objectDepth - 1] = true;
+
+			if (key.equals(XmlToJsonOutputString.TEXT)) {
+				if (token != JsonReader.START_ARRAY) {
+					this.xml.writeCharacters(scalar(key, token));
+					return;
+				}
+
+				// Data strings of mixed content
+				while ((token = this.json.next()) != JsonReader.END_ARRAY) {
+					this.xml.writeCharacters(scalar(key, token));
+				}
+				return;
+			}
+
+			if (token == JsonReader.START_ARRAY) this.containers.add(key);
+			else value(key, token);
+		}
+
+		/**
+		 * Handle the next token of the innermost array, each item being the element of the array's key
+		 */
+		private void arrayToken(int token) throws Exception {
+			if (token == JsonReader.END_ARRAY) {
+				this.containers.remove(this.containers.size() - 1);
+				return;
+			}
+
+			if (token == JsonReader.START_ARRAY) {
+				throw error("an array can't be an item of the array \"" + this.containers.get(this.containers.size() - 1) + "\"");
+			}
+
+			value(this.containers.get(this.containers.size() - 1), token);
+		}
+
+		/**
+		 * Write the element of a key from the first token of its value, leaving it open if the value is an object
+		 */
+		private void value(String key, int token) throws Exception {
+			if (token == JsonReader.START_OBJECT) {
+				startElement(key, false);
+
+				if (this.objectDepth == this.contentWritten.length) {
+					boolean[] grown = new boolean[this.objectDepth * 2];
+					System.arraycopy(this.contentWritten, 0, grown, 0, this.objectDepth);
+					this.contentWritten = grown;
+				}
+
+				this.contentWritten[this.objectDepth++] = false;
+				this.containers.add(null);
+				return;
+			}
+
+			element(key, scalar(key, token));
+		}
+
+		/**
+		 * Write an element holding a data string
+		 */
+		private void element(String key, String text) throws Exception {
+			// Empty element i.e. <person/>
+			if (text.length() == 0) {
+				startElement(key, true);
+				return;
+			}
+
+			startElement(key, false);
+			this.xml.writeCharacters(text);
+			this.xml.writeEndElement();
+		}
+
+		/**
+		 * Write the inner elements held back in the innermost object, once its attributes are written
+		 */
+		private void writePending() throws Exception {
+			for (int i = 0; i < this.pending.size(); i += 2) {
+				element(this.pending.get(i), this.pending.get(i + 1));
+			}
+
+			this.pending.clear();
+		}
+
+		/**
+		 * Get the text of a string, number, boolean or null value
+		 */
+		private String scalar(String key, int token) throws Exception {
+			switch (token) {
+			case JsonReader.STRING:
+				return checkText(key, this.json.getText());
+			case JsonReader.NUMBER:
+				return this.json.getText();
+			case JsonReader.TRUE:
+				return "true";
+			case JsonReader.FALSE:
+				return "false";
+			case JsonReader.NULL:
+				return "";
+			default:
+				throw error("the value of \"" + key + "\" must be a string, a number, a boolean or null");
+			}
+		}
+
+		/**
+		 * Write the start of an element, declaring its namespace if needed
+		 */
+		private void startElement(String key, boolean empty) throws Exception {
+			if (! key.startsWith("{")) {
+				checkName(key, true);
+				if (empty) this.xml.writeEmptyElement(key);
+				else this.xml.writeStartElement(key);
+				return;
+			}
+
+			int end = key.indexOf('}');
+			if (end < 0) throw error("the key \"" + key + "\" is not a valid qualified name");
+
+			String uri = checkText(key, key.substring(1, end));
+			String localName = key.substring(end + 1);
+			checkName(localName, false);
+
+			String prefix = this.xml.getPrefix(uri);
+			boolean declared = prefix != null;
+			if (! declared) prefix = newPrefix();
+
+			if (empty) this.xml.writeEmptyElement(prefix, localName, uri);
+			else this.xml.writeStartElement(prefix, localName, uri);
+
+			if (! declared) declare(prefix, uri);
+		}
+
+		/**
+		 * Write an attribute of the element just started, declaring its namespace if needed
+		 */
+		private void attribute(String name, String value) throws Exception {
+			if (! name.startsWith("{")) {
+				checkName(name, true);
+				this.xml.writeAttribute(name, value);
+				return;
+			}
+
+			int end = name.indexOf('}');
+			if (end < 0) throw error("the key \"@" + name + "\" is not a valid qualified name");
+
+			String uri = checkText("@" + name, name.substring(1, end));
+			String localName = name.substring(end + 1);
+			checkName(localName, false);
+
+			// An attribute is only in a namespace through a prefix, the default namespace doesn't apply to it
+			String prefix = this.xml.getPrefix(uri);
+			if ((prefix == null) || (prefix.length() == 0)) {
+				prefix = newPrefix();
+				declare(prefix, uri);
+			}
+
+			this.xml.writeAttribute(prefix, uri, localName, value);
+		}
+
+		/**
+		 * Declare a prefix on the element just started
+		 */
+		private void declare(String prefix, String uri) throws Exception {
+			this.xml.writeNamespace(prefix, uri);
+			this.xml.setPrefix(prefix, uri);
+		}
+
+		/**
+		 * Generate a prefix that isn't bound in the scope of the current element
+		 */
+		private String newPrefix() {
+			while (true) {
+				String prefix = "ns" + (++this.prefixCount);
+				String uri = this.xml.getNamespaceContext().getNamespaceURI(prefix);
+
+				if ((uri == null) || uri.equals(XMLConstants.NULL_NS_URI)) return prefix;
+			}
+		}
+
+		/**
+		 * Check that a key follows the Name production of XML 1.0, so it can be an element or attribute name
+		 *
+		 * @param name
+		 * The key, without its "@" or "{uri}"
+		 *
+		 * @param prefixed
+		 * True if the key may hold a prefix written by a namespace policy, i.e. "cbc:ID", false for the local name of a
+		 * namespace qualified key, which can't hold a colon
+		 */
+		private void checkName(String name, boolean prefixed) throws Exception {
+			if (name.length() == 0) throw error("an empty key can't be an element or attribute name");
+
+			for (int i = 0; i < name.length(); ) {
+				int c = name.codePointAt(i);
+
+				if ((i == 0) ? (! isNameStartChar(c)) : (! isNameChar(c))) {
+					throw error("the key \"" + name + "\" is not a valid XML name");
+				}
+				if ((c == ':') && (! prefixed)) {
+					throw error("the local name \"" + name + "\" can't hold a colon");
+				}
+
+				i += Character.charCount(c);
+			}
+		}
+
+		/**
+		 * Check that a string only holds characters XML 1.0 allows (see Char in XML 1.0), since the XMLStreamWriter writes
+		 * the others as they are
+		 *
+		 * @param key
+		 * The key of the string, for the error message
+		 *
+		 * @param text
+		 * The string
+		 *
+		 * @return
+		 * The string
+		 */
+		private String checkText(String key, String text) throws Exception {
+			for (int i = 0, length = text.length(); i < length; i++) {
+				char c = text.charAt(i);
+
+				if (((c >= 0x20) && (c < 0xD800)) || (c == '\t') || (c == '\n') || (c == '\r')
+						|| ((c >= 0xE000) && (c <= 0xFFFD))) {
+					continue;
+				}
+
+				// A surrogate pair, the character is above U+FFFF
+				if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(text.charAt(i + 1))) {
+					i++;
+					continue;
+				}
+
+				throw error("the value of \"" + key + "\" holds the character U+" + String.format("%04X", (int) c)
+						+ ", which XML doesn't allow");
+			}
+
+			return text;
+		}
+
+		/**
+		 * Check if a character can start an XML name, see NameStartChar in XML 1.0
+		 */
+		private static boolean isNameStartChar(int c) {
+			if (c < 0x80) return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || (c == '_') || (c == ':');
+
+			return ((c >= 0xC0) && (c <= 0xD6)) || ((c >= 0xD8) && (c <= 0xF6)) || ((c >= 0xF8) && (c <= 0x2FF))
+					|| ((c >= 0x370) && (c <= 0x37D)) || ((c >= 0x37F) && (c <= 0x1FFF)) || ((c >= 0x200C) && (c <= 0x200D))
+					|| ((c >= 0x2070) && (c <= 0x218F)) || ((c >= 0x2C00) && (c <= 0x2FEF)) || ((c >= 0x3001) && (c <= 0xD7FF))
+					|| ((c >= 0xF900) && (c <= 0xFDCF)) || ((c >= 0xFDF0) && (c <= 0xFFFD)) || ((c >= 0x10000) && (c <= 0xEFFFF));
+		}
+
+		/**
+		 * Check if a character can be part of an XML name after its first character, see NameChar in XML 1.0
+		 */
+		private static boolean isNameChar(int c) {
+			return isNameStartChar(c) || ((c >= '0') && (c <= '9')) || (c == '-') || (c == '.') || (c == 0xB7)
+					|| ((c >= 0x300) && (c <= 0x36F)) || ((c >= 0x203F) && (c <= 0x2040));
+		}
+
+		/**
+		 * Build the error of JSON which can't be converted into XML
+		 */
+		private Exception error(String message) {
+			return new Exception("Encounter error when converting the JSON to XML: " + message);
+		}
+	}
+}
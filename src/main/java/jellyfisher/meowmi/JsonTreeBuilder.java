@@ -0,0 +1,167 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Builds the intermediate JsonElement tree of an XML document while the XML stream is read.  The JSON string is serialized
+ * once from the tree after the whole document has been read, so every element is written exactly once.
+ */
+class JsonTreeBuilder implements XmlContentHandler {
+
+	private String rootName;
+	private JsonElement root;
+
+	// Keep track of element that's being visited. The most recent visited element is always at the end of the list (i.e. top of the stack)
+	private ArrayList<JsonElement> elementStack = new ArrayList<JsonElement>();
+
+	// Data string being collected for the element at the top of the stack
+	private TextCollector text = new TextCollector();
+
+	// Number of keys which turned into an array when a second inner element with that key was added
+	private long arrayPromotions;
+
+	public void startElement(String name, int hints) throws Exception {
+
+		// Root element
+		if (this.elementStack.isEmpty()) {
+			if (this.root != null) {
+				throw new Exception("Encounter error when parsing the XML: there are more than one root element");
+			}
+
+			this.rootName = name;
+			this.root = new JsonElement(hints);
+			this.elementStack.add(this.root);
+		}
+		else {
+			JsonElement parent = currentElement();
+			flushText(parent);
+			this.elementStack.add(parent.addChild(name, hints));
+
+			if (parent.getLastChildCount() == 2) this.arrayPromotions++;
+		}
+	}
+
+	public void attribute(String name, String value, int hints) {
+		currentElement().addAttribute(name, value, hints);
+	}
+
+	public void characters(char[] text, int start, int length) throws IOException {
+		// Data outside the root element (i.e. whitespace between prolog and root) doesn't belong to any element
+		if (this.elementStack.isEmpty()) return;
+
+		this.text.append(text, start, length);
+	}
+
+	public void endElement() throws IOException {
+		flushText(this.elementStack.remove(this.elementStack.size() - 1));
+	}
+
+	public void endDocument() throws Exception {
+		if ((this.root == null) || (! this.elementStack.isEmpty())) {
+			throw new Exception("Encounter error when parsing the XML: the document doesn't have exactly one complete root element");
+		}
+	}
+
+	/**
+	 * Serialize the tree into the JSON string
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML document
+	 *
+	 * @throws Exception
+	 */
+	String toJson() throws Exception {
+		StringBuilder json = new StringBuilder();
+
+		JsonTextSink sink = new JsonTextSink();
+		sink.reset(json);
+		writeJson(sink);
+
+		return json.toString();
+	}
+
+	/**
+	 * Serialize the tree into the JSON value of the document, i.e. {"persons":{...}}
+	 *
+	 * @param sink
+	 * Where the JSON value is written to
+	 *
+	 * @throws Exception
+	 */
+	void writeJson(JsonSink sink) throws Exception {
+		sink.startObject(1);
+		sink.key(this.rootName);
+		this.root.writeTo(sink);
+		sink.endObject();
+	}
+
+	/**
+	 * Get the element key of the root element
+	 *
+	 * @return
+	 * The root element key, or null if no element has been read
+	 */
+	String getRootName() {
+		return this.rootName;
+	}
+
+	/**
+	 * Get the root element of the tree
+	 *
+	 * @return
+	 * The root element, or null if no element has been read
+	 */
+	JsonElement getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * Get the number of keys which turned into an array, the array being written when a second inner element with the key
+	 * was added
+	 */
+	long getArrayPromotions() {
+		return this.arrayPromotions;
+	}
+
+	/**
+	 * Write the data strings from a length on to a sidecar, see TextSidecar
+	 *
+	 * @param sidecar
+	 * Where large data strings go, or null to keep every data string in the tree
+	 *
+	 * @param threshold
+	 * Length from which a data string goes to the sidecar
+	 */
+	void setTextSidecar(TextSidecar sidecar, int threshold) {
+		this.text.setSidecar(sidecar, threshold);
+	}
+
+	/**
+	 * Drop the tree of the previous document so the builder can be used for the next one
+	 */
+	void reset() {
+		this.rootName = null;
+		this.root = null;
+		this.elementStack.clear();
+		this.text.reset();
+		this.arrayPromotions = 0;
+	}
+
+	/**
+	 * Move the collected data string into the element's list of data strings.  Skip this data if the entire thing is whitespace
+	 */
+	private void flushText(JsonElement element) throws IOException {
+		if (this.text.isEmpty()) return;
+
+		String data = this.text.take();
+		if (data != null) element.addText(data);
+	}
+
+	/**
+	 * Get the top of the element stack, i.e. the element whose start element was read last and which is not closed yet
+	 */
+	JsonElement currentElement() {
+		return this.elementStack.get(this.elementStack.size() - 1);
+	}
+}
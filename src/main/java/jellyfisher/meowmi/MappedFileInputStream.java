@@ -0,0 +1,132 @@
+package jellyfisher.meowmi;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream reading a file through a memory mapped FileChannel.  The XML parser copies the bytes straight out of the
+ * mapped pages into its own buffer, so there is no intermediate read buffer and no copy through a FileInputStream.  Files
+ * larger than the mapping segment size are mapped one segment at a time, in order.
+ *
+ * Closing the stream closes the file channel.  The mapped pages themselves are released by the garbage collector.  Like a
+ * FileInputStream, a closed stream throws an IOException when it is read, skipped or asked what is available.
+ */
+class MappedFileInputStream extends InputStream {
+
+	// Size of each mapped region of the file
+	private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long fileSize;
+
+	// The region being read and its offset in the file
+	private MappedByteBuffer segment;
+	private long segmentOffset;
+
+	/**
+	 * Constructor
+	 *
+	 * @param xmlFile
+	 * The file to read
+	 *
+	 * @throws IOException
+	 * The file can't be opened or mapped
+	 */
+	MappedFileInputStream(File xmlFile) throws IOException {
+		this.file = new RandomAccessFile(xmlFile, "r");
+
+		try {
+			this.channel = this.file.getChannel();
+			this.fileSize = this.channel.size();
+			map(0);
+
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	public int read() throws IOException {
+		if (! ensureRemaining()) return -1;
+		return this.segment.get() & 0xFF;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) return 0;
+		if (! ensureRemaining()) return -1;
+
+		length = Math.min(length, this.segment.remaining());
+		this.segment.get(buffer, offset, length);
+
+		return length;
+	}
+
+	public long skip(long count) throws IOException {
+		long current = position();
+		long position = Math.min(this.fileSize, Math.max(0, current + count));
+		long skipped = position - current;
+
+		if ((position >= this.segmentOffset) && (position <= this.segmentOffset + this.segment.limit())) {
+			this.segment.position((int) (position - this.segmentOffset));
+		}
+		else {
+			map(position);
+		}
+
+		return skipped;
+	}
+
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, this.fileSize - position());
+	}
+
+	public void close() throws IOException {
+		this.segment = null;
+		this.file.close();
+	}
+
+	/**
+	 * Current position in the file
+	 *
+	 * @throws IOException
+	 * The stream is closed
+	 */
+	long position() throws IOException {
+		if (this.segment == null) throw new IOException("Stream is closed");
+		return this.segmentOffset + this.segment.position();
+	}
+
+	/**
+	 * Make sure the current segment has bytes left, mapping the next segment if needed
+	 *
+	 * @return
+	 * False if the end of the file is reached
+	 *
+	 * @throws IOException
+	 */
+	private boolean ensureRemaining() throws IOException {
+		if (this.segment == null) throw new IOException("Stream is closed");
+		if (this.segment.hasRemaining()) return true;
+
+		long next = this.segmentOffset + this.segment.limit();
+		if (next >= this.fileSize) return false;
+
+		map(next);
+		return true;
+	}
+
+	/**
+	 * Map the segment of the file starting at the offset
+	 *
+	 * @param offset
+	 * Offset in the file
+	 *
+	 * @throws IOException
+	 */
+	private void map(long offset) throws IOException {
+		this.segmentOffset = offset;
+		this.segment = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, this.fileSize - offset));
+	}
+}
@@ -0,0 +1,126 @@
+package jellyfisher.meowmi;
+
+/**
+ * Table of element and attribute keys.  A namespace qualified name is resolved into its key by the namespace policy only the
+ * first time it is seen; every following lookup returns the same String instance without building a new one.  Names without a
+ * namespace are returned as is, since the XML parser already hands them out from its own symbol table, and so are the local
+ * names when the policy drops the namespace.
+ *
+ * The table is open addressed and keeps at most MAX_ENTRIES keys, so a document with an unbounded number of distinct names can't
+ * grow it without limit.  Names that don't fit anymore are still resolved correctly, they are just not cached.
+ */
+class NameTable {
+
+	private static final int MAX_ENTRIES = 4096;
+
+	private NamespacePolicy policy = NamespacePolicy.KEEP_URI;
+
+	// Parallel slot arrays, the capacity is always a power of 2.  The prefixes are only kept when the policy uses them
+	private String[] uris;
+	private String[] prefixes;
+	private String[] localNames;
+	private String[] keys;
+	private int size;
+
+	NameTable() {
+		clear();
+	}
+
+	/**
+	 * Set the namespace policy building the keys.  The keys built by another policy are dropped
+	 *
+	 * @param policy
+	 * How the namespace of a name shows in its key, or null for the "{uri}local" keys
+	 */
+	void setPolicy(NamespacePolicy policy) {
+		if (policy == null) policy = NamespacePolicy.KEEP_URI;
+		if (policy == this.policy) return;
+
+		this.policy = policy;
+		clear();
+	}
+
+	/**
+	 * Get the key for a name
+	 *
+	 * @param uri
+	 * Namespace URI of the name, null or empty if the name has no namespace
+	 *
+	 * @param prefix
+	 * Prefix of the name in the document, null or empty if it has none
+	 *
+	 * @param localName
+	 * Local part of the name
+	 *
+	 * @return
+	 * The key, as the namespace policy builds it
+	 */
+	String key(String uri, String prefix, String localName) {
+		if ((uri == null) || (uri.length() == 0) || this.policy.isDropped()) return localName;
+
+		if (! this.policy.isPrefixed() || (prefix == null)) prefix = "";
+
+		int mask = this.keys.length - 1;
+		int index = (uri.hashCode() * 31 + localName.hashCode()) & mask;
+
+		// Linear probing until the name or an empty slot is found
+		while (this.keys[index] != null) {
+			if (this.localNames[index].equals(localName) && this.uris[index].equals(uri) && this.prefixes[index].equals(prefix)) {
+				return this.keys[index];
+			}
+			index = (index + 1) & mask;
+		}
+
+		String key = this.policy.key(uri, prefix, localName);
+		if (this.size >= MAX_ENTRIES) return key;
+
+		this.uris[index] = uri;
+		this.prefixes[index] = prefix;
+		this.localNames[index] = localName;
+		this.keys[index] = key;
+
+		// Keep the table at most half full
+		if (++this.size * 2 > this.keys.length) resize();
+
+		return key;
+	}
+
+	/**
+	 * Drop all the keys
+	 */
+	private void clear() {
+		this.uris = new String[64];
+		this.prefixes = new String[64];
+		this.localNames = new String[64];
+		this.keys = new String[64];
+		this.size = 0;
+	}
+
+	/**
+	 * Double the table capacity and re-insert all the keys
+	 */
+	private void resize() {
+		String[] oldUris = this.uris;
+		String[] oldPrefixes = this.prefixes;
+		String[] oldLocalNames = this.localNames;
+		String[] oldKeys = this.keys;
+
+		this.uris = new String[oldKeys.length * 2];
+		this.prefixes = new String[oldKeys.length * 2];
+		this.localNames = new String[oldKeys.length * 2];
+		this.keys = new String[oldKeys.length * 2];
+
+		int mask = this.keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) continue;
+
+			int index = (oldUris[i].hashCode() * 31 + oldLocalNames[i].hashCode()) & mask;
+			while (this.keys[index] != null) index = (index + 1) & mask;
+
+			this.uris[index] = oldUris[i];
+			this.prefixes[index] = oldPrefixes[i];
+			this.localNames[index] = oldLocalNames[i];
+			this.keys[index] = oldKeys[i];
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package jellyfisher.meowmi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How the namespace of an element or attribute name shows in its JSON key.  Namespace heavy documents such as SOAP or UBL
+ * qualify every name with a long URI, which makes "{uri}local" keys hard to use:
+ *
+ *     KEEP_URI    {urn:oasis:names:specification:ubl:schema:xsd:Invoice-2}Invoice   (the default)
+ *     DROP_URI    Invoice
+ *     USE_PREFIX  inv:Invoice, with the prefix used by the document
+ *     aliases()   ubl:Invoice, with the alias given for the URI
+ *
+ * Names without a namespace are keys as they are whatever the policy.  Dropping the URI can give the same key to names of
+ * different namespaces, which are then grouped like same named elements.  The key of each distinct name is built once per
+ * thread and looked up afterwards, see NameTable.
+ */
+public class NamespacePolicy {
+
+	/**
+	 * Keys are "{uri}local", same as QName.toString()
+	 */
+	public static final NamespacePolicy KEEP_URI = new NamespacePolicy(false, false, null);
+
+	/**
+	 * Keys are the local names
+	 */
+	public static final NamespacePolicy DROP_URI = new NamespacePolicy(true, false, null);
+
+	/**
+	 * Keys are "prefix:local" with the prefix of the name in the document, or the local name for the default namespace
+	 */
+	public static final NamespacePolicy USE_PREFIX = new NamespacePolicy(false, true, null);
+
+	private boolean dropped;
+	private boolean prefixed;
+	private Map<String, String> aliases;
+
+	private NamespacePolicy(boolean dropped, boolean prefixed, Map<String, String> aliases) {
+		this.dropped = dropped;
+		this.prefixed = prefixed;
+		this.aliases = aliases;
+	}
+
+	/**
+	 * Create a policy mapping namespace URIs to short aliases.  Keys are "alias:local", or the local name if the alias is
+	 * empty; names of a URI without an alias keep the "{uri}local" key
+	 *
+	 * @param aliases
+	 * Alias of each namespace URI, i.e. "urn:oasis:names:specification:ubl:schema:xsd:Invoice-2" to "ubl"
+	 *
+	 * @return
+	 * The policy
+	 *
+	 * @throws NullPointerException
+	 * The aliases or one of them is null
+	 */
+	public static NamespacePolicy aliases(Map<String, String> aliases) {
+		// Error checking
+		if (aliases == null) {
+			throw new NullPointerException("Input parameter \"Aliases\" can't be null");
+		}
+		for (Map.Entry<String, String> alias : aliases.entrySet()) {
+			if ((alias.getKey() == null) || (alias.getValue() == null)) {
+				throw new NullPointerException("Input parameter \"Aliases\" can't have a null URI or alias");
+			}
+		}
+
+		return new NamespacePolicy(false, false, new HashMap<String, String>(aliases));
+	}
+
+	/**
+	 * Check if the key is the local name whatever the namespace
+	 */
+	boolean isDropped() {
+		return this.dropped;
+	}
+
+	/**
+	 * Check if the key depends on the prefix of the name, and not only on its namespace URI
+	 */
+	boolean isPrefixed() {
+		return this.prefixed;
+	}
+
+	/**
+	 * Build the key of a namespace qualified name
+	 *
+	 * @param uri
+	 * Namespace URI of the name, not empty
+	 *
+	 * @param prefix
+	 * Prefix of the name in the document, null or empty for the default namespace
+	 *
+	 * @param localName
+	 * Local part of the name
+	 *
+	 * @return
+	 * The key
+	 */
+	String key(String uri, String prefix, String localName) {
+		if (this.dropped) return localName;
+
+		if (this.prefixed) {
+			return ((prefix == null) || (prefix.length() == 0)) ? localName : prefix + ":" + localName;
+		}
+
+		if (this.aliases != null) {
+			String alias = this.aliases.get(uri);
+
+			if (alias != null) return (alias.length() == 0) ? localName : alias + ":" + localName;
+		}
+
+		return "{" + uri + "}" + localName;
+	}
+}
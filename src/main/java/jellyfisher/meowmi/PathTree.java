@@ -0,0 +1,206 @@
+package jellyfisher.meowmi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tree of simple paths from the root, i.e. "/order/items/item" or "/order/@id", with flags attached to the elements and
+ * attributes they name.  Steps are local element names or "*" for any element; the last step can be "@name" or "@*" to
+ * name attributes.  The readers walk the tree one element at a time, so finding the flags of an element is one lookup.
+ */
+class PathTree {
+
+	// Node of the pseudo element above the root element
+	private Node root = new Node();
+
+	/**
+	 * Add a path to the tree
+	 *
+	 * @param path
+	 * The path of an element or attribute
+	 *
+	 * @param flags
+	 * The flags of the element or attribute
+	 *
+	 * @throws IllegalArgumentException
+	 * The path is not valid
+	 */
+	void add(String path, int flags) {
+		if (path == null) {
+			throw new NullPointerException("Input parameter \"Path\" can't be null");
+		}
+
+		String[] steps = (path.startsWith("/") ? path.substring(1) : path).split("/");
+		Node node = this.root;
+
+		for (int i = 0; i < steps.length; i++) {
+			String step = steps[i];
+
+			if (step.length() == 0) {
+				throw new IllegalArgumentException("Path '" + path + "' has an empty step");
+			}
+
+			if (step.startsWith("@")) {
+				if ((i == 0) || (i != steps.length - 1)) {
+					throw new IllegalArgumentException("Path '" + path + "' can only select an attribute in its last step");
+				}
+
+				node.addAttribute(step.substring(1), flags);
+				return;
+			}
+
+			node = node.addChild(step);
+		}
+
+		node.flags |= flags;
+	}
+
+	/**
+	 * Merge the wildcard steps into the named steps.  Called once all the paths are added
+	 */
+	void resolveWildcards() {
+		this.root.resolveWildcards();
+	}
+
+	/**
+	 * Get the node of the pseudo element above the root element
+	 */
+	Node getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * Get the node of an element from the names of the elements from the root
+	 *
+	 * @param names
+	 * Names of the elements from the root
+	 *
+	 * @return
+	 * The node, or null if no path goes through the element
+	 */
+	Node find(String[] names) {
+		Node node = this.root;
+
+		for (int i = 0; (node != null) && (i < names.length); i++) {
+			node = node.getChild(RecordPath.localName(names[i]));
+		}
+
+		return node;
+	}
+
+	/**
+	 * One element of the paths
+	 */
+	static class Node {
+
+		// Node of an element no path goes through, it has no flags
+		static final Node EMPTY = new Node();
+
+		// Flags of the element
+		int flags;
+
+		private Map<String, Node> children;
+		private Node anyChild;
+
+		// Flags of the attributes, and of every attribute ("@*")
+		private Map<String, Integer> attributes;
+		private int allAttributes;
+
+		/**
+		 * Get the node of an inner element
+		 *
+		 * @param localName
+		 * Local name of the inner element
+		 *
+		 * @return
+		 * The node, or null if no path goes through the inner element
+		 */
+		Node getChild(String localName) {
+			if (this.children != null) {
+				Node child = this.children.get(localName);
+				if (child != null) return child;
+			}
+
+			return this.anyChild;
+		}
+
+		/**
+		 * Get the flags of an attribute of the element
+		 *
+		 * @param localName
+		 * Local name of the attribute
+		 */
+		int getAttributeFlags(String localName) {
+			if (this.attributes == null) return this.allAttributes;
+
+			Integer flags = this.attributes.get(localName);
+			return (flags == null) ? this.allAttributes : (flags | this.allAttributes);
+		}
+
+		private Node addChild(String name) {
+			if (name.equals("*")) {
+				if (this.anyChild == null) this.anyChild = new Node();
+				return this.anyChild;
+			}
+
+			if (this.children == null) this.children = new HashMap<String, Node>();
+
+			Node child = this.children.get(name);
+			if (child == null) {
+				child = new Node();
+				this.children.put(name, child);
+			}
+
+			return child;
+		}
+
+		private void addAttribute(String name, int flags) {
+			if (name.equals("*")) {
+				this.allAttributes |= flags;
+				return;
+			}
+
+			if (this.attributes == null) this.attributes = new HashMap<String, Integer>();
+
+			Integer current = this.attributes.get(name);
+			this.attributes.put(name, (current == null) ? flags : (current | flags));
+		}
+
+		/**
+		 * Merge the wildcard child into each named child, so looking up a name gives one node with everything that
+		 * applies under that name
+		 */
+		private void resolveWildcards() {
+			if (this.children != null) {
+				for (Node child : this.children.values()) {
+					if (this.anyChild != null) child.merge(this.anyChild);
+					child.resolveWildcards();
+				}
+			}
+
+			if (this.anyChild != null) this.anyChild.resolveWildcards();
+		}
+
+		/**
+		 * Add the flags of another node and its descendants to this node
+		 */
+		private void merge(Node other) {
+			this.flags |= other.flags;
+			this.allAttributes |= other.allAttributes;
+
+			if (other.attributes != null) {
+				for (Map.Entry<String, Integer> entry : other.attributes.entrySet()) {
+					addAttribute(entry.getKey(), entry.getValue());
+				}
+			}
+
+			if (other.children != null) {
+				for (Map.Entry<String, Node> entry : other.children.entrySet()) {
+					addChild(entry.getKey()).merge(entry.getValue());
+				}
+			}
+
+			if (other.anyChild != null) addChild("*").merge(other.anyChild);
+		}
+	}
+}
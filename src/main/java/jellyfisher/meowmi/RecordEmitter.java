@@ -0,0 +1,138 @@
+package jellyfisher.meowmi;
+
+import java.util.ArrayList;
+
+/**
+ * Converts each record element of an XML document into its own JSON string, as soon as the end element of the record is
+ * read.  Each record is built with a JsonTreeBuilder that is reset after the record is handed out, and elements outside
+ * of records are not kept at all, so the memory used is bounded by the size of one record and not by the size of the document.
+ */
+class RecordEmitter implements XmlContentHandler {
+
+	// Output buffers growing beyond this size for a large record are not kept for the next record
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	private RecordPath recordPath;
+
+	private JsonRecordHandler recordHandler;
+
+	private JsonTreeBuilder recordBuilder = new JsonTreeBuilder();
+	private StringBuilder output = new StringBuilder();
+	private JsonTextSink sink = new JsonTextSink();
+
+	// Open elements outside of records
+	private ArrayList<String> openNames = new ArrayList<String>();
+
+	// Depth inside the current record, -1 when outside of records
+	private int recordDepth = -1;
+
+	// Metrics of the document: keys of the records which turned into an array, and the largest record
+	private long arrayPromotions;
+	private long peakRecordChars;
+
+	/**
+	 * Drop the state of the previous document so the emitter can be used for the next one
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 *
+	 * @param recordHandler
+	 * Receives the converted records
+	 */
+	void reset(RecordPath recordPath, JsonRecordHandler recordHandler) {
+		this.recordPath = recordPath;
+		this.recordHandler = recordHandler;
+
+		this.recordBuilder.reset();
+		this.openNames.clear();
+		this.recordDepth = -1;
+
+		this.arrayPromotions = 0;
+		this.peakRecordChars = 0;
+
+		if (this.output.capacity() > MAX_RETAINED_BUFFER) this.output = new StringBuilder();
+	}
+
+	/**
+	 * Write the data strings from a length on to a sidecar, see TextSidecar
+	 *
+	 * @param sidecar
+	 * Where large data strings go, or null to write every data string into the records
+	 *
+	 * @param threshold
+	 * Length from which a data string goes to the sidecar
+	 */
+	void setTextSidecar(TextSidecar sidecar, int threshold) {
+		this.recordBuilder.setTextSidecar(sidecar, threshold);
+	}
+
+	public void startElement(String name, int hints) throws Exception {
+		if (this.recordDepth >= 0) {
+			this.recordDepth++;
+			this.recordBuilder.startElement(name, hints);
+		}
+
+		else if (this.recordPath.matches(this.openNames, name)) {
+			this.recordDepth = 0;
+			this.recordBuilder.startElement(name, hints);
+		}
+
+		else {
+			this.openNames.add(name);
+		}
+	}
+
+	public void attribute(String name, String value, int hints) throws Exception {
+		if (this.recordDepth >= 0) this.recordBuilder.attribute(name, value, hints);
+	}
+
+	public void characters(char[] text, int start, int length) throws Exception {
+		if (this.recordDepth >= 0) this.recordBuilder.characters(text, start, length);
+	}
+
+	public void endElement() throws Exception {
+		if (this.recordDepth > 0) {
+			this.recordDepth--;
+			this.recordBuilder.endElement();
+		}
+
+		// End of the record element, hand out the record and drop its state
+		else if (this.recordDepth == 0) {
+			this.recordDepth = -1;
+
+			this.recordBuilder.endElement();
+			this.recordBuilder.endDocument();
+
+			this.output.setLength(0);
+			this.sink.reset(this.output);
+			this.recordBuilder.writeJson(this.sink);
+
+			this.arrayPromotions += this.recordBuilder.getArrayPromotions();
+			if (this.output.length() > this.peakRecordChars) this.peakRecordChars = this.output.length();
+			this.recordBuilder.reset();
+
+			this.recordHandler.record(this.output.toString());
+		}
+
+		else {
+			this.openNames.remove(this.openNames.size() - 1);
+		}
+	}
+
+	public void endDocument() {
+	}
+
+	/**
+	 * Get the number of keys of the records which turned into an array
+	 */
+	long getArrayPromotions() {
+		return this.arrayPromotions;
+	}
+
+	/**
+	 * Get the size of the largest record
+	 */
+	long getPeakRecordChars() {
+		return this.peakRecordChars;
+	}
+}
@@ -0,0 +1,93 @@
+package jellyfisher.meowmi;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Iterator over the records of an XML stream.  The XML stream is read only as far as needed to convert the next record, so
+ * the first record is available as soon as its end element has been read.  The XML reader is closed once the end of the
+ * document is reached; the input stream is left to the caller.
+ *
+ * Errors while reading the XML stream are thrown as IllegalStateException, since Iterator can't throw checked exceptions.
+ * Its cause is the error the other conversions throw, i.e. a ConversionLimitException.
+ */
+class RecordIterator implements Iterator<String>, JsonRecordHandler {
+
+	private XMLStreamReader xmlStreamReader;
+	private XmlToJsonConverter converter;
+	private XmlCursorReader cursorReader = new XmlCursorReader();
+	private RecordEmitter emitter = new RecordEmitter();
+
+	// The record converted but not handed out yet, and whether the end of the document was reached
+	private String next;
+	private boolean done;
+
+	/**
+	 * Constructor
+	 *
+	 * @param xmlStreamReader
+	 * The XML stream cursor, positioned at the start of the document
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 *
+	 * @param converter
+	 * The converter whose options (projection, shape hints, limits, text sidecar, namespace policy and typed values) apply to
+	 * the records
+	 */
+	RecordIterator(XMLStreamReader xmlStreamReader, RecordPath recordPath, XmlToJsonConverter converter) {
+		this.xmlStreamReader = xmlStreamReader;
+		this.converter = converter;
+		this.cursorReader.setProjection(converter.getProjection());
+		this.cursorReader.setShapeHints(converter.getShapeHints(), null);
+		this.cursorReader.setLimits(converter.getLimits(), 0, null, 0);
+		this.cursorReader.setNamespacePolicy(converter.getNamespacePolicy());
+		this.cursorReader.setTypedValues(converter.getTypedValues());
+		this.emitter.reset(recordPath, this);
+		this.emitter.setTextSidecar(converter.getTextSidecar(), converter.getTextSidecarThreshold());
+	}
+
+	public boolean hasNext() {
+		try {
+			// Read until the next record is complete or the document ends
+			while ((this.next == null) && (! this.done)) {
+				if (! this.cursorReader.step(this.xmlStreamReader, this.emitter)) {
+					this.done = true;
+					this.xmlStreamReader.close();
+				}
+			}
+
+		} catch (XMLStreamException e) {
+			this.done = true;
+
+			Exception error = this.converter.parseError(e);
+			throw new IllegalStateException(error.getMessage(), error);
+
+		} catch (Exception e) {
+			this.done = true;
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return this.next != null;
+	}
+
+	public String next() {
+		if (! hasNext()) throw new NoSuchElementException();
+
+		String record = this.next;
+		this.next = null;
+
+		return record;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void record(String json) {
+		this.next = json;
+	}
+}
@@ -0,0 +1,64 @@
+package jellyfisher.meowmi;
+
+import java.util.List;
+
+/**
+ * Path of the repeated record element from the root, i.e. "export/record".  The path is made of the local names of the
+ * elements, so "export/record" also matches "<ns:export><ns:record>".  A null path stands for each child element of the root.
+ */
+class RecordPath {
+
+	// Local names of the elements from the root to the record element, or null for the children of the root
+	private String[] names;
+
+	/**
+	 * Constructor
+	 *
+	 * @param recordPath
+	 * Path such as "export/record" or "/export/record", or null for each child element of the root
+	 */
+	RecordPath(String recordPath) {
+		if (recordPath != null) {
+			this.names = (recordPath.startsWith("/") ? recordPath.substring(1) : recordPath).split("/");
+		}
+	}
+
+	/**
+	 * Get the number of elements from the root to the record element, the root included
+	 */
+	int depth() {
+		return (this.names == null) ? 2 : this.names.length;
+	}
+
+	/**
+	 * Check if an element is a record element
+	 *
+	 * @param openNames
+	 * Names of the open elements outside of records, from the root to the parent of the element
+	 *
+	 * @param name
+	 * Name of the element
+	 */
+	boolean matches(List<String> openNames, String name) {
+		if (openNames.size() != depth() - 1) return false;
+		if (this.names == null) return true;
+
+		if (! localName(name).equals(this.names[this.names.length - 1])) return false;
+
+		for (int i = 0; i < openNames.size(); i++) {
+			if (! localName(openNames.get(i)).equals(this.names[i])) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get the local part of an element name i.e. "record" for "ns:record" or "{urn:ns}record"
+	 */
+	static String localName(String name) {
+		int index = name.lastIndexOf('}');
+		if (index < 0) index = name.lastIndexOf(':');
+
+		return (index < 0) ? name : name.substring(index + 1);
+	}
+}
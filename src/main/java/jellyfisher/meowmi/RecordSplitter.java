@@ -0,0 +1,705 @@
+package jellyfisher.meowmi;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits an XML document at the boundaries of its record elements, so the records can be converted in parallel.  The
+ * splitter only tokenizes the markup (tags, comments, CDATA, processing instructions) at the byte level, which is much
+ * cheaper than parsing the document.
+ *
+ * Records are handed out in batches of consecutive records.  Each batch is a small standalone XML document: the records
+ * wrapped into one batch element, which declares all the namespaces in scope at the records' parent.  Everything outside
+ * the records is copied into the skeleton document, where each record is replaced by an empty element with the same name.
+ * Converting the skeleton gives the exact same tree as converting the whole document, with one placeholder per record.
+ *
+ * The document is either read from an input stream, or fed in pieces as they arrive with feed() and finish().  The splitter
+ * never waits for input: whatever is complete in the bytes fed so far is split right away.  The byte offset of the end of
+ * the last record handed out is kept, so a conversion can be resumed from there (see ConversionCheckpoint).
+ *
+ * Only ASCII compatible encodings (UTF-8, US-ASCII, ISO-8859-*, windows-125*) and documents without an internal DTD subset
+ * can be split; split() returns false for anything else.
+ */
+class RecordSplitter {
+
+	/**
+	 * Receives the batches of records in document order
+	 */
+	interface BatchHandler {
+
+		/**
+		 * Handle a batch of records.  The byte array is handed over to the handler and not used by the splitter anymore
+		 *
+		 * @param xml
+		 * The batch as a standalone XML document
+		 *
+		 * @param length
+		 * Number of bytes used in the array
+		 *
+		 * @param parentNames
+		 * Names of the elements from the root to the parent of the records, which all records of a batch share
+		 *
+		 * @throws Exception
+		 */
+		void batch(byte[] xml, int length, String[] parentNames) throws Exception;
+	}
+
+	static final String BATCH_ELEMENT = "meowmi-batch";
+
+	private RecordPath recordPath;
+
+	// A batch is handed out once it grows beyond this number of bytes
+	private int batchSize;
+
+	private Bytes skeleton;
+	private BatchHandler handler;
+
+	// Bytes fed but not consumed yet, always starting with the "<" of an incomplete markup
+	private Bytes pending = new Bytes();
+
+	// Where the search for the end of the incomplete markup resumes, relative to its "<"
+	private int resumeOffset;
+
+	private boolean started;
+	private boolean supported = true;
+	private boolean rootStarted;
+
+	private String encoding = "UTF-8";
+	private Charset charset = Charset.forName("UTF-8");
+
+	private Bytes batch = new Bytes();
+	private int batchRecords;
+	private String batchName;
+
+	// The markup being handled, from "<" to ">"
+	private Bytes markup = new Bytes();
+
+	// Open elements outside of records and the namespaces each of them declares (null if none)
+	private ArrayList<String> openNames = new ArrayList<String>();
+	private ArrayList<Map<String, byte[]>> openNamespaces = new ArrayList<Map<String, byte[]>>();
+
+	// Depth inside the current record, -1 when outside of records
+	private int recordDepth = -1;
+
+	// Offset in the document of the bytes fed next, of the array being processed, of the end of the markup being handled,
+	// of the end of the last complete record and of the end of the last record handed out
+	private long fed;
+	private long base;
+	private long markupEndOffset;
+	private long recordEndOffset;
+	private long batchEndOffset;
+
+	// Number of records handed out, and the parents and namespace declarations of the last batch
+	private long recordCount;
+	private String[] batchParentNames;
+	private Bytes batchNamespaces;
+
+	/**
+	 * Constructor
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 *
+	 * @param batchSize
+	 * Approximate number of bytes in a batch
+	 *
+	 * @param skeleton
+	 * Where the skeleton document is written to
+	 *
+	 * @param handler
+	 * Receives the batches of records
+	 */
+	RecordSplitter(RecordPath recordPath, int batchSize, Bytes skeleton, BatchHandler handler) {
+		this.recordPath = recordPath;
+		this.batchSize = batchSize;
+		this.skeleton = skeleton;
+		this.handler = handler;
+	}
+
+	/**
+	 * Split the whole XML document read from the input stream
+	 *
+	 * @param input
+	 * Input stream in XML format
+	 *
+	 * @return
+	 * False if the document can't be split (encoding or internal DTD subset), in which case the caller has to convert it
+	 * sequentially.  Batches handed out before that should be discarded
+	 *
+	 * @throws Exception
+	 */
+	boolean split(InputStream input) throws Exception {
+		byte[] buffer = new byte[64 * 1024];
+		int count;
+
+		while ((count = input.read(buffer, 0, buffer.length)) > 0) {
+			if (! feed(buffer, 0, count)) return false;
+		}
+
+		finish();
+		return true;
+	}
+
+	/**
+	 * Split the next bytes of the XML document.  Complete markup and text are handled right away, and batches are handed out
+	 * as soon as they are full; an incomplete markup at the end of the bytes is kept until the next bytes arrive
+	 *
+	 * @param bytes
+	 * The next bytes of the document
+	 *
+	 * @param offset
+	 * Offset of the bytes in the array
+	 *
+	 * @param length
+	 * Number of bytes
+	 *
+	 * @return
+	 * False if the document can't be split, see split(InputStream)
+	 *
+	 * @throws Exception
+	 */
+	boolean feed(byte[] bytes, int offset, int length) throws Exception {
+		if ((! this.supported) || (length == 0)) return this.supported;
+
+		// UTF-16 and UTF-32 documents start with a byte order mark or a zero byte
+		if (! this.started) {
+			this.started = true;
+
+			if ((bytes[offset] == 0) || (bytes[offset] == (byte) 0xFE) || (bytes[offset] == (byte) 0xFF)) {
+				this.supported = false;
+				return false;
+			}
+		}
+
+		// Nothing is pending, most of the bytes can be handled in place and only an incomplete markup is copied
+		if (this.pending.length == 0) {
+			this.base = this.fed - offset;
+
+			int consumed = process(bytes, offset, offset + length);
+			this.pending.append(bytes, consumed, offset + length - consumed);
+		}
+		else {
+			this.base = this.fed - this.pending.length;
+			this.pending.append(bytes, offset, length);
+
+			int consumed = process(this.pending.data, 0, this.pending.length);
+			this.pending.remove(consumed);
+		}
+
+		this.fed += length;
+		return this.supported;
+	}
+
+	/**
+	 * Signal the end of the XML document and hand out the last batch
+	 *
+	 * @throws Exception
+	 */
+	void finish() throws Exception {
+		if (this.pending.length > 0) {
+			throw new Exception("Encounter error when parsing the XML: the document ended inside a markup");
+		}
+
+		if ((this.recordDepth >= 0) || (! this.openNames.isEmpty())) {
+			throw new Exception("Encounter error when parsing the XML: the document ended before all the elements were closed");
+		}
+
+		flushBatch();
+	}
+
+	/**
+	 * Resume splitting a document at a checkpoint.  The prologue of the checkpoint is fed in place of the document before
+	 * the checkpoint, so the bytes fed next are the document from the checkpoint offset on
+	 *
+	 * @param checkpoint
+	 * Checkpoint taken by an earlier conversion of the same document
+	 *
+	 * @return
+	 * False if the document can't be split, see split(InputStream)
+	 *
+	 * @throws Exception
+	 */
+	boolean resume(ConversionCheckpoint checkpoint) throws Exception {
+		byte[] prologue = checkpoint.getPrologue();
+		if (! feed(prologue, 0, prologue.length)) return false;
+
+		this.fed = checkpoint.getOffset();
+		this.batchEndOffset = checkpoint.getOffset();
+		this.recordCount = checkpoint.getRecordCount();
+
+		return true;
+	}
+
+	/**
+	 * Get the checkpoint following the last record handed out
+	 *
+	 * @return
+	 * The checkpoint, or null if no record was handed out
+	 */
+	ConversionCheckpoint getCheckpoint() {
+		if (this.batchParentNames == null) return null;
+
+		return new ConversionCheckpoint(this.batchEndOffset, this.recordCount, this.encoding, this.batchParentNames,
+				new String(this.batchNamespaces.data, 0, this.batchNamespaces.length, this.charset));
+	}
+
+	/**
+	 * Get the offset in the document following the last record handed out
+	 */
+	long getBatchEndOffset() {
+		return this.batchEndOffset;
+	}
+
+	/**
+	 * Get the namespace declarations in scope at the records' parent, as they are written in the start tags
+	 */
+	private Bytes getNamespaceDeclarations() {
+		Map<String, byte[]> namespaces = new LinkedHashMap<String, byte[]>();
+		for (Map<String, byte[]> declared : this.openNamespaces) {
+			if (declared != null) namespaces.putAll(declared);
+		}
+
+		Bytes declarations = new Bytes();
+		for (byte[] declaration : namespaces.values()) {
+			if (declarations.length > 0) declarations.append(' ');
+			declarations.append(declaration, 0, declaration.length);
+		}
+
+		return declarations;
+	}
+
+	/**
+	 * Check if the start tag of the root element was split already.  Before that the document can still turn out to be
+	 * unsupported, after that it can't
+	 */
+	boolean isRootStarted() {
+		return this.rootStarted;
+	}
+
+	/**
+	 * Handle the complete markup and text found in the bytes
+	 *
+	 * @return
+	 * Where the bytes which were not handled start, i.e. the "<" of an incomplete markup
+	 */
+	private int process(byte[] data, int position, int end) throws Exception {
+		while (position < end) {
+
+			// Copy the data string up to the next "<" to the current target
+			int start = position;
+			while ((position < end) && (data[position] != '<')) position++;
+
+			target().append(data, start, position - start);
+			if (position == end) break;
+
+			int markupEnd = markupEnd(data, position, end);
+			if (markupEnd < 0) break;
+
+			this.markup.clear();
+			this.markup.append(data, position, markupEnd - position);
+			position = markupEnd;
+			this.markupEndOffset = this.base + markupEnd;
+
+			switch (markupType()) {
+
+			case START_TAG:
+				startTag();
+				break;
+
+			case END_TAG:
+				endTag();
+				break;
+
+			case DECLARATION:
+				// An internal DTD subset can declare entities, which the records on their own wouldn't know about
+				if (this.markup.indexOf('[') >= 0) {
+					this.supported = false;
+					return end;
+				}
+				target().append(this.markup);
+				break;
+
+			case XML_DECLARATION:
+				if (! readEncoding()) {
+					this.supported = false;
+					return end;
+				}
+				target().append(this.markup);
+				break;
+
+			default:
+				target().append(this.markup);
+				break;
+			}
+		}
+
+		return position;
+	}
+
+	/**
+	 * Handle a start tag i.e. <person>
+	 */
+	private void startTag() throws Exception {
+		boolean empty = this.markup.data[this.markup.length - 2] == '/';
+
+		// Inner element of a record, just keep track of the depth
+		if (this.recordDepth >= 0) {
+			this.batch.append(this.markup);
+			if (! empty) this.recordDepth++;
+			return;
+		}
+
+		int nameEnd = nameEnd();
+		String name = new String(this.markup.data, 1, nameEnd - 1, this.charset);
+
+		// Record element, it goes to the batch and a placeholder goes to the skeleton
+		if (this.recordPath.matches(this.openNames, name)) {
+
+			// A batch only holds records with the same name, so they become one array once converted
+			if ((this.batchRecords > 0) && (! name.equals(this.batchName))) flushBatch();
+
+			if (this.batchRecords == 0) {
+				startBatch();
+				this.batchName = name;
+			}
+
+			this.batch.append(this.markup);
+			this.skeleton.append(this.markup.data, 0, nameEnd).append('/').append('>');
+
+			if (empty) endRecord();
+			else this.recordDepth = 0;
+		}
+
+		else {
+			this.skeleton.append(this.markup);
+			this.rootStarted = true;
+
+			if (! empty) {
+				this.openNames.add(name);
+				this.openNamespaces.add(readNamespaces(nameEnd));
+			}
+		}
+	}
+
+	/**
+	 * Handle an end tag i.e. </person>
+	 */
+	private void endTag() throws Exception {
+		if (this.recordDepth > 0) {
+			this.batch.append(this.markup);
+			this.recordDepth--;
+		}
+
+		// End of the record element
+		else if (this.recordDepth == 0) {
+			this.batch.append(this.markup);
+			this.recordDepth = -1;
+			endRecord();
+		}
+
+		else {
+			if (this.openNames.isEmpty()) {
+				throw new Exception("Encounter error when parsing the XML: end element without start element");
+			}
+
+			// The parent of the records ends, the batch can't continue past it
+			if (this.openNames.size() == this.recordPath.depth() - 1) flushBatch();
+
+			this.openNames.remove(this.openNames.size() - 1);
+			this.openNamespaces.remove(this.openNamespaces.size() - 1);
+			this.skeleton.append(this.markup);
+		}
+	}
+
+	/**
+	 * Count a complete record and hand out the batch if it's big enough
+	 */
+	private void endRecord() throws Exception {
+		this.recordEndOffset = this.markupEndOffset;
+		this.batchRecords++;
+		if (this.batch.length >= this.batchSize) flushBatch();
+	}
+
+	/**
+	 * Start a new batch document, declaring the namespaces in scope at the records' parent
+	 */
+	private void startBatch() {
+		this.batch.clear();
+		this.batch.append("<?xml version=\"1.0\" encoding=\"" + this.encoding + "\"?><" + BATCH_ELEMENT);
+
+		this.batchNamespaces = getNamespaceDeclarations();
+		if (this.batchNamespaces.length > 0) this.batch.append(' ').append(this.batchNamespaces);
+
+		this.batch.append('>');
+	}
+
+	/**
+	 * Hand out the current batch, if it has any record
+	 */
+	private void flushBatch() throws Exception {
+		if (this.batchRecords == 0) return;
+
+		this.batch.append("</" + BATCH_ELEMENT + ">");
+
+		this.batchEndOffset = this.recordEndOffset;
+		this.recordCount += this.batchRecords;
+		this.batchParentNames = this.openNames.toArray(new String[this.openNames.size()]);
+
+		this.handler.batch(this.batch.data, this.batch.length, this.batchParentNames);
+
+		this.batch = new Bytes();
+		this.batchRecords = 0;
+	}
+
+	/**
+	 * Where content outside of markup goes to
+	 */
+	private Bytes target() {
+		return (this.recordDepth >= 0) ? this.batch : this.skeleton;
+	}
+
+	private static final int START_TAG = 0;
+	private static final int END_TAG = 1;
+	private static final int DECLARATION = 2;
+	private static final int XML_DECLARATION = 3;
+	private static final int OTHER = 4;
+
+	/**
+	 * Find the end of the markup starting with the "<" at the start index
+	 *
+	 * @return
+	 * The index following the ">" of the markup, or -1 if the markup is not complete yet
+	 */
+	private int markupEnd(byte[] data, int start, int end) {
+		if (end - start < 3) return -1;
+
+		int index;
+
+		// Processing instruction i.e. <?xml version="1.0"?>
+		if (data[start + 1] == '?') {
+			index = find(data, start, start + 2, end, "?>");
+		}
+
+		else if (data[start + 1] == '!') {
+
+			// Comment i.e. <!-- comment -->
+			if (data[start + 2] == '-') index = find(data, start, start + 4, end, "-->");
+
+			// CDATA section i.e. <![CDATA[data]]>
+			else if (data[start + 2] == '[') index = find(data, start, start + 3, end, "]]>");
+
+			// Declaration i.e. <!DOCTYPE ...>
+			else index = find(data, start, start + 2, end, ">");
+		}
+
+		// Tag, ignoring any ">" inside attribute values
+		else {
+			index = -1;
+			byte quote = 0;
+
+			for (int i = start + 1; i < end; i++) {
+				byte b = data[i];
+
+				if (quote != 0) {
+					if (b == quote) quote = 0;
+				}
+				else if ((b == '"') || (b == '\'')) {
+					quote = b;
+				}
+				else if (b == '>') {
+					index = i + 1;
+					break;
+				}
+			}
+		}
+
+		if (index >= 0) this.resumeOffset = 0;
+		return index;
+	}
+
+	/**
+	 * Find the terminator of a comment, CDATA section, processing instruction or declaration.  The search resumes where the
+	 * previous search of the same markup stopped, so a long markup arriving in small pieces is not scanned again and again
+	 *
+	 * @return
+	 * The index following the terminator, or -1 if it's not found
+	 */
+	private int find(byte[] data, int start, int from, int end, String terminator) {
+		int index = Math.max(from, start + this.resumeOffset);
+		int last = end - terminator.length();
+
+		for (; index <= last; index++) {
+			int i = 0;
+			while ((i < terminator.length()) && (data[index + i] == terminator.charAt(i))) i++;
+			if (i == terminator.length()) return index + terminator.length();
+		}
+
+		this.resumeOffset = Math.max(from, index) - start;
+		return -1;
+	}
+
+	/**
+	 * Get the type of the markup
+	 */
+	private int markupType() {
+		byte b = this.markup.data[1];
+
+		if (b == '?') return this.markup.startsWith("<?xml ") ? XML_DECLARATION : OTHER;
+		if (b == '!') return ((this.markup.data[2] == '-') || (this.markup.data[2] == '[')) ? OTHER : DECLARATION;
+		if (b == '/') return END_TAG;
+
+		return START_TAG;
+	}
+
+	/**
+	 * Find the end of the element name in the start tag
+	 */
+	private int nameEnd() {
+		int index = 1;
+		while (index < this.markup.length) {
+			byte b = this.markup.data[index];
+			if ((b == ' ') || (b == '\t') || (b == '\r') || (b == '\n') || (b == '/') || (b == '>')) break;
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Collect the namespace declarations (xmlns and xmlns:prefix attributes) of the start tag
+	 *
+	 * @param index
+	 * Where the attributes start in the start tag
+	 *
+	 * @return
+	 * The raw declarations by prefix, or null if there are none
+	 */
+	private Map<String, byte[]> readNamespaces(int index) {
+		Map<String, byte[]> namespaces = null;
+		byte[] data = this.markup.data;
+
+		while (true) {
+			while ((index < this.markup.length) && ((data[index] & 0xFF) <= ' ')) index++;
+			if ((index >= this.markup.length) || (data[index] == '/') || (data[index] == '>')) return namespaces;
+
+			int nameStart = index;
+			while ((data[index] != '=') && ((data[index] & 0xFF) > ' ')) index++;
+			String name = new String(data, nameStart, index - nameStart, this.charset);
+
+			while (data[index] != '"' && data[index] != '\'') index++;
+			byte quote = data[index++];
+			while (data[index] != quote) index++;
+			index++;
+
+			if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+				if (namespaces == null) namespaces = new LinkedHashMap<String, byte[]>();
+
+				byte[] declaration = new byte[index - nameStart];
+				System.arraycopy(data, nameStart, declaration, 0, declaration.length);
+				namespaces.put(name, declaration);
+			}
+		}
+	}
+
+	/**
+	 * Read the encoding from the XML declaration
+	 *
+	 * @return
+	 * False if the encoding is not ASCII compatible
+	 */
+	private boolean readEncoding() {
+		String declaration = new String(this.markup.data, 0, this.markup.length, this.charset);
+
+		int index = declaration.indexOf("encoding");
+		if (index < 0) return true;
+
+		index = declaration.indexOf('=', index) + 1;
+		while (declaration.charAt(index) <= ' ') index++;
+
+		char quote = declaration.charAt(index);
+		String encoding = declaration.substring(index + 1, declaration.indexOf(quote, index + 1));
+		String upper = encoding.toUpperCase();
+
+		if (! (upper.equals("UTF-8") || upper.equals("US-ASCII") || upper.equals("ASCII")
+				|| upper.startsWith("ISO-8859-") || upper.startsWith("WINDOWS-125"))) {
+			return false;
+		}
+
+		this.encoding = encoding;
+		this.charset = Charset.forName(encoding);
+
+		return true;
+	}
+
+	/**
+	 * Growable byte array
+	 */
+	static class Bytes {
+
+		byte[] data = new byte[1024];
+		int length;
+
+		Bytes append(byte b) {
+			ensureCapacity(1);
+			this.data[this.length++] = b;
+			return this;
+		}
+
+		Bytes append(char c) {
+			return append((byte) c);
+		}
+
+		Bytes append(byte[] bytes, int start, int count) {
+			ensureCapacity(count);
+			System.arraycopy(bytes, start, this.data, this.length, count);
+			this.length += count;
+			return this;
+		}
+
+		Bytes append(Bytes bytes) {
+			return append(bytes.data, 0, bytes.length);
+		}
+
+		// Only used for ASCII markup
+		Bytes append(String ascii) {
+			ensureCapacity(ascii.length());
+			for (int i = 0; i < ascii.length(); i++) this.data[this.length++] = (byte) ascii.charAt(i);
+			return this;
+		}
+
+		void clear() {
+			this.length = 0;
+		}
+
+		// Remove the first bytes
+		void remove(int count) {
+			System.arraycopy(this.data, count, this.data, 0, this.length - count);
+			this.length -= count;
+		}
+
+		int indexOf(char c) {
+			for (int i = 0; i < this.length; i++) {
+				if (this.data[i] == c) return i;
+			}
+			return -1;
+		}
+
+		boolean startsWith(String ascii) {
+			if (this.length < ascii.length()) return false;
+			for (int i = 0; i < ascii.length(); i++) {
+				if (this.data[i] != ascii.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		private void ensureCapacity(int count) {
+			if (this.length + count <= this.data.length) return;
+
+			byte[] grown = new byte[Math.max(this.data.length * 2, this.length + count)];
+			System.arraycopy(this.data, 0, grown, 0, this.length);
+			this.data = grown;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Builds the JsonElement tree of the skeleton document produced by RecordSplitter, and collects the record placeholders of
+ * the tree in document order.  The tree keeps the inner elements grouped by key, so the placeholders are collected while
+ * the document is read, which is the only time their document order is known.
+ */
+class SkeletonBuilder implements XmlContentHandler {
+
+	private JsonTreeBuilder treeBuilder;
+	private RecordPath recordPath;
+
+	// Open elements outside of records
+	private ArrayList<String> openNames = new ArrayList<String>();
+
+	private ArrayList<JsonElement> placeholders = new ArrayList<JsonElement>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeBuilder
+	 * The builder the skeleton tree is built with
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 */
+	SkeletonBuilder(JsonTreeBuilder treeBuilder, RecordPath recordPath) {
+		this.treeBuilder = treeBuilder;
+		this.recordPath = recordPath;
+	}
+
+	public void startElement(String name, int hints) throws Exception {
+		boolean record = this.recordPath.matches(this.openNames, name);
+
+		this.treeBuilder.startElement(name, hints);
+		this.openNames.add(name);
+
+		if (record) this.placeholders.add(this.treeBuilder.currentElement());
+	}
+
+	public void attribute(String name, String value, int hints) {
+		this.treeBuilder.attribute(name, value, hints);
+	}
+
+	public void characters(char[] text, int start, int length) throws IOException {
+		this.treeBuilder.characters(text, start, length);
+	}
+
+	public void endElement() throws IOException {
+		this.openNames.remove(this.openNames.size() - 1);
+		this.treeBuilder.endElement();
+	}
+
+	public void endDocument() throws Exception {
+		this.treeBuilder.endDocument();
+	}
+
+	/**
+	 * Get the record placeholders of the skeleton tree in document order
+	 */
+	ArrayList<JsonElement> getPlaceholders() {
+		return this.placeholders;
+	}
+}
@@ -0,0 +1,163 @@
+package jellyfisher.meowmi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Temporary file holding the beginning of a JSON buffer that grew beyond the memory budget of the streaming conversion, see
+ * XmlToJsonConverter.setSpillBudget().  The characters are stored as UTF-16, two bytes each, so a character can be found
+ * and overwritten at its index, which is all the emitter needs to open an array in front of an item that was spilled.  The
+ * file is read back through memory mapped segments once the buffer is written out, and deleted when it is closed.
+ */
+class SpillFile {
+
+	// Size of each mapped region of the file when it is read back, in characters
+	private static final int SEGMENT_CHARS = 32 * 1024 * 1024;
+
+	private File file;
+	private RandomAccessFile access;
+	private FileChannel channel;
+
+	// Number of characters in the file
+	private long length;
+
+	// Encodes the characters appended to the file
+	private char[] scratch = new char[32 * 1024];
+	private ByteBuffer bytes = ByteBuffer.allocate(this.scratch.length * 2);
+	private CharBuffer chars = this.bytes.asCharBuffer();
+
+	// The region being read back and the index of its first character
+	private CharBuffer segment;
+	private long segmentStart;
+
+	/**
+	 * Constructor, creating the temporary file
+	 *
+	 * @param directory
+	 * Directory of the file, or null for the default temporary directory
+	 *
+	 * @throws IOException
+	 * The file can't be created
+	 */
+	SpillFile(File directory) throws IOException {
+		this.file = File.createTempFile("meowmi", ".spill", directory);
+
+		try {
+			this.access = new RandomAccessFile(this.file, "rw");
+			this.channel = this.access.getChannel();
+
+		} catch (IOException e) {
+			this.file.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the number of characters in the file
+	 */
+	long length() {
+		return this.length;
+	}
+
+	/**
+	 * Append characters to the end of the file
+	 *
+	 * @param text
+	 * The characters
+	 *
+	 * @param start
+	 * Index of the first character
+	 *
+	 * @param end
+	 * Index after the last character
+	 *
+	 * @throws IOException
+	 */
+	void append(StringBuilder text, int start, int end) throws IOException {
+		while (start < end) {
+			int count = Math.min(end - start, this.scratch.length);
+			text.getChars(start, start + count, this.scratch, 0);
+
+			this.chars.clear();
+			this.chars.put(this.scratch, 0, count);
+
+			this.bytes.clear();
+			this.bytes.limit(count * 2);
+			while (this.bytes.hasRemaining()) this.channel.write(this.bytes, (this.length * 2) + this.bytes.position());
+
+			this.length += count;
+			start += count;
+		}
+	}
+
+	/**
+	 * Overwrite one character
+	 *
+	 * @param index
+	 * Index of the character in the file
+	 *
+	 * @param c
+	 * The new character
+	 *
+	 * @throws IOException
+	 */
+	void set(long index, char c) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(2);
+		bytes.putChar(0, c);
+
+		while (bytes.hasRemaining()) this.channel.write(bytes, (index * 2) + bytes.position());
+	}
+
+	/**
+	 * Read characters back, mapping the segment of the file they are in
+	 *
+	 * @param index
+	 * Index of the first character to read
+	 *
+	 * @param text
+	 * Receives the characters from index 0
+	 *
+	 * @return
+	 * Number of characters read, 0 at the end of the file
+	 *
+	 * @throws IOException
+	 */
+	int read(long index, char[] text) throws IOException {
+		if (index >= this.length) return 0;
+
+		if ((this.segment == null) || (index < this.segmentStart) || (index >= this.segmentStart + this.segment.limit())) {
+			long count = Math.min(SEGMENT_CHARS, this.length - index);
+			MappedByteBuffer mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, index * 2, count * 2);
+
+			this.segment = mapped.asCharBuffer();
+			this.segmentStart = index;
+		}
+
+		this.segment.position((int) (index - this.segmentStart));
+
+		int count = Math.min(text.length, this.segment.remaining());
+		this.segment.get(text, 0, count);
+
+		return count;
+	}
+
+	/**
+	 * Close and delete the file
+	 */
+	void close() {
+		this.segment = null;
+
+		try {
+			this.access.close();
+		} catch (IOException e) {
+			// The file is deleted anyway
+		}
+
+		this.file.delete();
+	}
+}
@@ -0,0 +1,222 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Collects the data string of the element at the top of the stack from the character events of the XML parser, which can
+ * split a data string anywhere.  Only the element at the top of the stack collects data, since the data string of an element
+ * is complete once an inner element starts, so one collector serves every element.
+ *
+ * The leading whitespace is dropped as the characters arrive, and the trailing whitespace is left out when the data string
+ * is taken, so the collected characters are never copied just to trim them.  The characters are kept in a plain array the
+ * JSON writers can escape in place.  With a text sidecar, a data string reaching the threshold is written to the sidecar as
+ * it arrives instead of being collected; only the trailing whitespace is held back, in case it ends the data string.
+ */
+class TextCollector {
+
+	// Buffers growing beyond this size for a large data string are not kept for the next document
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	private char[] chars = new char[256];
+	private int length;
+
+	// Where large data strings go, or null to collect every data string
+	private TextSidecar sidecar;
+	private int threshold;
+
+	// The writer of the sidecar while the current data string goes there
+	private Writer sidecarWriter;
+
+	// The collected data string, see getText()
+	private CharSequence text = new CharSequence() {
+		public int length() {
+			return getLength();
+		}
+
+		public char charAt(int index) {
+			return TextCollector.this.chars[index];
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new String(TextCollector.this.chars, start, end - start);
+		}
+
+		public String toString() {
+			return new String(TextCollector.this.chars, 0, getLength());
+		}
+	};
+
+	/**
+	 * Set the sidecar storing large data strings
+	 *
+	 * @param sidecar
+	 * Where large data strings go, or null to collect every data string
+	 *
+	 * @param threshold
+	 * Length from which a data string goes to the sidecar
+	 */
+	void setSidecar(TextSidecar sidecar, int threshold) {
+		this.sidecar = sidecar;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Add the next characters of the data string
+	 *
+	 * @param text
+	 * Character array holding the raw characters
+	 *
+	 * @param start
+	 * Offset of the characters in the array
+	 *
+	 * @param length
+	 * Number of characters
+	 *
+	 * @throws IOException
+	 * The sidecar can't be written to
+	 */
+	void append(char[] text, int start, int length) throws IOException {
+		int end = start + length;
+
+		// Leading whitespace of the data string
+		if ((this.length == 0) && (this.sidecarWriter == null)) {
+			while ((start < end) && (text[start] <= ' ')) start++;
+		}
+		if (start == end) return;
+
+		// Everything up to the trailing whitespace is part of the data string, with what was held back before it
+		int last = end;
+		while ((last > start) && (text[last - 1] <= ' ')) last--;
+
+		if (this.sidecarWriter == null) {
+			// The trailing whitespace doesn't count towards the threshold
+			if ((this.sidecar == null) || (last == start) || (this.length + (last - start) < this.threshold)) {
+				put(text, start, end);
+				return;
+			}
+
+			this.sidecarWriter = this.sidecar.open();
+		}
+
+		if (last > start) {
+			this.sidecarWriter.write(this.chars, 0, this.length);
+			this.sidecarWriter.write(text, start, last - start);
+			this.length = 0;
+		}
+
+		put(text, last, end);
+	}
+
+	/**
+	 * Check if there is a data string to take, i.e. characters other than whitespace were added since the last take
+	 */
+	boolean isEmpty() {
+		return (this.length == 0) && (this.sidecarWriter == null);
+	}
+
+	/**
+	 * Check if the data string is collected here, and not written to the sidecar
+	 */
+	boolean isCollected() {
+		return this.sidecarWriter == null;
+	}
+
+	/**
+	 * Get the array holding the collected data string, starting at index 0.  Valid until the next append() or take()
+	 */
+	char[] getChars() {
+		return this.chars;
+	}
+
+	/**
+	 * Get the length of the collected data string without its trailing whitespace
+	 */
+	int getLength() {
+		int end = this.length;
+		while ((end > 0) && (this.chars[end - 1] <= ' ')) end--;
+
+		return end;
+	}
+
+	/**
+	 * Get the collected data string without its trailing whitespace, so a typed value is scanned where it was collected, see
+	 * XmlShapeHints.typeOf().  Reads the characters as they are at the time, until the next append() or take()
+	 */
+	CharSequence getText() {
+		return this.text;
+	}
+
+	/**
+	 * Take the data string, and start collecting the next one
+	 *
+	 * @return
+	 * The data string without the leading and trailing whitespace, or the reference of the sidecar where it was written, or
+	 * null if the entire thing is whitespace
+	 *
+	 * @throws IOException
+	 * The sidecar can't be written to
+	 */
+	String take() throws IOException {
+		int end = getLength();
+
+		try {
+			if (this.sidecarWriter != null) {
+				this.sidecarWriter.write(this.chars, 0, end);
+
+				Writer writer = this.sidecarWriter;
+				this.sidecarWriter = null;
+
+				return this.sidecar.close(writer);
+			}
+
+			return (end == 0) ? null : new String(this.chars, 0, end);
+
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * Drop the data string, and start collecting the next one
+	 */
+	void clear() {
+		this.length = 0;
+	}
+
+	/**
+	 * Drop the state of the previous document.  A data string left in the sidecar by a failed conversion is closed there
+	 */
+	void reset() {
+		this.length = 0;
+
+		// A buffer that grew for a large data string is not kept
+		if (this.chars.length > MAX_RETAINED_BUFFER) this.chars = new char[256];
+
+		if (this.sidecarWriter != null) {
+			try {
+				this.sidecarWriter.close();
+			} catch (IOException e) {
+				// The conversion failed already, there is nothing more to report
+			}
+			this.sidecarWriter = null;
+		}
+	}
+
+	/**
+	 * Append characters to the collected data string, growing the array as needed
+	 */
+	private void put(char[] text, int start, int end) {
+		int count = end - start;
+		if (count == 0) return;
+
+		if (this.length + count > this.chars.length) {
+			char[] grown = new char[Math.max(this.chars.length * 2, this.length + count)];
+			System.arraycopy(this.chars, 0, grown, 0, this.length);
+			this.chars = grown;
+		}
+
+		System.arraycopy(text, start, this.chars, this.length, count);
+		this.length += count;
+	}
+}
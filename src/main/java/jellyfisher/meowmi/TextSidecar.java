@@ -0,0 +1,42 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Stores the large data strings of a document outside of its JSON, i.e. a multi-megabyte base64 blob inside one element.
+ * Once a data string reaches the threshold given to XmlToJsonConverter.setTextSidecar(), its characters are written to the
+ * sidecar in pieces as the XML stream is read, and the reference returned by the sidecar takes its place in the JSON as a
+ * JSON string.  The data string is never held in memory as a whole.
+ *
+ * The characters written are the data string without its leading and trailing whitespace, as it would be in the JSON.  The
+ * sidecar is called by every thread using the converter, so it must be thread-safe; the writer of one data string is only
+ * used by the thread which opened it.
+ */
+public interface TextSidecar {
+
+	/**
+	 * Open the storage of one large data string
+	 *
+	 * @return
+	 * The writer receiving the characters of the data string.  If the conversion fails before the data string is complete,
+	 * the writer is closed without calling close(Writer)
+	 *
+	 * @throws IOException
+	 */
+	Writer open() throws IOException;
+
+	/**
+	 * Complete the storage of a data string once all its characters are written
+	 *
+	 * @param writer
+	 * The writer returned by open()
+	 *
+	 * @return
+	 * The reference written into the JSON in place of the data string, i.e. a file name or a URL.  It should be told apart
+	 * from an ordinary data string by whoever reads the JSON
+	 *
+	 * @throws IOException
+	 */
+	String close(Writer writer) throws IOException;
+}
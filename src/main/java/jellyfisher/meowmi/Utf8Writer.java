@@ -0,0 +1,157 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer encoding the JSON output straight into UTF-8 bytes in a reusable byte buffer, which is written to the output stream
+ * whenever it is full.  Unlike an OutputStreamWriter, there is no charset encoder and no intermediate buffer of characters;
+ * ASCII characters, which are most of a typical JSON document, take a single comparison and a single store.
+ *
+ * Like the rest of the conversion state, one writer is reused by all the conversions of a thread.
+ */
+class Utf8Writer extends Writer {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private OutputStream outputStream;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+
+	// High surrogate of a surrogate pair split across two write calls
+	private char highSurrogate;
+
+	/**
+	 * Start writing to another output stream.  Anything left in the buffer is dropped
+	 *
+	 * @param outputStream
+	 * The output stream where the UTF-8 bytes are written to, or null to release the previous one
+	 */
+	void reset(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		this.position = 0;
+		this.highSurrogate = 0;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (this.position + 4 > this.buffer.length) flushBuffer();
+
+		if ((c < 0x80) && (this.highSurrogate == 0)) {
+			this.buffer[this.position++] = (byte) c;
+		}
+		else {
+			encode((char) c);
+		}
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+		int end = offset + length;
+
+		while (offset < end) {
+			// Room for the worst case of 4 bytes per character
+			if (this.position + 4 > this.buffer.length) flushBuffer();
+
+			int limit = Math.min(end, offset + ((this.buffer.length - this.position) >> 2));
+			byte[] buffer = this.buffer;
+			int position = this.position;
+
+			// ASCII run, one byte per character
+			if (this.highSurrogate == 0) {
+				for (; offset < limit; offset++) {
+					char c = chars[offset];
+					if (c >= 0x80) break;
+					buffer[position++] = (byte) c;
+				}
+			}
+
+			this.position = position;
+
+			while ((offset < limit) && ((chars[offset] >= 0x80) || (this.highSurrogate != 0))) {
+				encode(chars[offset++]);
+			}
+		}
+	}
+
+	@Override
+	public void write(String value, int offset, int length) throws IOException {
+		int end = offset + length;
+
+		while (offset < end) {
+			if (this.position + 4 > this.buffer.length) flushBuffer();
+
+			int limit = Math.min(end, offset + ((this.buffer.length - this.position) >> 2));
+
+			for (; offset < limit; offset++) {
+				char c = value.charAt(offset);
+
+				if ((c < 0x80) && (this.highSurrogate == 0)) this.buffer[this.position++] = (byte) c;
+				else encode(c);
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		this.outputStream.flush();
+	}
+
+	/**
+	 * Flush the buffer.  The output stream is not closed, it belongs to the caller
+	 */
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+	}
+
+	/**
+	 * Encode a non ASCII character, or the character following a high surrogate.  The buffer has room for 4 bytes
+	 */
+	private void encode(char c) {
+		if (this.highSurrogate != 0) {
+			char high = this.highSurrogate;
+			this.highSurrogate = 0;
+
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				this.buffer[this.position++] = (byte) (0xf0 | (codePoint >> 18));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3f));
+				return;
+			}
+
+			// Lone high surrogate, replaced the way the UTF-8 charset does.  The character after it takes 3 bytes at most
+			this.buffer[this.position++] = '?';
+		}
+
+		if (c < 0x80) {
+			this.buffer[this.position++] = (byte) c;
+		}
+		else if (c < 0x800) {
+			this.buffer[this.position++] = (byte) (0xc0 | (c >> 6));
+			this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+		}
+		else if (Character.isHighSurrogate(c)) {
+			this.highSurrogate = c;
+		}
+		else if (Character.isLowSurrogate(c)) {
+			this.buffer[this.position++] = '?';
+		}
+		else {
+			this.buffer[this.position++] = (byte) (0xe0 | (c >> 12));
+			this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.position == 0) return;
+
+		this.outputStream.write(this.buffer, 0, this.position);
+		this.position = 0;
+	}
+}
@@ -0,0 +1,69 @@
+package jellyfisher.meowmi;
+
+/**
+ * Receives the content of an XML document in document order while the XML stream is being read.  XmlCursorReader (or the
+ * XMLEventReader loop in XmlToJsonOutputString) translates the XML stream into these calls, and each implementation turns them
+ * into JSON in its own way.
+ */
+interface XmlContentHandler {
+
+	/**
+	 * Handle the start element i.e. <person>.  The attributes of the element follow as attribute() calls
+	 *
+	 * @param name
+	 * Element key
+	 *
+	 * @param hints
+	 * Shape hints of the element, see XmlShapeHints
+	 *
+	 * @throws Exception
+	 */
+	void startElement(String name, int hints) throws Exception;
+
+	/**
+	 * Handle an attribute of the most recent start element
+	 *
+	 * @param name
+	 * Attribute key without the "@" prefix
+	 *
+	 * @param value
+	 * Attribute value
+	 *
+	 * @param hints
+	 * Shape hints of the attribute, see XmlShapeHints
+	 *
+	 * @throws Exception
+	 */
+	void attribute(String name, String value, int hints) throws Exception;
+
+	/**
+	 * Handle a data string i.e. <person>data</person>.  A data string can be delivered in several consecutive calls.  The
+	 * character array belongs to the XML reader and is only valid during this call
+	 *
+	 * @param text
+	 * Character array holding the raw data string
+	 *
+	 * @param start
+	 * Offset of the data string in the array
+	 *
+	 * @param length
+	 * Length of the data string
+	 *
+	 * @throws Exception
+	 */
+	void characters(char[] text, int start, int length) throws Exception;
+
+	/**
+	 * Handle the end element i.e. </person> of the most recent open element
+	 *
+	 * @throws Exception
+	 */
+	void endElement() throws Exception;
+
+	/**
+	 * Handle the end of the XML stream
+	 *
+	 * @throws Exception
+	 */
+	void endDocument() throws Exception;
+}
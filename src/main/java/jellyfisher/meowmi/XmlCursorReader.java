@@ -0,0 +1,482 @@
+package jellyfisher.meowmi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads an XML stream through the XMLStreamReader cursor and passes each event to a content handler.  Unlike XMLEventReader,
+ * the cursor doesn't create an XMLEvent object per tag, attribute or data string: element and attribute keys come from the
+ * name table, and data strings are handed over straight from the parser's character buffer.
+ *
+ * With a projection, the elements which are not selected are skipped here, before their keys, attributes or data strings
+ * are created; the content handler never sees them.  With shape hints, each element and attribute is passed with its hints,
+ * and the inner elements and attributes of a text element are skipped the same way.
+ *
+ * The conversion limits are checked here as each event is read, before the content handler sees it.  When a document is
+ * converted in pieces (the skeleton and the batches of records of a split document), the output characters of each piece
+ * are also added to a total shared by all the pieces, so the output limit applies to the whole document.
+ */
+class XmlCursorReader {
+
+	// Number of output characters counted before they are added to the shared total, so the pieces converted in parallel
+	// don't update it on every event
+	private static final int OUTPUT_FLUSH = 4096;
+
+	private NameTable nameTable = new NameTable();
+
+	private XmlProjection projection;
+
+	// Projection nodes of the open elements outside of selected elements
+	private PathTree.Node[] nodes = new PathTree.Node[16];
+	private int depth;
+
+	// Open elements inside a selected element, which are passed to the handler as they are
+	private int selectedDepth;
+
+	private XmlShapeHints hints;
+
+	// When the document is a batch of records, the batch element stands for the parent of the records.  Its node is given
+	// instead of looked up by name (null if no hint applies to the records)
+	private boolean batch;
+	private PathTree.Node batchNode;
+
+	// Shape hint nodes of the open elements (null where no hint applies to the element or its descendants), above the
+	// node of the pseudo element above the root element
+	private PathTree.Node[] hintNodes = new PathTree.Node[16];
+	private int hintDepth;
+
+	// Open elements inside a text element, which are skipped
+	private int textDepth;
+
+	// Metrics of the document: events passed to the handler, open elements passed to the handler and the deepest nesting
+	private long events;
+	private int openDepth;
+	private int maxDepth;
+
+	// Conversion limits of the document, the maximum values when there is no limit
+	private int depthLimit = Integer.MAX_VALUE;
+	private int depthOffset;
+	private long outputLimit = Long.MAX_VALUE;
+	private int textLimit = Integer.MAX_VALUE;
+	private int attributeLimit = Integer.MAX_VALUE;
+
+	// Characters of keys, attribute values and data strings read so far, and of the data string being read
+	private long outputChars;
+	private int textLength;
+
+	// Output characters of all the pieces of the document, or null for a whole document, and the characters of this piece
+	// already added to it
+	private AtomicLong totalOutput;
+	private long flushedChars;
+
+	// Keys of the elements opened above this depth are not counted, they are counted by another piece of the document
+	private int uncountedDepth;
+
+	// Hint added to every element and attribute, XmlShapeHints.TYPED when the values are typed
+	private int typedHint;
+
+	/**
+	 * Set the projection used for the next document.  This starts a new document, the metrics are reset
+	 *
+	 * @param projection
+	 * The selected parts of the document, or null to pass the whole document to the handler
+	 */
+	void setProjection(XmlProjection projection) {
+		this.projection = projection;
+		this.depth = 0;
+		this.selectedDepth = 0;
+
+		this.events = 0;
+		this.openDepth = 0;
+		this.maxDepth = 0;
+	}
+
+	/**
+	 * Set how the namespace of a name shows in its key.  The keys are cached across documents as long as the policy stays
+	 *
+	 * @param policy
+	 * The namespace policy, or null for the "{uri}local" keys
+	 */
+	void setNamespacePolicy(NamespacePolicy policy) {
+		this.nameTable.setPolicy(policy);
+	}
+
+	/**
+	 * Set whether the data strings and attribute values are written as numbers, booleans and null when they are one
+	 *
+	 * @param typedValues
+	 * True to type the values, false to write them as strings unless a shape hint says otherwise
+	 */
+	void setTypedValues(boolean typedValues) {
+		this.typedHint = typedValues ? XmlShapeHints.TYPED : 0;
+	}
+
+	/**
+	 * Set the conversion limits used for the next document
+	 *
+	 * @param limits
+	 * The conversion limits, or null for no limits
+	 *
+	 * @param depthOffset
+	 * Depth of the root element of the document in the document it was split from, 0 for a whole document
+	 *
+	 * @param totalOutput
+	 * Output characters of all the pieces of the document it was split from, or null for a whole document
+	 *
+	 * @param uncountedDepth
+	 * Number of outer elements whose keys are not counted against the output limit: the batch element, and the records
+	 * when their keys are counted in the skeleton.  0 for a whole document
+	 */
+	void setLimits(ConversionLimits limits, int depthOffset, AtomicLong totalOutput, int uncountedDepth) {
+		this.outputChars = 0;
+		this.textLength = 0;
+		this.depthOffset = depthOffset;
+		this.totalOutput = totalOutput;
+		this.flushedChars = 0;
+		this.uncountedDepth = uncountedDepth;
+
+		if (limits == null) {
+			this.depthLimit = Integer.MAX_VALUE;
+			this.outputLimit = Long.MAX_VALUE;
+			this.textLimit = Integer.MAX_VALUE;
+			this.attributeLimit = Integer.MAX_VALUE;
+			return;
+		}
+
+		this.depthLimit = limits.getMaxDepth();
+		this.outputLimit = limits.getMaxOutputChars();
+		this.textLimit = limits.getMaxTextLength();
+		this.attributeLimit = limits.getMaxAttributes();
+	}
+
+	/**
+	 * Get the number of start elements, attributes and data strings passed to the handler
+	 */
+	long getEvents() {
+		return this.events;
+	}
+
+	/**
+	 * Get the deepest element nesting passed to the handler, the root element being at depth 1
+	 */
+	int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	/**
+	 * Set the shape hints used for the next document
+	 *
+	 * @param hints
+	 * The shape hints, or null to pass every element and attribute without hints
+	 *
+	 * @param parentNames
+	 * Names of the elements from the root to the parent of the records when the document is a batch of records wrapped into
+	 * one batch element, or null for a whole document
+	 */
+	void setShapeHints(XmlShapeHints hints, String[] parentNames) {
+		this.hints = hints;
+		this.textDepth = 0;
+
+		if (hints != null) {
+			this.hintNodes[0] = hints.getRoot();
+			this.hintDepth = 1;
+			this.batch = parentNames != null;
+			this.batchNode = this.batch ? hints.find(parentNames) : null;
+		}
+	}
+
+	/**
+	 * Read the XML stream until the end of the document
+	 *
+	 * @param reader
+	 * The XML stream cursor
+	 *
+	 * @param handler
+	 * The content handler turning the XML events into JSON
+	 *
+	 * @return
+	 * True if the end of the document was reached
+	 *
+	 * @throws XMLStreamException
+	 * The XML stream is not valid
+	 *
+	 * @throws Exception
+	 */
+	boolean read(XMLStreamReader reader, XmlContentHandler handler) throws Exception {
+		while (step(reader, handler));
+
+		return reader.getEventType() == XMLStreamConstants.END_DOCUMENT;
+	}
+
+	/**
+	 * Pass the event at the cursor to the content handler and move the cursor to the next event.  This lets the caller read
+	 * the XML stream a little at a time, i.e. one record at a time
+	 *
+	 * @param reader
+	 * The XML stream cursor
+	 *
+	 * @param handler
+	 * The content handler turning the XML events into JSON
+	 *
+	 * @return
+	 * False if the event was the end of the document, or the XML stream has no more events
+	 *
+	 * @throws XMLStreamException
+	 * The XML stream is not valid
+	 *
+	 * @throws Exception
+	 */
+	boolean step(XMLStreamReader reader, XmlContentHandler handler) throws Exception {
+
+		switch (reader.getEventType()) {
+
+		//**** Each start element i.e. <persons>, followed by its attributes
+		case XMLStreamConstants.START_ELEMENT:
+			// Inside a text element, only the data strings are kept
+			if (this.textDepth > 0) {
+				this.textDepth++;
+				break;
+			}
+
+			if (this.projection != null) {
+				if (this.selectedDepth == 0) {
+					startProjected(reader, handler);
+					break;
+				}
+				this.selectedDepth++;
+			}
+
+			int flags = startHints(reader);
+			startElement(reader, handler, flags);
+
+			if ((flags & XmlShapeHints.TEXT) != 0) {
+				this.textDepth = 1;
+				break;
+			}
+
+			for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+				attribute(reader, handler, i);
+			}
+			break;
+
+		//**** Each data string i.e. <person>data</person>
+		case XMLStreamConstants.CHARACTERS:
+		case XMLStreamConstants.CDATA:
+		case XMLStreamConstants.SPACE:
+			if ((this.projection != null) && (this.selectedDepth == 0) && (this.textDepth == 0)) break;
+
+			characters(reader, handler);
+			break;
+
+		//**** Each end element i.e. </person>
+		case XMLStreamConstants.END_ELEMENT:
+			if ((this.textDepth > 0) && (--this.textDepth > 0)) break;
+
+			if (this.hints != null) this.hintDepth--;
+
+			if (this.projection != null) {
+				if (this.selectedDepth > 0) this.selectedDepth--;
+				else this.depth--;
+			}
+
+			handler.endElement();
+			this.openDepth--;
+			this.textLength = 0;
+			break;
+
+		//**** End of the XML stream
+		case XMLStreamConstants.END_DOCUMENT:
+			if (this.totalOutput != null) flushOutput();
+
+			handler.endDocument();
+			return false;
+		}
+
+		if (! reader.hasNext()) return false;
+		reader.next();
+
+		return true;
+	}
+
+	/**
+	 * Handle a start element outside of the selected elements: skip it with everything inside it if nothing in it is
+	 * selected, otherwise pass it to the handler with its selected attributes only
+	 */
+	private void startProjected(XMLStreamReader reader, XmlContentHandler handler) throws Exception {
+		PathTree.Node parent = (this.depth == 0) ? this.projection.getRoot() : this.nodes[this.depth - 1];
+		PathTree.Node node = parent.getChild(reader.getLocalName());
+
+		if (node == null) {
+			// The root element is always kept
+			if (this.depth > 0) {
+				skipElement(reader);
+				return;
+			}
+
+			node = PathTree.Node.EMPTY;
+		}
+
+		int flags = startHints(reader);
+		startElement(reader, handler, flags);
+
+		boolean selected = (node.flags & XmlProjection.SELECTED) != 0;
+
+		if (selected) {
+			this.selectedDepth = 1;
+		}
+		else {
+			if (this.depth == this.nodes.length) {
+				PathTree.Node[] grown = new PathTree.Node[this.depth * 2];
+				System.arraycopy(this.nodes, 0, grown, 0, this.depth);
+				this.nodes = grown;
+			}
+
+			this.nodes[this.depth++] = node;
+		}
+
+		if ((flags & XmlShapeHints.TEXT) != 0) {
+			this.textDepth = 1;
+			return;
+		}
+
+		for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+			if (selected || ((node.getAttributeFlags(reader.getAttributeLocalName(i)) & XmlProjection.SELECTED) != 0)) {
+				attribute(reader, handler, i);
+			}
+		}
+	}
+
+	/**
+	 * Pass the start element at the cursor to the handler
+	 */
+	private void startElement(XMLStreamReader reader, XmlContentHandler handler, int flags) throws Exception {
+		String key = this.nameTable.key(reader.getNamespaceURI(), reader.getPrefix(), reader.getLocalName());
+
+		if (this.openDepth + this.depthOffset >= this.depthLimit) {
+			throw new ConversionLimitException("max depth", this.depthLimit);
+		}
+		if (reader.getAttributeCount() > this.attributeLimit) {
+			throw new ConversionLimitException("max attributes", this.attributeLimit);
+		}
+		if (this.openDepth >= this.uncountedDepth) addOutput(key.length());
+
+		handler.startElement(key, flags | this.typedHint);
+
+		this.events++;
+		this.textLength = 0;
+		if (++this.openDepth > this.maxDepth) this.maxDepth = this.openDepth;
+	}
+
+	/**
+	 * Pass an attribute of the start element at the cursor to the handler
+	 */
+	private void attribute(XMLStreamReader reader, XmlContentHandler handler, int index) throws Exception {
+		String key = this.nameTable.key(reader.getAttributeNamespace(index), reader.getAttributePrefix(index),
+				reader.getAttributeLocalName(index));
+		String value = reader.getAttributeValue(index);
+
+		if (value.length() > this.textLimit) {
+			throw new ConversionLimitException("max text length", this.textLimit);
+		}
+		addOutput(key.length() + value.length());
+
+		handler.attribute(key, value, attributeHints(reader, index) | this.typedHint);
+		this.events++;
+	}
+
+	/**
+	 * Pass the data string at the cursor to the handler.  A data string can come in several events, its length is counted
+	 * until the next element event
+	 */
+	private void characters(XMLStreamReader reader, XmlContentHandler handler) throws Exception {
+		int length = reader.getTextLength();
+
+		this.textLength += length;
+		if (this.textLength > this.textLimit) {
+			throw new ConversionLimitException("max text length", this.textLimit);
+		}
+		addOutput(length);
+
+		handler.characters(reader.getTextCharacters(), reader.getTextStart(), length);
+		this.events++;
+	}
+
+	/**
+	 * Count characters of the JSON output against the limit
+	 */
+	private void addOutput(int length) throws ConversionLimitException {
+		this.outputChars += length;
+
+		if (this.outputChars > this.outputLimit) {
+			throw new ConversionLimitException("max output chars", this.outputLimit);
+		}
+
+		if ((this.totalOutput != null) && (this.outputChars - this.flushedChars >= OUTPUT_FLUSH)) flushOutput();
+	}
+
+	/**
+	 * Add the output characters of this piece not added yet to the shared total, and check the total against the limit
+	 */
+	private void flushOutput() throws ConversionLimitException {
+		long total = this.totalOutput.addAndGet(this.outputChars - this.flushedChars);
+		this.flushedChars = this.outputChars;
+
+		if (total > this.outputLimit) {
+			throw new ConversionLimitException("max output chars", this.outputLimit);
+		}
+	}
+
+	/**
+	 * Find the shape hint node of the element at the cursor and put it at the top of the hint stack
+	 *
+	 * @return
+	 * The shape hints of the element
+	 */
+	private int startHints(XMLStreamReader reader) {
+		if (this.hints == null) return 0;
+
+		PathTree.Node parent = this.hintNodes[this.hintDepth - 1];
+		PathTree.Node node;
+
+		boolean batchElement = (this.hintDepth == 1) && this.batch;
+
+		if (batchElement) node = this.batchNode;
+		else node = (parent == null) ? null : parent.getChild(reader.getLocalName());
+
+		if (this.hintDepth == this.hintNodes.length) {
+			PathTree.Node[] grown = new PathTree.Node[this.hintDepth * 2];
+			System.arraycopy(this.hintNodes, 0, grown, 0, this.hintDepth);
+			this.hintNodes = grown;
+		}
+
+		this.hintNodes[this.hintDepth++] = node;
+
+		// The batch element itself is not converted, only its records
+		return ((node == null) || batchElement) ? 0 : node.flags;
+	}
+
+	/**
+	 * Get the shape hints of an attribute of the element at the top of the hint stack
+	 */
+	private int attributeHints(XMLStreamReader reader, int index) {
+		if (this.hints == null) return 0;
+
+		PathTree.Node node = this.hintNodes[this.hintDepth - 1];
+		return (node == null) ? 0 : node.getAttributeFlags(reader.getAttributeLocalName(index));
+	}
+
+	/**
+	 * Move the cursor from a start element to its end element without looking at anything in between
+	 */
+	private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		for (int level = 1; level > 0; ) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) level++;
+			else if (event == XMLStreamConstants.END_ELEMENT) level--;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package jellyfisher.meowmi;
+
+/**
+ * Selects the parts of an XML document to convert, so the rest of the document is skipped by the reader.  The projection
+ * is made of simple paths from the root, using the local names of the elements:
+ *
+ *     /order/items/item    the item elements, with everything inside them
+ *     /order/@id           the id attribute of the order element
+ *     /order/*             every child element of order, with everything inside them
+ *     /order/@*            all the attributes of the order element
+ *
+ * The ancestors of the selected elements are kept as the structure around them, but their data strings and the attributes
+ * not named by a path are dropped.  Everything else is skipped before any key, attribute or data string is created, so the
+ * work done grows with the selected data and not with the size of the document.  The root element is always kept, even
+ * if no path matches it.
+ *
+ * A projection is immutable once created and can be shared across threads.
+ */
+public class XmlProjection {
+
+	// Flag of a selected element or attribute
+	static final int SELECTED = 1;
+
+	private PathTree paths = new PathTree();
+
+	/**
+	 * Constructor
+	 *
+	 * @param paths
+	 * The paths of the selected elements and attributes, i.e. "/order/items/item" or "/order/@id"
+	 *
+	 * @throws IllegalArgumentException
+	 * A path is not valid
+	 */
+	public XmlProjection(String... paths) {
+		// Error checking
+		if (paths == null) {
+			throw new NullPointerException("Input parameter \"Paths\" can't be null");
+		}
+
+		for (String path : paths) this.paths.add(path, SELECTED);
+
+		this.paths.resolveWildcards();
+	}
+
+	/**
+	 * Get the node of the pseudo element above the root element
+	 */
+	PathTree.Node getRoot() {
+		return this.paths.getRoot();
+	}
+}
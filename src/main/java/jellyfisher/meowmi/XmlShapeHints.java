@@ -0,0 +1,333 @@
+package jellyfisher.meowmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Tells the converter up front how some elements and attributes are shaped, so the JSON is written in its final form
+ * directly and has the same shape whatever the data.  Paths use the same syntax as XmlProjection, i.e. "/order/items/item"
+ * or "/order/@id".
+ *
+ *     array      the element is always a JSON array, even when it appears once.  The streaming output doesn't need to
+ *                buffer the first element of the run to find out
+ *     number     the data string of the element, or the attribute value, is written as a JSON number when it is one
+ *     boolean    the data string or attribute value is written as true or false when it is "true", "false", "1" or "0"
+ *     text       the element is always a JSON string of its data, its attributes are skipped and the tags of its inner
+ *                elements are dropped, keeping their data i.e. "<t>hi<b>z</b>there</t>" gives "hizthere"
+ *
+ * Values which don't match their number or boolean hint are written as strings, so no data is lost.  The hints can be
+ * added in code, or loaded from a properties file mapping each path to a comma separated list of hints:
+ *
+ *     /order/items/item = array
+ *     /order/items/item/quantity = number
+ *     /order/@paid = boolean
+ *
+ * The hints must be complete before they are given to a converter, which may share them across threads.
+ */
+public class XmlShapeHints {
+
+	static final int ARRAY = 1;
+	static final int NUMBER = 2;
+	static final int BOOLEAN = 4;
+	static final int TEXT = 8;
+
+	// Set on every element and attribute by the typed values of the converter, see XmlToJsonConverter.setTypedValues()
+	static final int TYPED = 16;
+
+	// Type of a value without a number or boolean hint, see typeOf()
+	static final int STRING = 0;
+	static final int EMPTY = -1;
+
+	// Where the number scanner is: at the start, after the "-", after a leading "0", in the integer digits, after the ".",
+	// in the fraction digits, after the "e", after the sign of the exponent, in the exponent digits, or not in a number
+	private static final int NUMBER_START = 0;
+	private static final int NUMBER_MINUS = 1;
+	private static final int NUMBER_ZERO = 2;
+	private static final int NUMBER_INTEGER = 3;
+	private static final int NUMBER_POINT = 4;
+	private static final int NUMBER_FRACTION = 5;
+	private static final int NUMBER_E = 6;
+	private static final int NUMBER_SIGN = 7;
+	private static final int NUMBER_EXPONENT = 8;
+	private static final int NUMBER_INVALID = 9;
+
+	private PathTree paths = new PathTree();
+	private boolean resolved;
+
+	/**
+	 * Load the hints from a properties file mapping each path to a comma separated list of hints.  The input stream is not closed
+	 *
+	 * @param inputStream
+	 * The properties file
+	 *
+	 * @return
+	 * The hints
+	 *
+	 * @throws IOException
+	 * The properties file can't be read
+	 *
+	 * @throws IllegalArgumentException
+	 * A path or hint is not valid
+	 */
+	public static XmlShapeHints load(InputStream inputStream) throws IOException {
+		// Error checking
+		if (inputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+
+		Properties properties = new Properties();
+		properties.load(inputStream);
+
+		XmlShapeHints hints = new XmlShapeHints();
+
+		for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+			for (String hint : ((String) entry.getValue()).split(",")) {
+				hints.add((String) entry.getKey(), hint.trim());
+			}
+		}
+
+		return hints;
+	}
+
+	/**
+	 * The elements at the paths are always JSON arrays
+	 *
+	 * @param paths
+	 * The element paths
+	 *
+	 * @return
+	 * This object, so the hints can be chained
+	 */
+	public XmlShapeHints addArray(String... paths) {
+		return add(paths, ARRAY);
+	}
+
+	/**
+	 * The data strings of the elements, or the attribute values, at the paths are JSON numbers
+	 *
+	 * @param paths
+	 * The element or attribute paths
+	 *
+	 * @return
+	 * This object, so the hints can be chained
+	 */
+	public XmlShapeHints addNumber(String... paths) {
+		return add(paths, NUMBER);
+	}
+
+	/**
+	 * The data strings of the elements, or the attribute values, at the paths are JSON booleans
+	 *
+	 * @param paths
+	 * The element or attribute paths
+	 *
+	 * @return
+	 * This object, so the hints can be chained
+	 */
+	public XmlShapeHints addBoolean(String... paths) {
+		return add(paths, BOOLEAN);
+	}
+
+	/**
+	 * The elements at the paths are always JSON strings, of their data and the data of their inner elements
+	 *
+	 * @param paths
+	 * The element paths
+	 *
+	 * @return
+	 * This object, so the hints can be chained
+	 */
+	public XmlShapeHints addText(String... paths) {
+		return add(paths, TEXT);
+	}
+
+	/**
+	 * Add a hint by name, as found in a properties file
+	 */
+	private void add(String path, String hint) {
+		if (hint.equals("array")) addArray(path);
+		else if (hint.equals("number")) addNumber(path);
+		else if (hint.equals("boolean")) addBoolean(path);
+		else if (hint.equals("text")) addText(path);
+		else throw new IllegalArgumentException("Hint '" + hint + "' of path '" + path + "' is not array, number, boolean or text");
+	}
+
+	private XmlShapeHints add(String[] paths, int hint) {
+		// Error checking
+		if (paths == null) {
+			throw new NullPointerException("Input parameter \"Paths\" can't be null");
+		}
+
+		for (String path : paths) {
+			if (((hint & (ARRAY | TEXT)) != 0) && (path != null) && (path.indexOf('@') >= 0)) {
+				throw new IllegalArgumentException("Path '" + path + "' names an attribute, which can't be an array or text hint");
+			}
+
+			this.paths.add(path, hint);
+		}
+
+		this.resolved = false;
+		return this;
+	}
+
+	/**
+	 * Get the node of the pseudo element above the root element
+	 */
+	PathTree.Node getRoot() {
+		resolve();
+		return this.paths.getRoot();
+	}
+
+	/**
+	 * Get the node of an element from the names of the elements from the root
+	 *
+	 * @return
+	 * The node, or null if no hint applies to the element or its descendants
+	 */
+	PathTree.Node find(String[] names) {
+		resolve();
+		return this.paths.find(names);
+	}
+
+	private synchronized void resolve() {
+		if (this.resolved) return;
+
+		this.paths.resolveWildcards();
+		this.resolved = true;
+	}
+
+	/**
+	 * Write a data string or attribute value as a JSON value, following its number and boolean hints, or its type when the
+	 * values are typed
+	 *
+	 * @param sink
+	 * Where the JSON value is written to
+	 *
+	 * @param value
+	 * The data string or attribute value
+	 *
+	 * @param hints
+	 * The hints of the element or attribute
+	 *
+	 * @throws IOException
+	 */
+	static void writeValue(JsonSink sink, String value, int hints) throws IOException {
+		if (((hints & NUMBER) != 0) && isNumber(value)) {
+			sink.number(value);
+			return;
+		}
+
+		if ((hints & BOOLEAN) != 0) {
+			if (value.equals("true") || value.equals("1")) {
+				sink.bool(true);
+				return;
+			}
+			if (value.equals("false") || value.equals("0")) {
+				sink.bool(false);
+				return;
+			}
+		}
+
+		// A text hint keeps the value a string
+		if ((hints & (TYPED | TEXT)) == TYPED) {
+			switch (typeOf(value)) {
+			case NUMBER:
+				sink.number(value);
+				return;
+			case BOOLEAN:
+				sink.bool(value.length() == 4);
+				return;
+			case EMPTY:
+				sink.nullValue();
+				return;
+			}
+		}
+
+		sink.string(value);
+	}
+
+	/**
+	 * Get the type of a value, scanning it once: a JSON number (see isNumber()), "true" or "false", or empty.  The value is
+	 * a String, or a data string where it was collected, see TextCollector.getText()
+	 *
+	 * @return
+	 * NUMBER, BOOLEAN, EMPTY, or STRING for any other value
+	 */
+	static int typeOf(CharSequence value) {
+		int length = value.length();
+		if (length == 0) return EMPTY;
+
+		char c = value.charAt(0);
+
+		if ((c == 't') || (c == 'f')) {
+			String literal = (c == 't') ? "true" : "false";
+			if (length != literal.length()) return STRING;
+
+			for (int i = 1; i < length; i++) {
+				if (value.charAt(i) != literal.charAt(i)) return STRING;
+			}
+			return BOOLEAN;
+		}
+
+		return (((c >= '0') && (c <= '9')) || (c == '-')) && isNumber(value) ? NUMBER : STRING;
+	}
+
+	/**
+	 * Check if a value is a valid JSON number i.e. "-12", "0.5" or "1e3".  Values such as "007" or "+1" are not, and are
+	 * kept as strings
+	 */
+	static boolean isNumber(CharSequence value) {
+		int length = value.length();
+
+		int state = NUMBER_START;
+		for (int i = 0; (i < length) && (state != NUMBER_INVALID); i++) state = nextNumberState(state, value.charAt(i));
+
+		return isNumberEnd(state);
+	}
+
+	/**
+	 * Move the number scanner past one character
+	 */
+	private static int nextNumberState(int state, char c) {
+		boolean digit = (c >= '0') && (c <= '9');
+
+		switch (state) {
+		case NUMBER_START:
+		case NUMBER_MINUS:
+			if ((c == '-') && (state == NUMBER_START)) return NUMBER_MINUS;
+			if (c == '0') return NUMBER_ZERO;
+			return digit ? NUMBER_INTEGER : NUMBER_INVALID;
+
+		case NUMBER_ZERO:
+		case NUMBER_INTEGER:
+			if (digit && (state == NUMBER_INTEGER)) return NUMBER_INTEGER;
+			if (c == '.') return NUMBER_POINT;
+			return ((c == 'e') || (c == 'E')) ? NUMBER_E : NUMBER_INVALID;
+
+		case NUMBER_POINT:
+			return digit ? NUMBER_FRACTION : NUMBER_INVALID;
+
+		case NUMBER_FRACTION:
+			if (digit) return NUMBER_FRACTION;
+			return ((c == 'e') || (c == 'E')) ? NUMBER_E : NUMBER_INVALID;
+
+		case NUMBER_E:
+		case NUMBER_SIGN:
+		case NUMBER_EXPONENT:
+			if (((c == '+') || (c == '-')) && (state == NUMBER_E)) return NUMBER_SIGN;
+			return digit ? NUMBER_EXPONENT : NUMBER_INVALID;
+
+		default:
+			return NUMBER_INVALID;
+		}
+	}
+
+	/**
+	 * Check if a number can end in a state of the number scanner
+	 */
+	private static boolean isNumberEnd(int state) {
+		return (state == NUMBER_ZERO) || (state == NUMBER_INTEGER) || (state == NUMBER_FRACTION) || (state == NUMBER_EXPONENT);
+	}
+}
@@ -0,0 +1,415 @@
+package jellyfisher.meowmi;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Converts many XML files into JSON files on a fixed pool of worker threads, in one JVM.  All the workers share one
+ * XmlToJsonConverter, so each worker keeps its parser state from one file to the next.  Each XML file is read through a
+ * memory mapped FileChannel and converted the same way as XmlToJsonConverter.convert(File), and its JSON is written to a
+ * FileChannel in UTF-8.
+ *
+ *     java -jar meowmi.jar [-threads <count>] [-stream] <input> <output directory>
+ *
+ * With -stream, the JSON is written while the XML file is read (see XmlToJsonConverter.convert(File, OutputStream)), so a
+ * file never has to fit in memory.  The JSON is the same, but a file where an element repeats after a different sibling
+ * can't be converted that way and fails.
+ *
+ * The input is a directory (every .xml file below it), a single file, or a glob such as "feeds/*.xml" or "feeds/**.xml"
+ * (quoted, so the shell doesn't expand it).  Each JSON file is written to the output directory at the same relative path
+ * as its XML file, with the .json extension.  A file that fails is reported and skipped, and its partial JSON file is
+ * deleted.  Once all the files are done, the throughput is reported in files and megabytes of XML per second.
+ */
+public class XmlToJsonBatch {
+
+	private XmlToJsonConverter converter;
+	private int threads;
+	private boolean streaming;
+
+	// Totals of the last run
+	private int fileCount;
+	private int failureCount;
+	private long byteCount;
+	private long nanos;
+
+	/**
+	 * Constructor
+	 *
+	 * @param converter
+	 * The converter shared by the worker threads
+	 *
+	 * @param threads
+	 * Number of worker threads
+	 *
+	 * @throws NullPointerException
+	 * The converter is null
+	 *
+	 * @throws IllegalArgumentException
+	 * The number of threads is not greater than 0
+	 */
+	public XmlToJsonBatch(XmlToJsonConverter converter, int threads) {
+		// Error checking
+		if (converter == null) {
+			throw new NullPointerException("Input parameter \"Converter\" can't be null");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Input parameter \"Threads\" must be greater than 0");
+		}
+
+		this.converter = converter;
+		this.threads = threads;
+	}
+
+	/**
+	 * Write the JSON while each XML file is read, instead of converting the whole file first.  The JSON is the same, but a
+	 * file where an element repeats after a different sibling fails, see XmlToJsonConverter.convert(InputStream, Writer)
+	 *
+	 * @param streaming
+	 * True to stream the conversions, false (the default) to convert each file as a whole
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Check if the JSON is written while each XML file is read
+	 */
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	/**
+	 * Convert the XML files found at the input into JSON files under the output directory.  The errors of the files which
+	 * fail are written to the error stream, the other files are converted anyway
+	 *
+	 * @param input
+	 * A directory, a file or a glob, see findFiles()
+	 *
+	 * @param outputDirectory
+	 * The directory where the JSON files are written to, created if needed
+	 *
+	 * @throws Exception
+	 * The input doesn't exist, or the output directory can't be created
+	 */
+	public void convert(String input, File outputDirectory) throws Exception {
+		// Error checking
+		if (input == null) {
+			throw new NullPointerException("Input parameter \"Input\" can't be null");
+		}
+		if (outputDirectory == null) {
+			throw new NullPointerException("Input parameter \"Output Directory\" can't be null");
+		}
+
+		ArrayList<File> xmlFiles = new ArrayList<File>();
+		File baseDirectory = findFiles(input, xmlFiles);
+
+		if (! outputDirectory.isDirectory() && ! outputDirectory.mkdirs()) {
+			throw new IOException("Directory '" + outputDirectory.getPath() + "' can't be created");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+		this.fileCount = xmlFiles.size();
+		this.failureCount = 0;
+		this.byteCount = 0;
+
+		long start = System.nanoTime();
+
+		try {
+			ArrayList<Future<Long>> results = new ArrayList<Future<Long>>(xmlFiles.size());
+
+			for (final File xmlFile : xmlFiles) {
+				final File jsonFile = new File(outputDirectory, jsonPath(baseDirectory, xmlFile));
+
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						return convertFile(xmlFile, jsonFile);
+					}
+				}));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					this.byteCount += XmlToJsonConverter.getValue(results.get(i));
+
+				} catch (Exception e) {
+					this.failureCount++;
+					System.err.println(xmlFiles.get(i).getPath() + ": " + e.getMessage());
+				}
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		this.nanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Get the number of XML files found by the last run
+	 */
+	public int getFileCount() {
+		return this.fileCount;
+	}
+
+	/**
+	 * Get the number of XML files which failed to convert in the last run
+	 */
+	public int getFailureCount() {
+		return this.failureCount;
+	}
+
+	/**
+	 * Get the size of the XML files converted by the last run
+	 */
+	public long getByteCount() {
+		return this.byteCount;
+	}
+
+	/**
+	 * Get the duration of the last run, from System.nanoTime()
+	 */
+	public long getNanos() {
+		return this.nanos;
+	}
+
+	/**
+	 * Get the throughput of the last run, i.e. "1200 files (0 failed), 845.2 MB in 9.8 s: 122.4 files/s, 86.2 MB/s"
+	 */
+	public String getSummary() {
+		double seconds = Math.max(this.nanos, 1) / 1e9;
+		double megabytes = this.byteCount / 1e6;
+		int converted = this.fileCount - this.failureCount;
+
+		return String.format(Locale.ROOT, "%d files (%d failed), %.1f MB in %.1f s: %.1f files/s, %.1f MB/s", this.fileCount,
+				this.failureCount, megabytes, seconds, converted / seconds, megabytes / seconds);
+	}
+
+	/**
+	 * Find the XML files of an input
+	 *
+	 * @param input
+	 * A directory, in which case every file ending with .xml below it is converted, a single file, or a glob where "*" and
+	 * "?" match within a file or directory name and "**" matches across directories, i.e. "feeds/2024-??-*.xml"
+	 *
+	 * @param xmlFiles
+	 * Receives the files found, sorted by path
+	 *
+	 * @return
+	 * The directory the paths of the JSON files are made relative to
+	 *
+	 * @throws FileNotFoundException
+	 * The input directory or file doesn't exist
+	 */
+	static File findFiles(String input, List<File> xmlFiles) throws FileNotFoundException {
+		File file = new File(input);
+
+		if (file.isDirectory()) {
+			addFiles(file, "", Pattern.compile(".*\\.xml"), xmlFiles);
+			return file;
+		}
+
+		if (file.isFile()) {
+			xmlFiles.add(file);
+			return file.getAbsoluteFile().getParentFile();
+		}
+
+		// The directory part of the glob before the first wildcard is where the search starts
+		String path = input.replace(File.separatorChar, '/');
+		int wildcard = indexOfWildcard(path);
+
+		if (wildcard < 0) {
+			throw new FileNotFoundException("File '" + input + "' is not found");
+		}
+
+		int slash = path.lastIndexOf('/', wildcard);
+		File baseDirectory = new File((slash < 0) ? "." : (slash == 0) ? "/" : path.substring(0, slash));
+
+		if (! baseDirectory.isDirectory()) {
+			throw new FileNotFoundException("Directory '" + baseDirectory.getPath() + "' is not found");
+		}
+
+		addFiles(baseDirectory, "", globPattern(path.substring(slash + 1)), xmlFiles);
+		return baseDirectory;
+	}
+
+	/**
+	 * Add the files below a directory whose path relative to the base directory matches the pattern, in path order
+	 */
+	private static void addFiles(File directory, String relativePath, Pattern pattern, List<File> xmlFiles) {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+
+		Arrays.sort(files);
+
+		for (File file : files) {
+			String path = relativePath + file.getName();
+
+			if (file.isDirectory()) addFiles(file, path + "/", pattern, xmlFiles);
+			else if (pattern.matcher(path).matches()) xmlFiles.add(file);
+		}
+	}
+
+	/**
+	 * Turn a glob into the regular expression matching the same relative paths
+	 */
+	private static Pattern globPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+
+			if ((c == '*') && (i + 1 < glob.length()) && (glob.charAt(i + 1) == '*')) {
+				// "**/" also matches no directory at all
+				if ((i + 2 < glob.length()) && (glob.charAt(i + 2) == '/')) {
+					regex.append("(?:.*/)?");
+					i += 2;
+				}
+				else {
+					regex.append(".*");
+					i++;
+				}
+			}
+			else if (c == '*') regex.append("[^/]*");
+			else if (c == '?') regex.append("[^/]");
+			else regex.append(Pattern.quote(String.valueOf(c)));
+		}
+
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Find the first wildcard of a glob, or -1 if there is none
+	 */
+	private static int indexOfWildcard(String glob) {
+		for (int i = 0; i < glob.length(); i++) {
+			if ((glob.charAt(i) == '*') || (glob.charAt(i) == '?')) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the path of the JSON file of an XML file, relative to the output directory
+	 */
+	private static String jsonPath(File baseDirectory, File xmlFile) {
+		String base = baseDirectory.getAbsolutePath();
+		String path = xmlFile.getAbsolutePath();
+
+		if (path.startsWith(base + File.separator)) path = path.substring(base.length() + 1);
+		else path = xmlFile.getName();
+
+		int dot = path.lastIndexOf('.');
+		if (dot > path.lastIndexOf(File.separatorChar)) path = path.substring(0, dot);
+
+		return path + ".json";
+	}
+
+	/**
+	 * Convert one XML file into its JSON file.  The JSON is written to the file channel in blocks; the partial JSON file of a
+	 * failed conversion is deleted
+	 *
+	 * @return
+	 * Size of the XML file
+	 */
+	private long convertFile(File xmlFile, File jsonFile) throws Exception {
+		File directory = jsonFile.getParentFile();
+		if (! directory.isDirectory() && ! directory.mkdirs() && ! directory.isDirectory()) {
+			throw new IOException("Directory '" + directory.getPath() + "' can't be created");
+		}
+
+		FileChannel channel = new FileOutputStream(jsonFile).getChannel();
+		boolean done = false;
+
+		try {
+			if (this.streaming) {
+				this.converter.convert(xmlFile, Channels.newOutputStream(channel));
+			}
+			else {
+				Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), "UTF-8");
+				writer.write(this.converter.convert(xmlFile));
+				writer.flush();
+			}
+			done = true;
+
+		} finally {
+			channel.close();
+			if (! done) jsonFile.delete();
+		}
+
+		return xmlFile.length();
+	}
+
+	/**
+	 * Convert a directory, a file or a glob of XML files into JSON files, see the class description
+	 *
+	 * @param args
+	 * [-threads count] [-stream] input output-directory
+	 */
+	public static void main(String[] args) throws Exception {
+		int status = run(args);
+		if (status != 0) System.exit(status);
+	}
+
+	/**
+	 * Run the command line of main()
+	 *
+	 * @return
+	 * The exit code: 0 when every file is converted, 1 when some files failed, 2 for a wrong command line or input
+	 */
+	static int run(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean streaming = false;
+		int index = 0;
+
+		// Options, in any order
+		while ((index < args.length) && args[index].startsWith("-")) {
+			if (args[index].equals("-stream")) {
+				streaming = true;
+				index++;
+			}
+			else if (args[index].equals("-threads") && (index + 1 < args.length)) {
+				try {
+					threads = Integer.parseInt(args[index + 1]);
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				index += 2;
+			}
+			else {
+				threads = 0;
+				break;
+			}
+		}
+
+		if ((args.length - index != 2) || (threads <= 0)) {
+			System.err.println("Usage: java -jar meowmi.jar [-threads <count>] [-stream] <input directory, file or glob> <output directory>");
+			System.err.println("  -stream  write the JSON while each file is read; files where an element repeats after a different sibling fail");
+			return 2;
+		}
+
+		XmlToJsonBatch batch = new XmlToJsonBatch(new XmlToJsonConverter(), threads);
+		batch.setStreaming(streaming);
+
+		try {
+			batch.convert(args[index], new File(args[index + 1]));
+
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		}
+
+		System.out.println("Converted " + batch.getSummary());
+		return (batch.getFailureCount() > 0) ? 1 : 0;
+	}
+}
@@ -0,0 +1,1441 @@
+package jellyfisher.meowmi;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Converter from XML to JSON string that can be shared across threads.  Unlike XmlToJsonOutputString, which binds to one
+ * input stream, a converter is created once and then converts any number of input streams.  The XMLInputFactory is looked
+ * up and configured only once, and the parser state (element stack, name table and buffers) is kept per thread and reused
+ * by every conversion on that thread.
+ *
+ *     XmlToJsonConverter converter = new XmlToJsonConverter();
+ *     String json = converter.convert(xmlInputStream);
+ */
+public class XmlToJsonConverter {
+
+	// Buffers growing beyond this size while converting a large document are not kept for the next conversion
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	// Approximate size of the batches of records converted by one task in the parallel mode
+	private static final int PARALLEL_BATCH_SIZE = 256 * 1024;
+
+	// Approximate number of bytes of records between two checkpoints of a resumable record conversion
+	private static final int CHECKPOINT_BATCH_SIZE = 1024 * 1024;
+
+	// Number of batches the parallel mode reads ahead of the oldest batch still being converted
+	private static final int PARALLEL_READ_AHEAD = 4 * Runtime.getRuntime().availableProcessors();
+
+	// Property of the JDK parser limiting the entity expansions, and the code of its error once the limit is exceeded
+	private static final String ENTITY_EXPANSION_LIMIT = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit";
+	private static final String ENTITY_EXPANSION_ERROR = "JAXP00010001";
+
+	// Standard properties of an XMLInputFactory, copied to the converter's own factory
+	private static final String[] FACTORY_PROPERTIES = {XMLInputFactory.IS_NAMESPACE_AWARE, XMLInputFactory.IS_VALIDATING,
+			XMLInputFactory.IS_COALESCING, XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,
+			XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, XMLInputFactory.SUPPORT_DTD, XMLInputFactory.REPORTER,
+			XMLInputFactory.RESOLVER};
+
+	// The factory given to the converter, and the one creating the XML readers: the same, or the converter's own copy of it
+	// holding the entity expansion limit
+	private XMLInputFactory xmlInputFactory;
+	private XMLInputFactory readerFactory;
+
+	// The selected parts of the documents, or null to convert the whole documents
+	private XmlProjection projection;
+
+	// How some elements and attributes are shaped, or null to shape everything from the data
+	private XmlShapeHints shapeHints;
+
+	// Receives the metrics of each conversion, or null
+	private ConversionListener conversionListener;
+
+	// Limits on the documents accepted, or null for no limits
+	private ConversionLimits limits;
+
+	// Where the large data strings go, or null to write every data string into the JSON, and the length from which they go
+	private TextSidecar textSidecar;
+	private int textSidecarThreshold;
+
+	// How the namespace of a name shows in its key, or null for the "{uri}local" keys
+	private NamespacePolicy namespacePolicy;
+
+	// Whether the values which are numbers, booleans or empty are written as such instead of strings
+	private boolean typedValues;
+
+	// Conversion plans learned per document type, or null to convert without plans
+	private ConversionPlans plans;
+
+	// Number of characters from which a buffer of the streaming conversion is spilled to a file (0 to keep buffers in memory),
+	// and where the files go
+	private int spillBudget;
+	private File spillDirectory;
+
+	// Parser state of each thread, created on the first conversion of the thread and reused afterwards
+	private ThreadLocal<ConversionState> conversionState = new ThreadLocal<ConversionState>() {
+		protected ConversionState initialValue() {
+			return new ConversionState();
+		}
+	};
+
+	/**
+	 * Constructor using the default XMLInputFactory
+	 */
+	public XmlToJsonConverter() {
+		this(XMLInputFactory.newFactory());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param xmlInputFactory
+	 * The factory used to create the XML readers.  The factory must be fully configured before it is passed in, since it is
+	 * shared by all the threads using this converter
+	 *
+	 * @throws NullPointerException
+	 * The factory is null
+	 */
+	public XmlToJsonConverter(XMLInputFactory xmlInputFactory) {
+		// Error checking
+		if (xmlInputFactory == null) {
+			throw new NullPointerException("Input parameter \"XML Input Factory\" can't be null");
+		}
+
+		this.xmlInputFactory = xmlInputFactory;
+		this.readerFactory = xmlInputFactory;
+	}
+
+	/**
+	 * Convert only the selected parts of the documents, see XmlProjection.  Like the XMLInputFactory, the projection must be
+	 * set before the converter is shared across threads
+	 *
+	 * @param projection
+	 * The selected parts of the documents, or null to convert the whole documents
+	 */
+	public void setProjection(XmlProjection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Get the projection applied to the documents
+	 *
+	 * @return
+	 * The selected parts of the documents, or null if the whole documents are converted
+	 */
+	public XmlProjection getProjection() {
+		return this.projection;
+	}
+
+	/**
+	 * Write some elements and attributes in a fixed shape, see XmlShapeHints.  Like the XMLInputFactory, the hints must be set
+	 * before the converter is shared across threads
+	 *
+	 * @param shapeHints
+	 * How some elements and attributes are shaped, or null to shape everything from the data
+	 */
+	public void setShapeHints(XmlShapeHints shapeHints) {
+		this.shapeHints = shapeHints;
+	}
+
+	/**
+	 * Get the shape hints applied to the documents
+	 *
+	 * @return
+	 * How some elements and attributes are shaped, or null if everything is shaped from the data
+	 */
+	public XmlShapeHints getShapeHints() {
+		return this.shapeHints;
+	}
+
+	/**
+	 * Report the metrics of each conversion to a listener, see ConversionMetrics.  The metrics are reported by convert(),
+	 * convertToCbor() and convertRecords(); the parallel, feeder and iterator conversions spread a document over several
+	 * tasks or calls and are not reported.  Like the XMLInputFactory, the listener must be set before the converter is
+	 * shared across threads
+	 *
+	 * @param conversionListener
+	 * Receives the metrics of each conversion on the thread which did it, or null to stop reporting
+	 */
+	public void setConversionListener(ConversionListener conversionListener) {
+		this.conversionListener = conversionListener;
+	}
+
+	/**
+	 * Get the listener receiving the metrics of each conversion
+	 *
+	 * @return
+	 * The listener, or null if the metrics are not reported
+	 */
+	public ConversionListener getConversionListener() {
+		return this.conversionListener;
+	}
+
+	/**
+	 * Limit the documents accepted, see ConversionLimits.  A document exceeding a limit fails with a ConversionLimitException
+	 * as soon as the limit is reached.  The parallel and feeder conversions check the limits on each piece of the document,
+	 * and add the output of every piece to one running total, so the output limit applies to the whole document just like
+	 * convert() does.  The resumable record conversion keeps a running total of the records converted by the call.  Like the
+	 * XMLInputFactory, the limits must be set before the converter is shared across threads.  The entity expansion limit is set on the converter's own copy of
+	 * the XMLInputFactory, holding its standard properties, so the factory given to the constructor is left as it is
+	 *
+	 * @param limits
+	 * Limits on the documents accepted, or null for no limits
+	 */
+	public void setLimits(ConversionLimits limits) {
+		this.limits = limits;
+		this.readerFactory = this.xmlInputFactory;
+
+		if ((limits != null) && (limits.getMaxEntityExpansions() > 0)) {
+			try {
+				XMLInputFactory factory = copyFactory(this.xmlInputFactory);
+				factory.setProperty(ENTITY_EXPANSION_LIMIT, String.valueOf(limits.getMaxEntityExpansions()));
+				this.readerFactory = factory;
+
+			} catch (IllegalArgumentException e) {
+				// Not the JDK parser, its own limit applies
+			}
+		}
+	}
+
+	/**
+	 * Create a factory of the same class as an XMLInputFactory, with the same standard properties
+	 *
+	 * @throws IllegalArgumentException
+	 * The factory can't be created
+	 */
+	private static XMLInputFactory copyFactory(XMLInputFactory xmlInputFactory) {
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+
+		// The class of the JDK parser can't be instantiated directly
+		if (factory.getClass() != xmlInputFactory.getClass()) {
+			try {
+				factory = xmlInputFactory.getClass().getConstructor().newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		for (String property : FACTORY_PROPERTIES) {
+			try {
+				Object value = xmlInputFactory.getProperty(property);
+				if (value != null) factory.setProperty(property, value);
+			} catch (IllegalArgumentException e) {
+				// Not supported by this parser
+			}
+		}
+
+		if (xmlInputFactory.getEventAllocator() != null) factory.setEventAllocator(xmlInputFactory.getEventAllocator());
+
+		return factory;
+	}
+
+	/**
+	 * Get the limits on the documents accepted
+	 *
+	 * @return
+	 * Limits on the documents accepted, or null if there are no limits
+	 */
+	public ConversionLimits getLimits() {
+		return this.limits;
+	}
+
+	/**
+	 * Write the large data strings to a sidecar instead of the JSON, see TextSidecar.  A data string reaching the threshold is
+	 * written to the sidecar while the XML stream is read, and the reference returned by the sidecar is written into the JSON
+	 * in its place.  Like the XMLInputFactory, the sidecar must be set before the converter is shared across threads
+	 *
+	 * @param textSidecar
+	 * Where the large data strings go, or null to write every data string into the JSON
+	 *
+	 * @param threshold
+	 * Length from which a data string goes to the sidecar, in characters
+	 *
+	 * @throws IllegalArgumentException
+	 * The threshold is not greater than 0
+	 */
+	public void setTextSidecar(TextSidecar textSidecar, int threshold) {
+		// Error checking
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("Input parameter \"Threshold\" must be greater than 0");
+		}
+
+		this.textSidecar = textSidecar;
+		this.textSidecarThreshold = threshold;
+	}
+
+	/**
+	 * Get the sidecar where the large data strings go
+	 *
+	 * @return
+	 * The sidecar, or null if every data string is written into the JSON
+	 */
+	public TextSidecar getTextSidecar() {
+		return this.textSidecar;
+	}
+
+	/**
+	 * Get the length from which a data string goes to the sidecar
+	 */
+	int getTextSidecarThreshold() {
+		return this.textSidecarThreshold;
+	}
+
+	/**
+	 * Choose how the namespace of an element or attribute name shows in its key, see NamespacePolicy.  Like the
+	 * XMLInputFactory, the policy must be set before the converter is shared across threads
+	 *
+	 * @param namespacePolicy
+	 * The namespace policy, or null for the "{uri}local" keys
+	 */
+	public void setNamespacePolicy(NamespacePolicy namespacePolicy) {
+		this.namespacePolicy = namespacePolicy;
+	}
+
+	/**
+	 * Get how the namespace of a name shows in its key
+	 *
+	 * @return
+	 * The namespace policy, or null for the "{uri}local" keys
+	 */
+	public NamespacePolicy getNamespacePolicy() {
+		return this.namespacePolicy;
+	}
+
+	/**
+	 * Write the data strings and attribute values as JSON literals when they are one: a number following the JSON grammar
+	 * (i.e. "-12", "0.5" or "1e3") as a number, "true" and "false" as a boolean, and an empty value or empty element as
+	 * null.  Any other value stays a string, and so do values such as "007" or "+1" which aren't JSON numbers.  The JSON text
+	 * keeps the digits of a number as they are, but the CBOR output writes a number with a fraction or an exponent, or an
+	 * integer beyond 64 bits, as a double: "1.10" reads back as 1.1, "1e3" as 1000.0, and a larger integer loses its low
+	 * digits.  Each value is scanned once as it is written.  Number and boolean shape hints still apply, and a text hint
+	 * keeps an element a string
+	 *
+	 * @param typedValues
+	 * True to type the values, false to write every value as a string unless a shape hint says otherwise
+	 */
+	public void setTypedValues(boolean typedValues) {
+		this.typedValues = typedValues;
+	}
+
+	/**
+	 * Check if the values which are numbers, booleans or empty are written as such
+	 */
+	public boolean getTypedValues() {
+		return this.typedValues;
+	}
+
+	/**
+	 * Learn a conversion plan for each document type, the type being the key of the root element.  After the first documents
+	 * of a type, the plan tells the streaming conversion which element keys are arrays, so their first item is neither
+	 * buffered nor shifted, and tells convert() how large the JSON string usually is, so its buffer is sized once.  A plan
+	 * never changes the JSON: a document which doesn't follow it is converted as without a plan, and corrects it.  Like the
+	 * XMLInputFactory, the learning must be set before the converter is shared across threads; setting it again starts over
+	 *
+	 * @param documents
+	 * Number of documents of a type the plan learns from, or 0 to convert without plans
+	 *
+	 * @throws IllegalArgumentException
+	 * The number of documents is negative
+	 */
+	public void setPlanLearning(int documents) {
+		// Error checking
+		if (documents < 0) {
+			throw new IllegalArgumentException("Input parameter \"Documents\" can't be negative");
+		}
+
+		this.plans = (documents == 0) ? null : new ConversionPlans(documents);
+	}
+
+	/**
+	 * Get the number of documents of a type the conversion plans learn from
+	 *
+	 * @return
+	 * The number of documents, or 0 if the documents are converted without plans
+	 */
+	public int getPlanLearning() {
+		return (this.plans == null) ? 0 : this.plans.getLearningDocuments();
+	}
+
+	/**
+	 * Bound the memory used by the streaming conversion.  The first item of a run of same named siblings is buffered until
+	 * the next sibling tells whether the run is an array, and that item can be most of the document.  A buffer growing beyond
+	 * the budget is spilled to a temporary file, and the file is copied to the writer when the item is written out, then
+	 * deleted.  The JSON is the same with or without a budget.  The tree conversion, which holds the whole document anyway, is
+	 * not affected
+	 *
+	 * @param budget
+	 * Number of characters from which a buffer is spilled, or 0 to keep every buffer in memory
+	 *
+	 * @param directory
+	 * Where the temporary files go, or null for the default temporary directory
+	 *
+	 * @throws IllegalArgumentException
+	 * The budget is negative
+	 */
+	public void setSpillBudget(int budget, File directory) {
+		// Error checking
+		if (budget < 0) {
+			throw new IllegalArgumentException("Input parameter \"Budget\" can't be negative");
+		}
+
+		this.spillBudget = budget;
+		this.spillDirectory = directory;
+	}
+
+	/**
+	 * Get the number of characters from which a buffer of the streaming conversion is spilled to a file
+	 *
+	 * @return
+	 * The number of characters, or 0 if every buffer is kept in memory
+	 */
+	public int getSpillBudget() {
+		return this.spillBudget;
+	}
+
+	/**
+	 * Convert the XML input stream into JSON string.  The input stream is read to the end of the document but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML input stream
+	 *
+	 * @throws Exception
+	 */
+	public String convert(InputStream xmlInputStream) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+
+		ConversionState state = acquireState();
+
+		try {
+			return convertTree(xmlInputStream, state);
+
+		} finally {
+			releaseTreeState(state);
+		}
+	}
+
+	/**
+	 * Convert the XML input stream and write the JSON string to the writer while the stream is being read, the same way
+	 * XmlToJsonOutputString.parse(Writer) does.  The JSON is the same as convert(InputStream) returns, except that a document
+	 * where an element repeats after a different sibling fails, see XmlToJsonOutputString.parse(Writer).  The input stream is
+	 * not closed; the writer is flushed but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param writer
+	 * The writer where the JSON string is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(InputStream xmlInputStream, Writer writer) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (writer == null) {
+			throw new NullPointerException("Input parameter \"Writer\" can't be null");
+		}
+
+		ConversionState state = acquireState();
+
+		try {
+			long start = System.nanoTime();
+			state.emitter.reset(writer);
+			read(xmlInputStream, state.emitter, state, this.projection, null);
+
+			reportStream(state, start);
+
+		} finally {
+			state.emitter.reset(null);
+			releaseState(state);
+		}
+	}
+
+	/**
+	 * Convert the XML input stream and write the JSON string to the output stream in UTF-8 while the stream is being read.
+	 * The JSON output is encoded straight into a byte buffer reused by the conversions of the thread, without going through
+	 * a String or a charset encoder.  Like convert(InputStream, Writer), a document where an element repeats after a different
+	 * sibling fails.  The input stream is not closed; the output stream is flushed but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param outputStream
+	 * The output stream where the JSON string is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(InputStream xmlInputStream, OutputStream outputStream) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (outputStream == null) {
+			throw new NullPointerException("Input parameter \"Output Stream\" can't be null");
+		}
+
+		ConversionState state = acquireState();
+
+		try {
+			long start = System.nanoTime();
+			state.utf8Writer.reset(outputStream);
+			state.emitter.reset(state.utf8Writer);
+			read(xmlInputStream, state.emitter, state, this.projection, null);
+
+			reportStream(state, start);
+
+		} finally {
+			state.emitter.reset(null);
+			state.utf8Writer.reset(null);
+			releaseState(state);
+		}
+	}
+
+	/**
+	 * Convert the XML input stream into CBOR (RFC 7049), the binary encoding of the same JSON value convert(InputStream)
+	 * returns.  Keys and strings are length prefixed UTF-8, and the numbers and booleans of the shape hints are binary.  The
+	 * input stream is not closed; the output stream is flushed but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param outputStream
+	 * The output stream where the CBOR data item is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convertToCbor(InputStream xmlInputStream, OutputStream outputStream) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (outputStream == null) {
+			throw new NullPointerException("Input parameter \"Output Stream\" can't be null");
+		}
+
+		ConversionState state = acquireState();
+
+		try {
+			long start = System.nanoTime();
+			read(xmlInputStream, state.treeBuilder, state, this.projection, null);
+
+			long parsed = System.nanoTime();
+			state.cborSink.reset(outputStream);
+			state.treeBuilder.writeJson(state.cborSink);
+			state.cborSink.flush();
+
+			report(state, start, parsed, System.nanoTime(), state.treeBuilder.getArrayPromotions(), 0, 0);
+
+		} finally {
+			state.cborSink.reset(null);
+			releaseTreeState(state);
+		}
+	}
+
+	/**
+	 * Convert the XML file into JSON string.  The file is read through a memory mapped FileChannel
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML file
+	 *
+	 * @throws Exception
+	 */
+	public String convert(File xmlFile) throws Exception {
+		InputStream xmlInputStream = openFile(xmlFile);
+
+		try {
+			return convert(xmlInputStream);
+
+		} finally {
+			xmlInputStream.close();
+		}
+	}
+
+	/**
+	 * Convert the XML file and write the JSON string to the writer while the file is being read.  The file is read through
+	 * a memory mapped FileChannel; the writer is flushed but not closed
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @param writer
+	 * The writer where the JSON string is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(File xmlFile, Writer writer) throws Exception {
+		InputStream xmlInputStream = openFile(xmlFile);
+
+		try {
+			convert(xmlInputStream, writer);
+
+		} finally {
+			xmlInputStream.close();
+		}
+	}
+
+	/**
+	 * Convert the XML file and write the JSON string to the output stream in UTF-8 while the file is being read.  The file is
+	 * read through a memory mapped FileChannel; the output stream is flushed but not closed
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @param outputStream
+	 * The output stream where the JSON string is written to
+	 *
+	 * @throws Exception
+	 */
+	public void convert(File xmlFile, OutputStream outputStream) throws Exception {
+		InputStream xmlInputStream = openFile(xmlFile);
+
+		try {
+			convert(xmlInputStream, outputStream);
+
+		} finally {
+			xmlInputStream.close();
+		}
+	}
+
+	/**
+	 * Convert each document of an XML input stream holding many documents back to back, i.e. a message log, into its own JSON
+	 * string and hand it to the document handler as soon as the end of its root element is read.  Each document is converted
+	 * the same way as convert(InputStream) does, and may start with its own XML declaration; the whitespace, comments and
+	 * processing instructions between documents are skipped.  The stream is read once, through one buffer, and the parser
+	 * state of the thread is reused from one document to the next.  The documents must be in an ASCII compatible encoding
+	 * (not UTF-16).  The input stream is not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream of XML documents
+	 *
+	 * @param documentHandler
+	 * Receives the converted documents in stream order
+	 *
+	 * @throws Exception
+	 */
+	public void convertDocuments(InputStream xmlInputStream, JsonDocumentHandler documentHandler) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (documentHandler == null) {
+			throw new NullPointerException("Input parameter \"Document Handler\" can't be null");
+		}
+
+		DocumentStream documents = new DocumentStream(xmlInputStream);
+		ConversionState state = acquireState();
+
+		try {
+			while (documents.nextDocument()) {
+				String json = convertTree(documents, state);
+				clearTreeState(state);
+
+				documentHandler.document(json);
+			}
+
+		} finally {
+			releaseTreeState(state);
+		}
+	}
+
+	/**
+	 * Convert each document of an XML input stream holding many documents back to back into one line of JSON (JSON Lines),
+	 * see convertDocuments(InputStream, JsonDocumentHandler).  The writer is flushed but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream of XML documents
+	 *
+	 * @param writer
+	 * The writer where each document is written to, followed by a line feed
+	 *
+	 * @throws Exception
+	 */
+	public void convertDocuments(InputStream xmlInputStream, final Writer writer) throws Exception {
+		// Error checking
+		if (writer == null) {
+			throw new NullPointerException("Input parameter \"Writer\" can't be null");
+		}
+
+		convertDocuments(xmlInputStream, new JsonDocumentHandler() {
+			public void document(String json) throws Exception {
+				writer.write(json);
+				writer.write('\n');
+			}
+		});
+
+		writer.flush();
+	}
+
+	/**
+	 * Convert each record of the XML input stream into its own JSON string and hand it to the record handler as soon as the
+	 * end element of the record is read.  Each record is converted the same way as if the record element was a document on
+	 * its own i.e. {"record":{...}}.  Elements outside of the records are skipped, and the state of each record is dropped
+	 * once it is handed out, so the memory used doesn't grow with the size of the document.  The input stream is not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, i.e. "export/record", made of local element names.  If null, each
+	 * child element of the root is a record
+	 *
+	 * @param recordHandler
+	 * Receives the converted records in document order
+	 *
+	 * @throws Exception
+	 */
+	public void convertRecords(InputStream xmlInputStream, String recordPath, JsonRecordHandler recordHandler) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+		if (recordHandler == null) {
+			throw new NullPointerException("Input parameter \"Record Handler\" can't be null");
+		}
+
+		ConversionState state = acquireState();
+
+		try {
+			long start = System.nanoTime();
+			state.recordEmitter.reset(new RecordPath(recordPath), recordHandler);
+			read(xmlInputStream, state.recordEmitter, state, this.projection, null);
+
+			// The records are written while the XML stream is read
+			long end = System.nanoTime();
+			report(state, start, end, end, state.recordEmitter.getArrayPromotions(), 0, state.recordEmitter.getPeakRecordChars());
+
+		} finally {
+			state.recordEmitter.reset(null, null);
+			releaseState(state);
+		}
+	}
+
+	/**
+	 * Convert each record of the XML input stream into one line of JSON (JSON Lines), see
+	 * convertRecords(InputStream, String, JsonRecordHandler).  The writer is flushed but not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, or null for each child element of the root
+	 *
+	 * @param writer
+	 * The writer where each record is written to, followed by a line feed
+	 *
+	 * @throws Exception
+	 */
+	public void convertRecords(InputStream xmlInputStream, String recordPath, final Writer writer) throws Exception {
+		// Error checking
+		if (writer == null) {
+			throw new NullPointerException("Input parameter \"Writer\" can't be null");
+		}
+
+		convertRecords(xmlInputStream, recordPath, new JsonRecordHandler() {
+			public void record(String json) throws Exception {
+				writer.write(json);
+				writer.write('\n');
+			}
+		});
+
+		writer.flush();
+	}
+
+	/**
+	 * Convert each record of a large XML file into its own JSON string, taking checkpoints the conversion can resume from
+	 * after a failure.  The records are handed to the record handler in document order, one batch of records at a time,
+	 * and a checkpoint is handed to the listener after each batch.  Resuming from a checkpoint seeks to its offset and
+	 * carries on with the next record, so the records handed out are the same as those of a conversion that never failed.
+	 *
+	 * The file is split at the record elements the way convertParallel() does, so only files it can split are supported
+	 * (not UTF-16, no internal DTD subset), the record path must be below the root element, and no projection can be set
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, i.e. "export/record", or null for each child element of the root.
+	 * When resuming, it must be the record path of the conversion that took the checkpoint
+	 *
+	 * @param recordHandler
+	 * Receives the converted records in document order
+	 *
+	 * @param resumeFrom
+	 * Checkpoint of an earlier conversion of the same file to resume from, or null to start at the beginning
+	 *
+	 * @param checkpointListener
+	 * Receives the checkpoints, each one after the records it follows were handed to the record handler
+	 *
+	 * @throws Exception
+	 */
+	public void convertRecords(File xmlFile, String recordPath, final JsonRecordHandler recordHandler, ConversionCheckpoint resumeFrom,
+			CheckpointListener checkpointListener) throws Exception {
+		// Error checking
+		if (recordHandler == null) {
+			throw new NullPointerException("Input parameter \"Record Handler\" can't be null");
+		}
+		if (checkpointListener == null) {
+			throw new NullPointerException("Input parameter \"Checkpoint Listener\" can't be null");
+		}
+
+		RecordPath path = new RecordPath(recordPath);
+
+		if (path.depth() < 2) {
+			throw new IllegalArgumentException("Input parameter \"Record Path\" must be below the root element");
+		}
+		if ((resumeFrom != null) && (resumeFrom.getParentNames().length != path.depth() - 1)) {
+			throw new IllegalArgumentException("Input parameter \"Resume From\" doesn't match the record path");
+		}
+		if (this.projection != null) {
+			throw new IllegalStateException("Records can't be converted with checkpoints while a projection is set");
+		}
+
+		// Only the records are converted, the skeleton is dropped as it grows
+		final RecordSplitter.Bytes skeleton = new RecordSplitter.Bytes();
+		final AtomicLong totalOutput = new AtomicLong();
+
+		RecordSplitter splitter = new RecordSplitter(path, CHECKPOINT_BATCH_SIZE, skeleton, new RecordSplitter.BatchHandler() {
+			public void batch(byte[] xml, int length, String[] parentNames) throws Exception {
+				skeleton.clear();
+
+				for (String json : convertBatch(xml, length, parentNames, true, totalOutput)) {
+					recordHandler.record(json);
+				}
+			}
+		});
+
+		InputStream xmlInputStream = openFile(xmlFile);
+
+		try {
+			boolean supported = true;
+
+			if (resumeFrom != null) {
+				if (xmlInputStream.skip(resumeFrom.getOffset()) != resumeFrom.getOffset()) {
+					throw new Exception("Encounter error when parsing the XML: the file ends before the checkpoint");
+				}
+
+				supported = splitter.resume(resumeFrom);
+			}
+
+			byte[] buffer = new byte[64 * 1024];
+			long checkpointOffset = splitter.getBatchEndOffset();
+			boolean more = supported;
+
+			while (more) {
+				int count = xmlInputStream.read(buffer, 0, buffer.length);
+
+				if (count > 0) {
+					supported = splitter.feed(buffer, 0, count);
+					more = supported;
+				}
+				else {
+					splitter.finish();
+					more = false;
+				}
+
+				// The records of the batches handed out so far are with the record handler, move the checkpoint after them
+				if (splitter.getBatchEndOffset() > checkpointOffset) {
+					checkpointOffset = splitter.getBatchEndOffset();
+					checkpointListener.checkpoint(splitter.getCheckpoint());
+				}
+			}
+
+			if (! supported) {
+				throw new Exception("Encounter error when parsing the XML: the file can't be split at its records, its encoding or its internal DTD subset isn't supported");
+			}
+
+		} finally {
+			xmlInputStream.close();
+		}
+	}
+
+	/**
+	 * Iterate over the records of the XML input stream, see convertRecords(InputStream, String, JsonRecordHandler).  The
+	 * XML stream is only read as far as needed for the next record.  Errors while reading the XML stream are thrown as
+	 * IllegalStateException by the iterator.  The input stream is not closed
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, or null for each child element of the root
+	 *
+	 * @return
+	 * Iterator over the JSON string of each record, in document order
+	 *
+	 * @throws Exception
+	 */
+	public Iterator<String> records(InputStream xmlInputStream, String recordPath) throws Exception {
+		// Error checking
+		if (xmlInputStream == null) {
+			throw new NullPointerException("Input parameter \"Input Stream\" can't be null");
+		}
+
+		try {
+			return new RecordIterator(this.readerFactory.createXMLStreamReader(xmlInputStream), new RecordPath(recordPath), this);
+
+		} catch (XMLStreamException e) {
+			throw parseError(e);
+		}
+	}
+
+	/**
+	 * Convert a large XML file in parallel, using one thread per available processor.  See
+	 * convertParallel(File, String, ExecutorService)
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, i.e. "export/record", or null for each child element of the root
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML file
+	 *
+	 * @throws Exception
+	 */
+	public String convertParallel(File xmlFile, String recordPath) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+		try {
+			return convertParallel(xmlFile, recordPath, executor);
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Convert a large XML file in parallel.  The file is split at the boundaries of the record elements found at the record
+	 * path, the batches of records are converted on the executor, and the records are put back in document order.  The JSON
+	 * string is the same that convert(File) returns.
+	 *
+	 * The record path is made of the local names of the elements from the root to the record element, separated by "/".  Files
+	 * which can't be split (UTF-16 encoding, or an internal DTD subset declaring entities), and files converted with a
+	 * projection, are converted sequentially
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, i.e. "export/record", or null for each child element of the root
+	 *
+	 * @param executor
+	 * The executor converting the batches of records
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML file
+	 *
+	 * @throws Exception
+	 */
+	public String convertParallel(File xmlFile, String recordPath, final ExecutorService executor) throws Exception {
+		// Error checking
+		if (executor == null) {
+			throw new NullPointerException("Input parameter \"Executor\" can't be null");
+		}
+
+		RecordPath path = new RecordPath(recordPath);
+
+		// The root element can't be split.  A projection skips most of the document at the reader level, which leaves little
+		// work to spread across threads
+		if ((path.depth() < 2) || (this.projection != null)) return convert(xmlFile);
+
+		final ArrayList<Future<String[]>> batches = new ArrayList<Future<String[]>>();
+		RecordSplitter.Bytes skeleton = new RecordSplitter.Bytes();
+		boolean split = false;
+
+		// Output of the skeleton and all the batches, checked against the output limit
+		final AtomicLong totalOutput = new AtomicLong();
+
+		InputStream xmlInputStream = openFile(xmlFile);
+
+		try {
+			split = new RecordSplitter(path, PARALLEL_BATCH_SIZE, skeleton, new RecordSplitter.BatchHandler() {
+				public void batch(final byte[] xml, final int length, final String[] parentNames) throws Exception {
+					batches.add(executor.submit(new Callable<String[]>() {
+						public String[] call() throws Exception {
+							return convertBatch(xml, length, parentNames, false, totalOutput);
+						}
+					}));
+
+					// Don't read too far ahead of the conversion, the batches waiting in the executor queue take memory
+					if (batches.size() > PARALLEL_READ_AHEAD) {
+						getValue(batches.get(batches.size() - PARALLEL_READ_AHEAD - 1));
+					}
+				}
+			}).split(xmlInputStream);
+
+		} finally {
+			xmlInputStream.close();
+
+			if (! split) {
+				for (Future<String[]> batch : batches) batch.cancel(true);
+			}
+		}
+
+		if (! split) return convert(xmlFile);
+
+		return convertSkeleton(skeleton, path, batches, totalOutput);
+	}
+
+	/**
+	 * Create a feeder converting an XML document that arrives in pieces, i.e. from a non-blocking socket.  Each child
+	 * element of the root is converted as soon as it is complete.  See XmlToJsonFeeder
+	 *
+	 * @return
+	 * A feeder for one XML document
+	 */
+	public XmlToJsonFeeder newFeeder() {
+		return newFeeder(null);
+	}
+
+	/**
+	 * Create a feeder converting an XML document that arrives in pieces, i.e. from a non-blocking socket.  Each record
+	 * element is converted as soon as it is complete.  See XmlToJsonFeeder
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root, i.e. "export/record", or null for each child element of the root
+	 *
+	 * @return
+	 * A feeder for one XML document
+	 *
+	 * @throws IllegalArgumentException
+	 * The record path is the root element
+	 */
+	public XmlToJsonFeeder newFeeder(String recordPath) {
+		RecordPath path = new RecordPath(recordPath);
+
+		// Error checking
+		if (path.depth() < 2) {
+			throw new IllegalArgumentException("Input parameter \"Record Path\" must be below the root element");
+		}
+
+		return new XmlToJsonFeeder(this, path);
+	}
+
+	/**
+	 * Convert the skeleton document of a split XML document, and replace each record placeholder with the converted record
+	 *
+	 * @param skeleton
+	 * The skeleton document written by RecordSplitter
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 *
+	 * @param batches
+	 * The converted batches of records, in document order
+	 *
+	 * @param totalOutput
+	 * Output characters of the batches, the skeleton's are added to it
+	 *
+	 * @return
+	 * The JSON string corresponding to the whole XML document
+	 *
+	 * @throws Exception
+	 */
+	String convertSkeleton(RecordSplitter.Bytes skeleton, RecordPath recordPath, List<Future<String[]>> batches,
+			AtomicLong totalOutput) throws Exception {
+		ConversionState state = acquireState();
+
+		try {
+			SkeletonBuilder builder = new SkeletonBuilder(state.treeBuilder, recordPath);
+			read(new ByteArrayInputStream(skeleton.data, 0, skeleton.length), builder, state, null, null, totalOutput, 0);
+
+			ArrayList<JsonElement> records = builder.getPlaceholders();
+
+			int index = 0;
+			for (Future<String[]> batch : batches) {
+				for (String json : getValue(batch)) {
+					if (index >= records.size()) {
+						throw new Exception("Encounter error when parsing the XML: the records don't match the skeleton document");
+					}
+					records.get(index++).setJson(json);
+				}
+			}
+
+			if (index != records.size()) {
+				throw new Exception("Encounter error when parsing the XML: the records don't match the skeleton document");
+			}
+
+			state.treeBuilder.writeJson(state.textSink());
+			return state.output.toString();
+
+		} finally {
+			for (Future<String[]> batch : batches) batch.cancel(true);
+			releaseTreeState(state);
+		}
+	}
+
+	/**
+	 * Convert one batch of records handed out by RecordSplitter
+	 *
+	 * @param xml
+	 * The batch document, the records wrapped into one batch element
+	 *
+	 * @param length
+	 * Number of bytes used in the array
+	 *
+	 * @param parentNames
+	 * Names of the elements from the root to the parent of the records
+	 *
+	 * @param keyed
+	 * True to write each record as {"record":value} like convertRecords() does, false to write only its value
+	 *
+	 * @param totalOutput
+	 * Output characters of all the batches of the document, the batch's are added to it.  The keys of the records are only
+	 * counted when they are written, otherwise the skeleton counts them
+	 *
+	 * @return
+	 * The JSON of each record, in document order
+	 *
+	 * @throws Exception
+	 */
+	String[] convertBatch(byte[] xml, int length, String[] parentNames, boolean keyed, AtomicLong totalOutput) throws Exception {
+		ConversionState state = acquireState();
+
+		try {
+			read(new ByteArrayInputStream(xml, 0, length), state.treeBuilder, state, null, parentNames, totalOutput, keyed ? 1 : 2);
+
+			JsonElement root = state.treeBuilder.getRoot();
+			if (root.getChildKeyCount() != 1) {
+				throw new Exception("Encounter error when parsing the XML: the records at the record path must have the same element name");
+			}
+
+			String[] jsons = new String[root.getChildCount(0)];
+			JsonElement record = root.getFirstChild(0);
+
+			for (int i = 0; i < jsons.length; i++) {
+				state.output.setLength(0);
+				JsonSink sink = state.textSink();
+
+				if (keyed) {
+					sink.startObject(1);
+					sink.key(root.getChildKey(0));
+					record.writeTo(sink);
+					sink.endObject();
+				}
+				else {
+					record.writeTo(sink);
+				}
+
+				jsons[i] = state.output.toString();
+				record = record.getNext();
+			}
+
+			return jsons;
+
+		} finally {
+			releaseTreeState(state);
+		}
+	}
+
+	/**
+	 * Wait for a future, i.e. a converted batch of records, and get its value.  The error of a failed task is thrown as is
+	 */
+	static <T> T getValue(Future<T> future) throws Exception {
+		try {
+			return future.get();
+
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a file for reading through a memory mapped FileChannel
+	 *
+	 * @param xmlFile
+	 * The file where the XML is located
+	 *
+	 * @throws Exception
+	 * FileNotFoundExctpion or IOException is thrown when the input file can't be read correctly
+	 */
+	private InputStream openFile(File xmlFile) throws Exception {
+		// Error checking
+		if (xmlFile == null) {
+			throw new NullPointerException("Input parameter \"File\" can't be null");
+		}
+
+		// Check if file exists
+		if (!xmlFile.exists() || !xmlFile.isFile()) {
+			throw new FileNotFoundException("File '" + xmlFile.getPath() + "' is not found");
+		}
+
+		// Check if file readable
+		if (!xmlFile.canRead()) {
+			throw new IOException("File '" + xmlFile.getPath() + "' is not readable");
+		}
+
+		return new MappedFileInputStream(xmlFile);
+	}
+
+	/**
+	 * Convert the XML input stream into JSON string through the tree of the parser state
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param state
+	 * Parser state of the current thread, whose tree and output are empty
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML input stream
+	 *
+	 * @throws Exception
+	 */
+	private String convertTree(InputStream xmlInputStream, ConversionState state) throws Exception {
+		long start = System.nanoTime();
+		read(xmlInputStream, state.treeBuilder, state, this.projection, null);
+
+		long parsed = System.nanoTime();
+		ConversionPlan plan = (this.plans == null) ? null : this.plans.find(state.treeBuilder.getRootName());
+
+		// Size the output once from the plan, instead of growing it while the JSON is written
+		if ((plan != null) && (plan.getOutputEstimate() > state.output.capacity())) {
+			state.output.ensureCapacity(plan.getOutputEstimate());
+		}
+
+		state.treeBuilder.writeJson(state.textSink());
+		if (plan != null) plan.learnOutput(state.output.length());
+
+		report(state, start, parsed, System.nanoTime(), state.treeBuilder.getArrayPromotions(), 0, state.output.length());
+		return state.output.toString();
+	}
+
+	/**
+	 * Read the XML input stream through the cursor reader and pass each event to the content handler.  When a listener is
+	 * set, the bytes read are counted for the metrics of the conversion
+	 *
+	 * @param xmlInputStream
+	 * Input stream in XML format
+	 *
+	 * @param handler
+	 * The content handler turning the XML events into JSON
+	 *
+	 * @param state
+	 * Parser state of the current thread
+	 *
+	 * @param projection
+	 * The selected parts of the document, or null to read the whole document
+	 *
+	 * @param parentNames
+	 * Names of the elements from the root to the parent of the records when the document is a batch of records, or null for
+	 * a whole document.  The shape hints are applied to the records from there
+	 *
+	 * @throws Exception
+	 */
+	private void read(InputStream xmlInputStream, XmlContentHandler handler, ConversionState state, XmlProjection projection,
+			String[] parentNames) throws Exception {
+		// Count the bytes read for the metrics
+		if (this.conversionListener != null) {
+			state.countingStream.reset(xmlInputStream);
+			xmlInputStream = state.countingStream;
+		}
+
+		read(xmlInputStream, handler, state, projection, parentNames, null, 0);
+	}
+
+	/**
+	 * Read a piece of a split XML document through the cursor reader and pass each event to the content handler, see
+	 * read(InputStream, XmlContentHandler, ConversionState, XmlProjection, String[]).  The conversions made of pieces are
+	 * not reported, so the bytes are not counted
+	 *
+	 * @param totalOutput
+	 * Output characters of all the pieces of the document, the piece's are added to it and checked against the output
+	 * limit.  Null for a whole document
+	 *
+	 * @param uncountedDepth
+	 * Number of outer elements whose keys are not counted against the output limit
+	 *
+	 * @throws Exception
+	 */
+	private void read(InputStream xmlInputStream, XmlContentHandler handler, ConversionState state, XmlProjection projection,
+			String[] parentNames, AtomicLong totalOutput, int uncountedDepth) throws Exception {
+		XMLStreamReader xmlStreamReader = null;
+
+		try {
+			xmlStreamReader = this.readerFactory.createXMLStreamReader(xmlInputStream);
+			state.cursorReader.setProjection(projection);
+			state.cursorReader.setShapeHints(this.shapeHints, parentNames);
+			state.cursorReader.setLimits(this.limits, (parentNames == null) ? 0 : parentNames.length - 1, totalOutput,
+					uncountedDepth);
+			state.cursorReader.setNamespacePolicy(this.namespacePolicy);
+			state.cursorReader.setTypedValues(this.typedValues);
+
+			if (! state.cursorReader.read(xmlStreamReader, handler)) {
+				throw new Exception("Encounter error when parsing the XML: the end of the document was not reached");
+			}
+
+		} catch (XMLStreamException e) {
+			throw parseError(e);
+
+		} finally {
+			if (xmlStreamReader != null) xmlStreamReader.close();
+		}
+	}
+
+	/**
+	 * Turn an error of the XML parser into the error of the conversion.  The entity expansion limit is enforced by the parser,
+	 * its error is turned into a ConversionLimitException like the other limits
+	 */
+	Exception parseError(XMLStreamException e) {
+		String message = e.getMessage();
+
+		if ((this.limits != null) && (this.limits.getMaxEntityExpansions() > 0) && (message != null)
+				&& message.contains(ENTITY_EXPANSION_ERROR)) {
+			return new ConversionLimitException("max entity expansions", this.limits.getMaxEntityExpansions(), e);
+		}
+
+		return new Exception("Encounter error when parsing the XML: " + message, e);
+	}
+
+	/**
+	 * Hand the metrics of a conversion to the listener, if any
+	 *
+	 * @param state
+	 * Parser state of the conversion, holding the counters of the reader
+	 *
+	 * @param start
+	 * When the conversion started, from System.nanoTime()
+	 *
+	 * @param parsed
+	 * When the XML stream was read and writing the JSON started, from System.nanoTime()
+	 *
+	 * @param end
+	 * When the conversion ended, from System.nanoTime().  The same as parsed when the JSON was written while the XML stream
+	 * was read
+	 *
+	 * @param arrayPromotions
+	 * Number of keys which turned into an array
+	 *
+	 * @param shiftedChars
+	 * Number of characters moved to insert the opening bracket of an array
+	 *
+	 * @param peakBufferedChars
+	 * Largest JSON text held in memory before being handed out
+	 */
+	private void report(ConversionState state, long start, long parsed, long end, long arrayPromotions, long shiftedChars,
+			long peakBufferedChars) {
+		if (this.conversionListener == null) return;
+
+		this.conversionListener.converted(new ConversionMetrics(state.countingStream.getCount(), state.cursorReader.getEvents(),
+				state.cursorReader.getMaxDepth(), arrayPromotions, shiftedChars, peakBufferedChars, parsed - start, end - parsed));
+
+		state.countingStream.reset(null);
+	}
+
+	/**
+	 * Hand the metrics of a streaming conversion to the listener, if any.  The JSON is written while the XML stream is read
+	 */
+	private void reportStream(ConversionState state, long start) {
+		long end = System.nanoTime();
+
+		report(state, start, end, end, state.emitter.getArrayPromotions(), state.emitter.getShiftedChars(),
+				state.emitter.getPeakBufferedChars());
+	}
+
+	/**
+	 * Get the parser state of the current thread.  If the state is already in use (i.e. a conversion started from within
+	 * another conversion on the same thread), a new state is used for this conversion only
+	 */
+	private ConversionState acquireState() {
+		ConversionState state = this.conversionState.get();
+
+		if (state.inUse) state = new ConversionState();
+		state.inUse = true;
+
+		state.treeBuilder.setTextSidecar(this.textSidecar, this.textSidecarThreshold);
+		state.emitter.setTextSidecar(this.textSidecar, this.textSidecarThreshold);
+		state.emitter.setPlans(this.plans);
+		state.emitter.setSpill(this.spillBudget, this.spillDirectory);
+		state.recordEmitter.setTextSidecar(this.textSidecar, this.textSidecarThreshold);
+
+		return state;
+	}
+
+	/**
+	 * Hand the parser state back once the conversion is done
+	 */
+	private void releaseState(ConversionState state) {
+		// The input stream of a failed conversion, which wasn't reported
+		state.countingStream.reset(null);
+		state.inUse = false;
+	}
+
+	/**
+	 * Drop the tree and the output of a conversion and hand the parser state back
+	 */
+	private void releaseTreeState(ConversionState state) {
+		clearTreeState(state);
+		releaseState(state);
+	}
+
+	/**
+	 * Drop the tree and the output of a conversion, keeping the parser state for the next one
+	 */
+	private void clearTreeState(ConversionState state) {
+		state.treeBuilder.reset();
+
+		if (state.output.capacity() > MAX_RETAINED_BUFFER) {
+			state.output = new StringBuilder();
+		}
+		state.output.setLength(0);
+	}
+
+	/**
+	 * Parser state reused by all the conversions of one thread
+	 */
+	static class ConversionState {
+
+		boolean inUse;
+
+		XmlCursorReader cursorReader = new XmlCursorReader();
+
+		JsonTreeBuilder treeBuilder = new JsonTreeBuilder();
+		JsonStreamEmitter emitter = new JsonStreamEmitter(null);
+		RecordEmitter recordEmitter = new RecordEmitter();
+
+		// UTF-8 encoder of convert(InputStream, OutputStream)
+		Utf8Writer utf8Writer = new Utf8Writer();
+
+		// Output buffer of convert(InputStream), and the sink writing JSON text into it
+		StringBuilder output = new StringBuilder();
+		JsonTextSink textSink = new JsonTextSink();
+
+		// Binary encoder of convertToCbor()
+		CborSink cborSink = new CborSink();
+
+		// Counts the bytes read when the metrics are reported
+		CountingInputStream countingStream = new CountingInputStream();
+
+		/**
+		 * Get the sink writing JSON text at the end of the output buffer, which may have been replaced since the last conversion
+		 */
+		JsonTextSink textSink() {
+			this.textSink.reset(this.output);
+			return this.textSink;
+		}
+	}
+}
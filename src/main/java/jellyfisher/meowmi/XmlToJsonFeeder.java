@@ -0,0 +1,208 @@
+package jellyfisher.meowmi;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts an XML document that arrives in pieces, i.e. from a non-blocking socket, without a thread waiting for the rest
+ * of the document.  The caller feeds the bytes as they arrive and signals the end of the document; the feeder never reads
+ * or waits by itself.
+ *
+ *     XmlToJsonFeeder feeder = converter.newFeeder("export/record");
+ *     feeder.feed(byteBuffer);     // for each piece received
+ *     String json = feeder.end();  // once the whole document is received
+ *
+ * The work is done while the document arrives: the bytes are split at the record elements as they are fed, and each batch
+ * of complete records is converted on the feeding thread right away.  At the end only the skeleton of the document (the
+ * elements outside of records) is left to convert.  The JSON string is the same that XmlToJsonConverter.convert() returns.
+ * Documents which can't be split (UTF-16 encoding, or an internal DTD subset declaring entities), and documents converted
+ * with a projection, are kept as they arrive and converted at the end.
+ *
+ * The limits of the converter are checked on each batch of records, and the output of the records converted so far is
+ * checked against the output limit, so a document that never ends fails while it arrives.
+ *
+ * A feeder converts one document and is not thread-safe: the pieces of a document must be fed one after the other, which
+ * is what a channel delivers anyway.
+ */
+public class XmlToJsonFeeder {
+
+	// Approximate size of the batches of records converted while the document arrives
+	private static final int FEEDER_BATCH_SIZE = 64 * 1024;
+
+	private XmlToJsonConverter converter;
+	private RecordPath recordPath;
+
+	private RecordSplitter splitter;
+	private RecordSplitter.Bytes skeleton = new RecordSplitter.Bytes();
+	private ArrayList<Future<String[]>> batches = new ArrayList<Future<String[]>>();
+
+	// The bytes fed so far, kept until the root element shows the splitter can handle the document, or all the bytes of a
+	// document the splitter can't handle
+	private RecordSplitter.Bytes unsplit = new RecordSplitter.Bytes();
+	private boolean split;
+
+	// Copy of a direct ByteBuffer, which has no array the splitter can read
+	private byte[] chunk;
+
+	private FutureTask<String> result;
+
+	// Output characters of the records converted so far, and of the skeleton once it is converted
+	private AtomicLong totalOutput = new AtomicLong();
+
+	/**
+	 * Constructor, see XmlToJsonConverter.newFeeder()
+	 *
+	 * @param converter
+	 * The converter doing the conversion
+	 *
+	 * @param recordPath
+	 * Path of the repeated record element from the root
+	 */
+	XmlToJsonFeeder(XmlToJsonConverter converter, RecordPath recordPath) {
+		this.converter = converter;
+		this.recordPath = recordPath;
+
+		// A projection is applied by the reader of the whole document, the document is kept and converted at the end
+		this.split = converter.getProjection() == null;
+
+		this.splitter = new RecordSplitter(recordPath, FEEDER_BATCH_SIZE, this.skeleton, new RecordSplitter.BatchHandler() {
+			public void batch(final byte[] xml, final int length, final String[] parentNames) throws Exception {
+				FutureTask<String[]> batch = new FutureTask<String[]>(new Callable<String[]>() {
+					public String[] call() throws Exception {
+						return XmlToJsonFeeder.this.converter.convertBatch(xml, length, parentNames, false,
+								XmlToJsonFeeder.this.totalOutput);
+					}
+				});
+
+				// Converted on the feeding thread, the error of an invalid record is thrown by feed()
+				batch.run();
+				XmlToJsonConverter.getValue(batch);
+
+				XmlToJsonFeeder.this.batches.add(batch);
+			}
+		});
+
+		this.result = new FutureTask<String>(new Callable<String>() {
+			public String call() throws Exception {
+				return finish();
+			}
+		});
+	}
+
+	/**
+	 * Feed the next piece of the XML document.  All the remaining bytes of the buffer are consumed, and the buffer can be
+	 * reused by the caller once the method returns
+	 *
+	 * @param bytes
+	 * The next bytes of the document, from the position to the limit of the buffer
+	 *
+	 * @throws Exception
+	 * The XML document is not valid
+	 */
+	public void feed(ByteBuffer bytes) throws Exception {
+		// Error checking
+		if (bytes == null) {
+			throw new NullPointerException("Input parameter \"Byte Buffer\" can't be null");
+		}
+
+		if (bytes.hasArray()) {
+			feed(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			bytes.position(bytes.limit());
+			return;
+		}
+
+		if (this.chunk == null) this.chunk = new byte[16 * 1024];
+
+		while (bytes.hasRemaining()) {
+			int count = Math.min(bytes.remaining(), this.chunk.length);
+			bytes.get(this.chunk, 0, count);
+			feed(this.chunk, 0, count);
+		}
+	}
+
+	/**
+	 * Feed the next piece of the XML document.  The bytes are not used by the feeder once the method returns
+	 *
+	 * @param bytes
+	 * The next bytes of the document
+	 *
+	 * @param offset
+	 * Offset of the bytes in the array
+	 *
+	 * @param length
+	 * Number of bytes
+	 *
+	 * @throws Exception
+	 * The XML document is not valid
+	 */
+	public void feed(byte[] bytes, int offset, int length) throws Exception {
+		// Error checking
+		if (bytes == null) {
+			throw new NullPointerException("Input parameter \"Bytes\" can't be null");
+		}
+		if (this.result.isDone()) {
+			throw new IllegalStateException("The end of the XML document was already signaled");
+		}
+
+		if (this.unsplit != null) this.unsplit.append(bytes, offset, length);
+		if (! this.split) return;
+
+		// The splitter can't handle the document, it is converted from the kept bytes at the end
+		if (! this.splitter.feed(bytes, offset, length)) {
+			if (this.unsplit == null) {
+				throw new Exception("Encounter error when parsing the XML: XML declaration or DOCTYPE after the root element");
+			}
+
+			this.split = false;
+			this.batches.clear();
+			return;
+		}
+
+		if (this.splitter.isRootStarted()) this.unsplit = null;
+	}
+
+	/**
+	 * Signal the end of the XML document, convert what's left of it and complete the result
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML document
+	 *
+	 * @throws Exception
+	 * The XML document is not valid
+	 */
+	public String end() throws Exception {
+		if (this.result.isDone()) {
+			throw new IllegalStateException("The end of the XML document was already signaled");
+		}
+
+		this.result.run();
+		return XmlToJsonConverter.getValue(this.result);
+	}
+
+	/**
+	 * Get the result of the conversion, completed by end().  The future can be handed out before the document has arrived
+	 *
+	 * @return
+	 * The JSON string corresponding to the XML document, or the error of an invalid document
+	 */
+	public Future<String> getResult() {
+		return this.result;
+	}
+
+	/**
+	 * Convert what's left of the document once all its bytes are fed
+	 */
+	private String finish() throws Exception {
+		if (! this.split) {
+			return this.converter.convert(new ByteArrayInputStream(this.unsplit.data, 0, this.unsplit.length));
+		}
+
+		this.splitter.finish();
+		return this.converter.convertSkeleton(this.skeleton, this.recordPath, this.batches, this.totalOutput);
+	}
+}
@@ -0,0 +1,210 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * The CBOR output decodes to the same value as the JSON text of XmlToJsonConverter.convert()
+ */
+public class CborConversionTest {
+
+	private static final String NUMBERS = "<a><n>0</n><n>-0</n><n>23</n><n>24</n><n>255</n><n>256</n><n>65536</n><n>-1</n><n>-25</n>"
+			+ "<n>4294967296</n><n>-9223372036854775808</n><n>18446744073709551615</n><n>123456789012345678901234</n><n>0.5</n>"
+			+ "<n>-1.25e-3</n><n>1E3</n><b>true</b><b>false</b><e/><s>007</s><s>é中𝄞</s></a>";
+
+	@Test
+	public void cborDecodesToTheJsonValue() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+
+		for (String xml : SampleDocuments.DOCUMENTS) check(converter, xml);
+		check(converter, SampleDocuments.records(300, 23));
+		check(converter, NUMBERS);
+	}
+
+	@Test
+	public void typedValuesDecodeToTheJsonValue() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setTypedValues(true);
+
+		for (String xml : SampleDocuments.DOCUMENTS) check(converter, xml);
+		check(converter, SampleDocuments.records(300, 29));
+		check(converter, NUMBERS);
+	}
+
+	@Test
+	public void typedNumbersBeyondALongAreDoubles() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setTypedValues(true);
+
+		String xml = "<a><n>9223372036854775807</n><n>123456789012345678901234</n><n>1.10</n><n>1e3</n></a>";
+
+		// The JSON text keeps the digits
+		assertEquals("{\"a\":{\"n\":[9223372036854775807,123456789012345678901234,1.10,1e3]}}",
+				converter.convert(SampleDocuments.stream(xml)));
+
+		ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+		converter.convertToCbor(SampleDocuments.stream(xml), cbor);
+
+		Object value = decode(new DataInputStream(new ByteArrayInputStream(cbor.toByteArray())));
+		Object[] expected = {Long.MAX_VALUE, 1.2345678901234568E23, 1.1, 1000.0};
+
+		assertEquals(Collections.singletonMap("a", Collections.singletonMap("n", Arrays.asList(expected))), value);
+	}
+
+	@Test
+	public void jsonTextValuesAreRejected() throws Exception {
+		// A document whose record is replaced by a value converted elsewhere, as in the skeleton of a split document
+		JsonTreeBuilder builder = new JsonTreeBuilder();
+		builder.startElement("a", 0);
+		builder.currentElement().setJson("{\"b\":1}");
+		builder.endElement();
+		builder.endDocument();
+
+		CborSink sink = new CborSink();
+		sink.reset(new ByteArrayOutputStream());
+
+		try {
+			builder.writeJson(sink);
+			fail("JSON text can't be written as CBOR");
+
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Check that the CBOR of a document decodes to its JSON value, with the same types and the same key order
+	 */
+	private void check(XmlToJsonConverter converter, String xml) throws Exception {
+		Object expected = parseJson(converter.convert(SampleDocuments.stream(xml)));
+
+		ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+		converter.convertToCbor(SampleDocuments.stream(xml), cbor);
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(cbor.toByteArray()));
+		Object actual = decode(input);
+
+		assertEquals(xml, expected, actual);
+		assertEquals(xml, String.valueOf(expected), String.valueOf(actual));
+		assertEquals(xml, -1, input.read());
+	}
+
+	/**
+	 * Decode one CBOR data item of the types CborSink writes
+	 */
+	private static Object decode(DataInputStream input) throws IOException {
+		return decode(input, input.readUnsignedByte());
+	}
+
+	/**
+	 * Decode one CBOR data item starting with its initial byte
+	 */
+	private static Object decode(DataInputStream input, int initial) throws IOException {
+		switch (initial) {
+		case 0xf4:
+			return Boolean.FALSE;
+		case 0xf5:
+			return Boolean.TRUE;
+		case 0xf6:
+			return null;
+		case 0xfb:
+			return input.readDouble();
+		}
+
+		long argument = initial & 0x1f;
+		if (argument == 24) argument = input.readUnsignedByte();
+		else if (argument == 25) argument = input.readUnsignedShort();
+		else if (argument == 26) argument = input.readInt() & 0xffffffffL;
+		else if (argument == 27) argument = input.readLong();
+
+		switch (initial & 0xe0) {
+		case 0x00:
+			return argument;
+
+		case 0x20:
+			return -1 - argument;
+
+		case 0x60:
+			byte[] bytes = new byte[(int) argument];
+			input.readFully(bytes);
+			return new String(bytes, "UTF-8");
+
+		case 0x80:
+			List<Object> array = new ArrayList<Object>();
+			for (long i = 0; i < argument; i++) array.add(decode(input));
+			return array;
+
+		case 0xa0:
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			for (long i = 0; i < argument; i++) map.put((String) decode(input), decode(input));
+			return map;
+
+		default:
+			throw new IOException("Unexpected initial byte " + initial);
+		}
+	}
+
+	/**
+	 * Parse a JSON text into the values decode() returns: integers which fit in a long as Long, other numbers as Double
+	 */
+	private static Object parseJson(String json) throws Exception {
+		JsonReader reader = new JsonReader(new StringReader(json));
+		Object value = parseValue(reader, reader.next());
+
+		assertEquals(JsonReader.END, reader.next());
+		return value;
+	}
+
+	/**
+	 * Parse the value starting with a token
+	 */
+	private static Object parseValue(JsonReader reader, int token) throws Exception {
+		switch (token) {
+		case JsonReader.START_OBJECT:
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			while ((token = reader.next()) != JsonReader.END_OBJECT) {
+				String key = reader.getText();
+				map.put(key, parseValue(reader, reader.next()));
+			}
+			return map;
+
+		case JsonReader.START_ARRAY:
+			List<Object> array = new ArrayList<Object>();
+			while ((token = reader.next()) != JsonReader.END_ARRAY) array.add(parseValue(reader, token));
+			return array;
+
+		case JsonReader.NUMBER:
+			String number = reader.getText();
+			try {
+				return Long.parseLong(number);
+			} catch (NumberFormatException e) {
+				return Double.parseDouble(number);
+			}
+
+		case JsonReader.STRING:
+			return reader.getText();
+		case JsonReader.TRUE:
+			return Boolean.TRUE;
+		case JsonReader.FALSE:
+			return Boolean.FALSE;
+		case JsonReader.NULL:
+			return null;
+		default:
+			throw new IllegalStateException("Unexpected token " + token);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * A record conversion resumed from a checkpoint hands out the remaining records exactly once
+ */
+public class CheckpointTest {
+
+	private static final String RECORD_PATH = "export/items/record";
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void recordsEqualTheStreamingRecords() throws Exception {
+		String xml = SampleDocuments.records(20000, 31);
+		File file = SampleDocuments.file(xml, "UTF-8");
+
+		final List<String> expected = new ArrayList<String>();
+		this.converter.convertRecords(SampleDocuments.stream(xml), RECORD_PATH, new JsonRecordHandler() {
+			public void record(String json) {
+				expected.add(json);
+			}
+		});
+
+		List<ConversionCheckpoint> checkpoints = new ArrayList<ConversionCheckpoint>();
+		assertEquals(expected, convert(file, null, checkpoints, -1));
+
+		// Several batches, the last checkpoint at the end of the records
+		assertTrue(checkpoints.size() > 2);
+		assertEquals(expected.size(), checkpoints.get(checkpoints.size() - 1).getRecordCount());
+	}
+
+	@Test
+	public void resumingHandsOutTheRemainingRecordsOnce() throws Exception {
+		File file = SampleDocuments.file(SampleDocuments.records(20000, 37), "UTF-8");
+		List<String> expected = convert(file, null, new ArrayList<ConversionCheckpoint>(), -1);
+
+		for (int failAt : new int[] {1, 5000, 12345, expected.size() - 1}) {
+			List<ConversionCheckpoint> checkpoints = new ArrayList<ConversionCheckpoint>();
+			List<String> before = convert(file, null, checkpoints, failAt);
+
+			// Without a checkpoint yet, the conversion starts over
+			ConversionCheckpoint checkpoint = checkpoints.isEmpty() ? null : reload(checkpoints.get(checkpoints.size() - 1));
+			int resumedAt = (checkpoint == null) ? 0 : (int) checkpoint.getRecordCount();
+
+			assertTrue(resumedAt <= before.size());
+			assertEquals(expected.subList(0, before.size()), before);
+
+			List<String> after = convert(file, checkpoint, new ArrayList<ConversionCheckpoint>(), -1);
+			assertEquals("Failed at " + failAt, expected.subList(resumedAt, expected.size()), after);
+		}
+	}
+
+	@Test
+	public void checkpointOfAnotherRecordPathIsRejected() throws Exception {
+		File file = SampleDocuments.file(SampleDocuments.records(100, 41), "UTF-8");
+
+		List<ConversionCheckpoint> checkpoints = new ArrayList<ConversionCheckpoint>();
+		convert(file, null, checkpoints, -1);
+
+		try {
+			this.converter.convertRecords(file, "export/record", new JsonRecordHandler() {
+				public void record(String json) {
+				}
+			}, checkpoints.get(0), new CheckpointListener() {
+				public void checkpoint(ConversionCheckpoint checkpoint) {
+				}
+			});
+			fail("The checkpoint has two parent elements");
+
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Convert the records of a file, failing once a number of records were handed out
+	 *
+	 * @param resumeFrom
+	 * The checkpoint to resume from, or null
+	 *
+	 * @param checkpoints
+	 * Receives the checkpoints
+	 *
+	 * @param failAt
+	 * Number of records after which the record handler fails, or -1
+	 *
+	 * @return
+	 * The records handed out
+	 */
+	private List<String> convert(File file, ConversionCheckpoint resumeFrom, final List<ConversionCheckpoint> checkpoints,
+			final int failAt) throws Exception {
+		final List<String> records = new ArrayList<String>();
+
+		try {
+			this.converter.convertRecords(file, RECORD_PATH, new JsonRecordHandler() {
+				public void record(String json) throws Exception {
+					if (records.size() == failAt) throw new Exception("Failure");
+					records.add(json);
+				}
+			}, resumeFrom, new CheckpointListener() {
+				public void checkpoint(ConversionCheckpoint checkpoint) {
+					checkpoints.add(checkpoint);
+				}
+			});
+
+			if (failAt >= 0) fail("The record handler didn't fail");
+
+		} catch (Exception e) {
+			if (! e.getMessage().equals("Failure")) throw e;
+		}
+
+		return records;
+	}
+
+	/**
+	 * Store a checkpoint and load it back, as a conversion resuming in another process would
+	 */
+	private static ConversionCheckpoint reload(ConversionCheckpoint checkpoint) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		checkpoint.store(outputStream);
+
+		return ConversionCheckpoint.load(new ByteArrayInputStream(outputStream.toByteArray()));
+	}
+}
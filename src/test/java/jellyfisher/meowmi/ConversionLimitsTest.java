@@ -0,0 +1,263 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Test;
+
+/**
+ * Each limit fails the document exceeding it in every conversion mode: whole document, streaming, parallel, feeder,
+ * records, record iterator and checkpointed records.  The entity expansion limit applies to the converter only, not to the
+ * XMLInputFactory given to it.  The output limit applies to the whole document when it is converted in pieces
+ */
+public class ConversionLimitsTest {
+
+	private static final String RECORD_PATH = "export/items/record";
+
+	private static final String[] MODES = {"convert", "streaming", "parallel", "feeder", "records", "iterator", "checkpoint"};
+
+	private static final String ENTITY_EXPANSION_LIMIT = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit";
+
+	private static final String EXPANSIONS = "<!DOCTYPE a [<!ENTITY e 'x'>]><a>&e;&e;&e;&e;&e;&e;&e;&e;</a>";
+
+	@Test
+	public void entityExpansionLimitLeavesTheFactoryAsItIs() throws Exception {
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		Object previous = factory.getProperty(ENTITY_EXPANSION_LIMIT);
+
+		XmlToJsonConverter converter = new XmlToJsonConverter(factory);
+		converter.setLimits(new ConversionLimits().setMaxEntityExpansions(4));
+
+		assertEquals(previous, factory.getProperty(ENTITY_EXPANSION_LIMIT));
+
+		try {
+			converter.convert(SampleDocuments.stream(EXPANSIONS));
+			fail("The entity expansions are over the limit");
+
+		} catch (ConversionLimitException e) {
+			assertEquals("max entity expansions", e.getLimit());
+		}
+
+		// Another converter sharing the factory is not limited
+		assertEquals("{\"a\":\"xxxxxxxx\"}", new XmlToJsonConverter(factory).convert(SampleDocuments.stream(EXPANSIONS)));
+	}
+
+	@Test
+	public void removingTheLimitsRemovesTheEntityExpansionLimit() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setLimits(new ConversionLimits().setMaxEntityExpansions(4));
+		converter.setLimits(null);
+
+		assertEquals("{\"a\":\"xxxxxxxx\"}", converter.convert(SampleDocuments.stream(EXPANSIONS)));
+	}
+
+	@Test
+	public void parallelOutputLimitEqualsConvert() throws Exception {
+		// Large enough for many batches
+		File file = SampleDocuments.file(SampleDocuments.records(20000, 17), "UTF-8");
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		String json = converter.convert(file);
+
+		// The smallest output limit convert() accepts
+		long low = 1;
+		long high = json.length();
+
+		while (low < high) {
+			long middle = (low + high) / 2;
+
+			if (converts(converter, file, middle)) high = middle;
+			else low = middle + 1;
+		}
+
+		converter.setLimits(new ConversionLimits().setMaxOutputChars(low));
+		assertEquals(json, converter.convertParallel(file, "export/items/record"));
+
+		converter.setLimits(new ConversionLimits().setMaxOutputChars(low - 1));
+
+		try {
+			converter.convertParallel(file, "export/items/record");
+			fail("The output is over the limit");
+
+		} catch (ConversionLimitException e) {
+			assertEquals("max output chars", e.getLimit());
+		}
+	}
+
+	/**
+	 * Check if convert() accepts a file with an output limit
+	 */
+	private static boolean converts(XmlToJsonConverter converter, File file, long maxOutputChars) throws Exception {
+		converter.setLimits(new ConversionLimits().setMaxOutputChars(maxOutputChars));
+
+		try {
+			converter.convert(file);
+			return true;
+
+		} catch (ConversionLimitException e) {
+			return false;
+		}
+	}
+
+	@Test
+	public void maxDepth() throws Exception {
+		// The records document nests up to export/items/record/note/m:b
+		ConversionLimits limits = new ConversionLimits().setMaxDepth(5);
+
+		assertAccepted(limits, withRecord(""));
+		assertExceeded(limits, withRecord("<name>n</name><a><b><c>1</c></b></a>"), "max depth");
+	}
+
+	@Test
+	public void maxOutputChars() throws Exception {
+		// Far more than one batch of any mode takes, far less than the whole document
+		ConversionLimits limits = new ConversionLimits().setMaxOutputChars(200000);
+
+		assertAccepted(limits, SampleDocuments.records(1000, 23));
+		assertExceeded(limits, SampleDocuments.records(20000, 23), "max output chars");
+	}
+
+	@Test
+	public void maxTextLength() throws Exception {
+		ConversionLimits limits = new ConversionLimits().setMaxTextLength(20);
+
+		assertAccepted(limits, withRecord("<name>12345678901234567890</name>"));
+		assertExceeded(limits, withRecord("<name>123456789012345678901</name>"), "max text length");
+
+		// Attribute values and data strings split over several parser events are limited the same way
+		assertExceeded(limits, withRecord("<name k=\"123456789012345678901\"/>"), "max text length");
+		assertExceeded(limits, withRecord("<name>1234567890<![CDATA[12345678901]]></name>"), "max text length");
+	}
+
+	@Test
+	public void maxAttributes() throws Exception {
+		// Each record has two attributes
+		ConversionLimits limits = new ConversionLimits().setMaxAttributes(2);
+
+		assertAccepted(limits, withRecord("<name a=\"1\" b=\"2\"/>"));
+		assertExceeded(limits, withRecord("<name a=\"1\" b=\"2\" c=\"3\"/>"), "max attributes");
+	}
+
+	@Test
+	public void maxEntityExpansions() throws Exception {
+		ConversionLimits limits = new ConversionLimits().setMaxEntityExpansions(4);
+		String xml = withRecord("<name>&e;&e;&e;&e;&e;&e;&e;&e;</name>");
+
+		// The parser enforces the limit.  An internal DTD subset is only read by the modes which don't split the document
+		xml = xml.replaceFirst("<export", "<!DOCTYPE export [<!ENTITY e 'x'>]><export");
+		String[] modes = {"convert", "streaming", "records", "iterator"};
+
+		assertExceeded(limits, xml, "max entity expansions", modes);
+	}
+
+	/**
+	 * Build a records document large enough for several parallel batches, with one more record holding the given content
+	 * near its end
+	 */
+	private static String withRecord(String content) {
+		String xml = SampleDocuments.records(3000, 19);
+		int end = xml.lastIndexOf("</items>");
+
+		return xml.substring(0, end) + "<record id=\"x\">" + content + "</record>" + xml.substring(end);
+	}
+
+	/**
+	 * Check that every conversion mode accepts a document within the limits, and gives the same JSON as without the limits
+	 */
+	private static void assertAccepted(ConversionLimits limits, String xml) throws Exception {
+		File file = SampleDocuments.file(xml, "UTF-8");
+		String expected = new XmlToJsonConverter().convert(file);
+
+		for (String mode : MODES) {
+			assertEquals(mode, expected, convert(limits, xml, file, mode));
+		}
+	}
+
+	/**
+	 * Check that every conversion mode fails a document exceeding a limit, with the name of the limit
+	 */
+	private static void assertExceeded(ConversionLimits limits, String xml, String limit) throws Exception {
+		assertExceeded(limits, xml, limit, MODES);
+	}
+
+	/**
+	 * Check that some conversion modes fail a document exceeding a limit, with the name of the limit
+	 */
+	private static void assertExceeded(ConversionLimits limits, String xml, String limit, String[] modes) throws Exception {
+		File file = SampleDocuments.file(xml, "UTF-8");
+
+		for (String mode : modes) {
+			try {
+				convert(limits, xml, file, mode);
+				fail(mode + ": the document exceeds the " + limit);
+
+			} catch (ConversionLimitException e) {
+				assertEquals(mode, limit, e.getLimit());
+
+			} catch (IllegalStateException e) {
+				// The record iterator can't throw checked exceptions
+				assertTrue(mode, e.getCause() instanceof ConversionLimitException);
+				assertEquals(mode, limit, ((ConversionLimitException) e.getCause()).getLimit());
+			}
+		}
+	}
+
+	/**
+	 * Convert a document in one of the modes.  The record modes hand out records instead of the whole document; once they
+	 * accept it, the JSON of convert() without limits is returned
+	 */
+	private static String convert(ConversionLimits limits, String xml, File file, String mode) throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setLimits(limits);
+
+		if (mode.equals("convert")) {
+			return converter.convert(file);
+		}
+		if (mode.equals("streaming")) {
+			StringWriter writer = new StringWriter();
+			converter.convert(SampleDocuments.stream(xml), writer);
+			return writer.toString();
+		}
+		if (mode.equals("parallel")) {
+			return converter.convertParallel(file, RECORD_PATH);
+		}
+		if (mode.equals("feeder")) {
+			XmlToJsonFeeder feeder = converter.newFeeder(RECORD_PATH);
+			byte[] bytes = xml.getBytes("UTF-8");
+
+			for (int offset = 0; offset < bytes.length; offset += 4096) {
+				feeder.feed(bytes, offset, Math.min(4096, bytes.length - offset));
+			}
+			return feeder.end();
+		}
+
+		JsonRecordHandler handler = new JsonRecordHandler() {
+			public void record(String json) {
+			}
+		};
+
+		if (mode.equals("records")) {
+			converter.convertRecords(SampleDocuments.stream(xml), RECORD_PATH, handler);
+		}
+		else if (mode.equals("iterator")) {
+			for (Iterator<String> records = converter.records(SampleDocuments.stream(xml), RECORD_PATH); records.hasNext();) {
+				records.next();
+			}
+		}
+		else {
+			converter.convertRecords(file, RECORD_PATH, handler, null, new CheckpointListener() {
+				public void checkpoint(ConversionCheckpoint checkpoint) {
+				}
+			});
+		}
+
+		return new XmlToJsonConverter().convert(file);
+	}
+}
@@ -0,0 +1,197 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The listener receives the metrics of each reported conversion, with the counters of the document converted
+ */
+public class ConversionMetricsTest {
+
+	private List<ConversionMetrics> metrics = new ArrayList<ConversionMetrics>();
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	{
+		this.converter.setConversionListener(new ConversionListener() {
+			public void converted(ConversionMetrics conversionMetrics) {
+				ConversionMetricsTest.this.metrics.add(conversionMetrics);
+			}
+		});
+	}
+
+	@Test
+	public void runOfSiblings() throws Exception {
+		// Elements and data strings: a, b, 1, b, 2, b, 3
+		String xml = "<a><b>1</b><b>2</b><b>3</b></a>";
+
+		checkTree(xml, 7, 2, 1, "{\"a\":{\"b\":[\"1\",\"2\",\"3\"]}}".length());
+		checkStream(xml, 7, 2, 1, 0, 3);
+		checkCbor(xml, 7, 2, 1);
+
+		// Each record on its own i.e. {"b":"1"}
+		checkRecords(xml, 7, 2, 0, 9);
+	}
+
+	@Test
+	public void attributesAndNesting() throws Exception {
+		// a, @k, b, c, x, d
+		String xml = "<a k=\"1\"><b><c>x</c></b><d/></a>";
+
+		checkTree(xml, 6, 3, 0, "{\"a\":{\"@k\":\"1\",\"b\":{\"c\":\"x\"},\"d\":\"\"}}".length());
+		checkStream(xml, 6, 3, 0, 0, "{\"c\":\"x\"}".length());
+		checkCbor(xml, 6, 3, 0);
+		checkRecords(xml, 6, 3, 0, "{\"b\":{\"c\":\"x\"}}".length());
+	}
+
+	@Test
+	public void nestedRuns() throws Exception {
+		// a, b, c, 1, c, 2, b, c, 3, e, t
+		String xml = "<a><b><c>1</c><c>2</c></b><b><c>3</c></b><e>t</e></a>";
+
+		checkTree(xml, 11, 3, 2, "{\"a\":{\"b\":[{\"c\":[\"1\",\"2\"]},{\"c\":\"3\"}],\"e\":\"t\"}}".length());
+
+		// The bracket of the run of b is inserted in front of {"c":["1","2"]}, which was pending in the emitter
+		checkStream(xml, 11, 3, 2, 3, 15);
+		checkCbor(xml, 11, 3, 2);
+		checkRecords(xml, 11, 3, 1, "{\"b\":{\"c\":[\"1\",\"2\"]}}".length());
+	}
+
+	@Test
+	public void sampleDocuments() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			this.metrics.clear();
+
+			String json = this.converter.convert(SampleDocuments.stream(xml));
+			this.converter.convert(SampleDocuments.stream(xml), new StringWriter());
+			this.converter.convertToCbor(SampleDocuments.stream(xml), new ByteArrayOutputStream());
+			this.converter.convertRecords(SampleDocuments.stream(xml), null, new StringWriter());
+
+			assertEquals(xml, 4, this.metrics.size());
+			assertEquals(xml, json.length(), this.metrics.get(0).getPeakBufferedChars());
+
+			// The same document is read the same way whatever the output
+			for (ConversionMetrics each : this.metrics) {
+				assertEquals(xml, xml.getBytes("UTF-8").length, each.getBytesRead());
+				assertEquals(xml, this.metrics.get(0).getEvents(), each.getEvents());
+				assertEquals(xml, this.metrics.get(0).getMaxDepth(), each.getMaxDepth());
+				assertTrue(xml, each.getReadNanos() > 0);
+			}
+		}
+	}
+
+	@Test
+	public void eachDocumentOfAStreamIsReported() throws Exception {
+		String first = "<a><b>1</b></a>";
+		String second = "<?xml version=\"1.0\"?><c><d><e>2</e></d></c>";
+
+		this.converter.convertDocuments(SampleDocuments.stream(first + "\n" + second), new StringWriter());
+
+		assertEquals(2, this.metrics.size());
+		assertEquals(3, this.metrics.get(0).getEvents());
+		assertEquals(2, this.metrics.get(0).getMaxDepth());
+		assertEquals(4, this.metrics.get(1).getEvents());
+		assertEquals(3, this.metrics.get(1).getMaxDepth());
+	}
+
+	@Test
+	public void failedAndSplitConversionsAreNotReported() throws Exception {
+		try {
+			this.converter.convert(SampleDocuments.stream("<a><b></a>"));
+			fail("The document is not well formed");
+
+		} catch (Exception e) {
+			// Expected
+		}
+
+		File file = SampleDocuments.file(SampleDocuments.records(2000, 41), "UTF-8");
+		this.converter.convertParallel(file, "export/items/record");
+
+		XmlToJsonFeeder feeder = this.converter.newFeeder("export/items/record");
+		byte[] bytes = SampleDocuments.records(200, 43).getBytes("UTF-8");
+		feeder.feed(bytes, 0, bytes.length);
+		feeder.end();
+
+		assertEquals(0, this.metrics.size());
+	}
+
+	/**
+	 * Convert a document to a JSON string and check its metrics.  The JSON string is the peak buffered text
+	 */
+	private void checkTree(String xml, long events, int maxDepth, long arrayPromotions, long peakBufferedChars)
+			throws Exception {
+		ConversionMetrics metrics = convert(xml, 0);
+
+		check(xml, metrics, events, maxDepth, arrayPromotions, 0, peakBufferedChars);
+		assertTrue(metrics.getWriteNanos() > 0);
+	}
+
+	/**
+	 * Convert a document to a writer and check its metrics.  The JSON is written while the XML stream is read
+	 */
+	private void checkStream(String xml, long events, int maxDepth, long arrayPromotions, long shiftedChars,
+			long peakBufferedChars) throws Exception {
+		ConversionMetrics metrics = convert(xml, 1);
+
+		check(xml, metrics, events, maxDepth, arrayPromotions, shiftedChars, peakBufferedChars);
+		assertEquals(0, metrics.getWriteNanos());
+	}
+
+	/**
+	 * Convert a document to CBOR and check its metrics.  Nothing is buffered, the CBOR goes to the output stream
+	 */
+	private void checkCbor(String xml, long events, int maxDepth, long arrayPromotions) throws Exception {
+		ConversionMetrics metrics = convert(xml, 2);
+
+		check(xml, metrics, events, maxDepth, arrayPromotions, 0, 0);
+		assertTrue(metrics.getWriteNanos() > 0);
+	}
+
+	/**
+	 * Convert each child of the root as a record and check the metrics.  The largest record is the peak buffered text
+	 */
+	private void checkRecords(String xml, long events, int maxDepth, long arrayPromotions, long peakBufferedChars)
+			throws Exception {
+		ConversionMetrics metrics = convert(xml, 3);
+
+		check(xml, metrics, events, maxDepth, arrayPromotions, 0, peakBufferedChars);
+		assertEquals(0, metrics.getWriteNanos());
+	}
+
+	/**
+	 * Convert a document in a mode and get the metrics reported for it
+	 *
+	 * @param mode
+	 * 0 for a JSON string, 1 for a writer, 2 for CBOR, 3 for records
+	 */
+	private ConversionMetrics convert(String xml, int mode) throws Exception {
+		this.metrics.clear();
+
+		if (mode == 0) this.converter.convert(SampleDocuments.stream(xml));
+		else if (mode == 1) this.converter.convert(SampleDocuments.stream(xml), new StringWriter());
+		else if (mode == 2) this.converter.convertToCbor(SampleDocuments.stream(xml), new ByteArrayOutputStream());
+		else this.converter.convertRecords(SampleDocuments.stream(xml), null, new StringWriter());
+
+		assertEquals(1, this.metrics.size());
+		return this.metrics.get(0);
+	}
+
+	private static void check(String xml, ConversionMetrics metrics, long events, int maxDepth, long arrayPromotions,
+			long shiftedChars, long peakBufferedChars) throws Exception {
+		assertEquals(xml, xml.getBytes("UTF-8").length, metrics.getBytesRead());
+		assertEquals(xml, events, metrics.getEvents());
+		assertEquals(xml, maxDepth, metrics.getMaxDepth());
+		assertEquals(xml, arrayPromotions, metrics.getArrayPromotions());
+		assertEquals(xml, shiftedChars, metrics.getShiftedChars());
+		assertEquals(xml, peakBufferedChars, metrics.getPeakBufferedChars());
+		assertTrue(xml, metrics.getReadNanos() > 0);
+	}
+}
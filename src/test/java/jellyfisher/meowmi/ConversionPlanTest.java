@@ -0,0 +1,78 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * A conversion plan never changes the JSON, whether the documents follow it or not
+ */
+public class ConversionPlanTest {
+
+	// The documents the plan learns from, where "b" and "d" always repeat
+	private static final String[] LEARNING = {
+		"<a><b>1</b><b>2</b><c><d>x</d><d>y</d></c></a>",
+		"<a><b>3</b><b>4</b><b>5</b><c><d>z</d><d>w</d></c></a>",
+	};
+
+	// Documents which follow the plan or not: a single "b" or "d" takes the bracket back, inside or outside another run
+	private static final String[] DOCUMENTS = {
+		"<a><b>1</b><b>2</b><c><d>x</d><d>y</d></c></a>",
+		"<a><b>1</b><c><d>x</d><d>y</d></c></a>",
+		"<a><b>1</b><b>2</b><c><d>x</d></c></a>",
+		"<a><b k=\"1\"><d>x</d></b><c><d>x</d><d>y</d></c></a>",
+		"<a><c><d>x</d></c><c><d>y</d><d>z</d></c><b>1</b></a>",
+		"<a><b>t<d>x</d>u</b><b/></a>",
+		"<a><b>1</b><b>2</b><c><d>x</d><d>y</d></c></a>",
+		"<a/>",
+	};
+
+	private XmlToJsonConverter expected = new XmlToJsonConverter();
+
+	@Test
+	public void planOutputEqualsConvert() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setPlanLearning(LEARNING.length);
+
+		for (String xml : LEARNING) check(converter, xml);
+
+		// Twice, the second time with the keys the first pass dropped from the plan
+		for (int pass = 0; pass < 2; pass++) {
+			for (String xml : DOCUMENTS) check(converter, xml);
+		}
+	}
+
+	@Test
+	public void planOfRecordsEqualsConvert() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setPlanLearning(3);
+
+		// The tags of a record are sometimes a single one, so the plan is taken back now and then
+		for (int seed = 0; seed < 20; seed++) check(converter, SampleDocuments.records(50, seed));
+	}
+
+	@Test
+	public void planWithSpilledBuffersEqualsConvert() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setPlanLearning(LEARNING.length);
+		converter.setSpillBudget(4, null);
+
+		for (String xml : LEARNING) check(converter, xml);
+		for (String xml : DOCUMENTS) check(converter, xml);
+	}
+
+	/**
+	 * Check that the streaming and the tree conversion of a document with plans give the JSON of a converter without plans
+	 */
+	private void check(XmlToJsonConverter converter, String xml) throws Exception {
+		String json = this.expected.convert(SampleDocuments.stream(xml));
+
+		StringWriter writer = new StringWriter();
+		converter.convert(SampleDocuments.stream(xml), writer);
+
+		assertEquals(xml, json, writer.toString());
+		assertEquals(xml, json, converter.convert(SampleDocuments.stream(xml)));
+	}
+}
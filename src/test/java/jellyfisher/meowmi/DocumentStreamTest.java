@@ -0,0 +1,110 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Streams of many documents give each document's JSON, the same as converting it on its own
+ */
+public class DocumentStreamTest {
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void eachDocumentEqualsItsOwnConversion() throws Exception {
+		StringBuilder stream = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+
+		for (int i = 0; i < SampleDocuments.DOCUMENTS.length; i++) {
+			String xml = SampleDocuments.DOCUMENTS[i];
+
+			stream.append((i % 3 == 0) ? "\n" : (i % 3 == 1) ? "" : "\r\n  ").append(xml);
+			expected.add(this.converter.convert(SampleDocuments.stream(xml)));
+		}
+
+		assertEquals(expected, convert(SampleDocuments.stream(stream.toString())));
+
+		// The same bytes arriving a few at a time, so markup spans reads
+		assertEquals(expected, convert(new TrickleInputStream(SampleDocuments.stream(stream.toString()))));
+	}
+
+	@Test
+	public void commentsAndInstructionsBetweenDocumentsAreSkipped() throws Exception {
+		assertEquals(list("{\"a\":\"\"}"), convert("<a/><!-- trailing -->"));
+		assertEquals(list("{\"a\":\"\"}", "{\"b\":\"\"}"), convert("<a/><!--x--><?xml version=\"1.0\"?><b/>"));
+		assertEquals(list("{\"a\":\"\"}", "{\"b\":\"1\"}"), convert("<!-- head --><?pi x?>\n<a/>\n<?log 2?><!-- <c/> -->\n<b>1</b>\n<!-- end -->\n"));
+		assertEquals(list(), convert(" \n<!-- only a comment -->"));
+	}
+
+	@Test
+	public void markupHidingTheEndOfTheRootIsScanned() throws Exception {
+		String first = "<r a=\"x>y\" b='/r>'><![CDATA[</r>]]]]><x/><!-- </r> --><?pi </r>?></r>";
+		String second = "<!DOCTYPE r [<!ENTITY e \"]>\"><!-- it's ] --><!ENTITY f ']'>]><r>&e;&f;</r>";
+
+		List<String> documents = convert(first + second + first);
+
+		assertEquals(3, documents.size());
+		assertEquals(this.converter.convert(SampleDocuments.stream(first)), documents.get(0));
+		assertEquals(this.converter.convert(SampleDocuments.stream(second)), documents.get(1));
+		assertEquals("{\"r\":\"]>]\"}", documents.get(1));
+	}
+
+	@Test
+	public void unfinishedDocumentFails() throws Exception {
+		for (String xml : new String[] { "<a/><b>", "<a/><!-- open", "<a/>junk" }) {
+			try {
+				convert(xml);
+				fail(xml);
+
+			} catch (Exception e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Encounter error when parsing the XML: "));
+			}
+		}
+	}
+
+	private List<String> convert(String xml) throws Exception {
+		return convert(SampleDocuments.stream(xml));
+	}
+
+	private List<String> convert(InputStream xml) throws Exception {
+		final List<String> documents = new ArrayList<String>();
+
+		this.converter.convertDocuments(xml, new JsonDocumentHandler() {
+			public void document(String json) {
+				documents.add(json);
+			}
+		});
+
+		return documents;
+	}
+
+	private static List<String> list(String... values) {
+		List<String> list = new ArrayList<String>();
+		for (String value : values) list.add(value);
+		return list;
+	}
+
+	/**
+	 * Hands out at most 3 bytes per read
+	 */
+	private static class TrickleInputStream extends FilterInputStream {
+
+		TrickleInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, 3));
+		}
+	}
+}
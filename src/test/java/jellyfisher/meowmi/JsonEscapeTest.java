@@ -0,0 +1,108 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * The JSON written to an output stream is escaped as the JSON grammar requires and encoded in UTF-8 the way the UTF-8
+ * charset does, surrogate pairs included
+ */
+public class JsonEscapeTest {
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void controlCharactersAreEscaped() throws Exception {
+		// XML 1.1 allows references to the control characters which XML 1.0 doesn't
+		String xml = "<?xml version=\"1.1\"?><a k=\"&#1;&#9;&#x22;\">x&#1;&#8;&#9;&#10;&#12;&#13;&#x1f;&#x7f;\"\\/&lt;&#x2028;"
+				+ "é</a>";
+		String expected = "{\"a\":{\"@k\":\"\\u0001\\t\\\"\",\"#text\":\"x\\u0001\\b\\t\\n\\f\\r\\u001f\u007f\\\"\\\\/< é\"}}";
+
+		assertArrayEquals(expected.getBytes("UTF-8"), convert(xml));
+		assertEquals(expected, this.converter.convert(SampleDocuments.stream(xml)));
+	}
+
+	@Test
+	public void surrogatePairsAreEncodedInFourBytes() throws Exception {
+		String xml = "<a é=\"𝄞\"><中>😀x𐀀</中></a>";
+		String expected = "{\"a\":{\"@é\":\"𝄞\",\"中\":\"😀x𐀀\"}}";
+
+		assertArrayEquals(expected.getBytes("UTF-8"), convert(xml));
+	}
+
+	@Test
+	public void longStringsAreEncodedAcrossBuffers() throws Exception {
+		// Runs longer than the 8K buffer, shifted so the escapes and the surrogate pairs fall on every buffer boundary
+		for (int shift = 0; shift < 4; shift++) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < shift; i++) text.append('s');
+			for (int i = 0; i < 3000; i++) text.append("é中𝄞&quot;a");
+
+			String xml = "<a><b>" + text + "</b><c>" + text + "</c></a>";
+			String expected = this.converter.convert(SampleDocuments.stream(xml));
+			byte[] json = convert(xml);
+
+			assertArrayEquals("Shift " + shift, expected.getBytes("UTF-8"), json);
+
+			// The escaped strings read back as the data strings
+			JsonReader reader = new JsonReader(new StringReader(new String(json, "UTF-8")));
+			assertEquals(JsonReader.START_OBJECT, reader.next());
+			assertEquals(JsonReader.KEY, reader.next());
+			assertEquals(JsonReader.START_OBJECT, reader.next());
+			assertEquals(JsonReader.KEY, reader.next());
+			assertEquals(JsonReader.STRING, reader.next());
+			assertEquals(text.toString().replace("&quot;", "\""), reader.getText());
+		}
+	}
+
+	@Test
+	public void utf8WriterMatchesTheUtf8Charset() throws Exception {
+		String text = "ascii é߿ࠀ中￿ 𝄞😀 lone \ud800x \udc00y 􏿿 end";
+		byte[] expected = text.getBytes("UTF-8");
+
+		// Pieces of every size, so the surrogate pairs are split across calls
+		for (int piece = 1; piece <= 8; piece++) {
+			assertArrayEquals("Chars of " + piece, expected, write(text, piece, 0));
+			assertArrayEquals("String of " + piece, expected, write(text, piece, 1));
+			assertArrayEquals("Char by char", expected, write(text, piece, 2));
+		}
+	}
+
+	/**
+	 * Convert a document to an output stream
+	 */
+	private byte[] convert(String xml) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		this.converter.convert(SampleDocuments.stream(xml), output);
+
+		return output.toByteArray();
+	}
+
+	/**
+	 * Write a text through a Utf8Writer in pieces
+	 *
+	 * @param mode
+	 * 0 to write char arrays, 1 to write strings, 2 to write one character at a time
+	 */
+	private static byte[] write(String text, int piece, int mode) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Utf8Writer writer = new Utf8Writer();
+		writer.reset(output);
+
+		for (int offset = 0; offset < text.length(); offset += piece) {
+			int length = Math.min(piece, text.length() - offset);
+
+			if (mode == 0) writer.write(text.toCharArray(), offset, length);
+			else if (mode == 1) writer.write(text, offset, length);
+			else for (int i = offset; i < offset + length; i++) writer.write(text.charAt(i));
+		}
+
+		writer.flush();
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,97 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * The XML written back from the JSON of a document converts to the same JSON
+ */
+public class JsonToXmlConverterTest {
+
+	private XmlToJsonConverter xmlToJson = new XmlToJsonConverter();
+	private JsonToXmlConverter jsonToXml = new JsonToXmlConverter();
+
+	@Test
+	public void roundTripGivesTheSameJson() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			checkRoundTrip(xml, this.xmlToJson.convert(SampleDocuments.stream(xml)));
+		}
+
+		checkRoundTrip("records", this.xmlToJson.convert(SampleDocuments.stream(SampleDocuments.records(300, 3))));
+	}
+
+	@Test
+	public void attributesCanComeAmongInnerElements() throws Exception {
+		String xml = this.jsonToXml.convert("{\"a\":{\"b\":\"1\",\"@x\":\"2\",\"c\":null,\"@y\":3,\"d\":{\"@z\":\"4\",\"e\":true}}}");
+
+		assertEquals("<?xml version=\"1.0\"?><a x=\"2\" y=\"3\"><b>1</b><c/><d z=\"4\"><e>true</e></d></a>", xml);
+	}
+
+	@Test
+	public void attributeAfterAnInnerObjectFails() throws Exception {
+		checkFails("{\"a\":{\"b\":{},\"@x\":\"1\"}}", "{\"a\":{\"b\":[\"1\",\"2\"],\"@x\":\"1\"}}",
+				"{\"a\":{\"#text\":\"t\",\"@x\":\"1\"}}");
+	}
+
+	@Test
+	public void keysWhichAreNotXmlNamesFail() throws Exception {
+		checkFails("{\"a b\":\"x\"}", "{\"r\":{\"1x\":\"1\"}}", "{\"r\":{\"-x\":\"1\"}}", "{\"r\":{\"x<y\":\"1\"}}",
+				"{\"r\":{\"@a b\":\"1\"}}", "{\"r\":{\"@1\":\"1\"}}", "{\"r\":{\"@\":\"1\"}}", "{\"r\":{\"\":\"1\"}}",
+				"{\"r\":{\"{urn:a}x:y\":\"1\"}}", "{\"r\":{\"@{urn:a}1\":\"1\"}}", "{\"r\":{\"x\\ud800\":\"1\"}}",
+				"{\"r\":{\"x\":[\"1\"],\"y z\":[\"2\"]}}");
+	}
+
+	@Test
+	public void xmlNamesAreAccepted() throws Exception {
+		String xml = this.jsonToXml.convert("{\"r\":{\"@_a.b-c\":\"1\",\"\u00e9l\u00e9ment\":\"2\",\"\u4e2d\u00b7x\":\"3\","
+				+ "\"\\ud800\\udc00\":\"4\",\"cbc:ID\":\"5\"}}");
+
+		assertEquals("<?xml version=\"1.0\"?><r _a.b-c=\"1\"><\u00e9l\u00e9ment>2</\u00e9l\u00e9ment><\u4e2d\u00b7x>3</\u4e2d\u00b7x>"
+				+ "<\ud800\udc00>4</\ud800\udc00><cbc:ID>5</cbc:ID></r>", xml);
+	}
+
+	@Test
+	public void charactersXmlDoesntAllowFail() throws Exception {
+		checkFails("{\"r\":\"a\\u0001b\"}", "{\"r\":\"a\\u0000b\"}", "{\"r\":{\"@x\":\"\\u001f\"}}",
+				"{\"r\":{\"b\":\"\\ufffe\"}}", "{\"r\":{\"#text\":[\"a\",\"\\u0008\"]}}", "{\"r\":\"\\ud800\"}",
+				"{\"r\":\"\\udc00\\ud800\"}", "{\"r\":\"a\\ud800b\"}", "{\"r\":{\"{urn:\\u0001}b\":\"1\"}}");
+	}
+
+	@Test
+	public void charactersXmlAllowsAreWritten() throws Exception {
+		String json = "{\"r\":{\"@x\":\"\\t\\ud83d\\ude00\",\"#text\":\"a\\nb\\r\\u00e9\\ufffd\\ud800\\udc00\"}}";
+
+		assertEquals("<?xml version=\"1.0\"?><r x=\"\t\ud83d\ude00\">a\nb\r\u00e9\ufffd\ud800\udc00</r>",
+				this.jsonToXml.convert(json));
+	}
+
+	/**
+	 * Check that each JSON text fails with the converter's error
+	 */
+	private void checkFails(String... jsons) {
+		for (String json : jsons) {
+			try {
+				this.jsonToXml.convert(json);
+				fail(json);
+
+			} catch (Exception e) {
+				assertTrue(json + ": " + e.getMessage(),
+						e.getMessage().startsWith("Encounter error when converting the JSON to XML: "));
+			}
+		}
+	}
+
+	/**
+	 * Check that the JSON converted back and forth is the same.  The data strings of mixed content are written one after the
+	 * other, so they come back as one data string, after which the JSON stays the same
+	 */
+	private void checkRoundTrip(String message, String json) throws Exception {
+		String back = this.xmlToJson.convert(SampleDocuments.stream(this.jsonToXml.convert(json)));
+
+		if (! json.contains("\"#text\":[")) assertEquals(message, json, back);
+		else assertEquals(message, back, this.xmlToJson.convert(SampleDocuments.stream(this.jsonToXml.convert(back))));
+	}
+}
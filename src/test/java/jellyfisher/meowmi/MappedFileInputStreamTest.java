@@ -0,0 +1,58 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * The mapped stream reads, skips and counts the bytes of a file like a FileInputStream, and fails the same way once closed
+ */
+public class MappedFileInputStreamTest {
+
+	@Test
+	public void readAndSkip() throws Exception {
+		File file = SampleDocuments.file("<a>0123456789</a>", "UTF-8");
+		MappedFileInputStream stream = new MappedFileInputStream(file);
+
+		assertEquals(17, stream.available());
+		assertEquals('<', stream.read());
+		assertEquals(2, stream.skip(2));
+		assertEquals('0', stream.read());
+
+		// Back and beyond the end
+		assertEquals(-4, stream.skip(-4));
+		assertEquals('<', stream.read());
+		assertEquals(16, stream.skip(100));
+		assertEquals(0, stream.available());
+		assertEquals(-1, stream.read());
+
+		stream.close();
+	}
+
+	@Test
+	public void closedStreamFails() throws Exception {
+		MappedFileInputStream stream = new MappedFileInputStream(SampleDocuments.file("<a/>", "UTF-8"));
+		stream.close();
+
+		for (int i = 0; i < 4; i++) {
+			try {
+				if (i == 0) stream.read();
+				else if (i == 1) stream.read(new byte[4], 0, 4);
+				else if (i == 2) stream.skip(1);
+				else stream.available();
+
+				fail("The stream is closed");
+
+			} catch (IOException e) {
+				assertEquals("Stream is closed", e.getMessage());
+			}
+		}
+
+		// Closing again does nothing
+		stream.close();
+	}
+}
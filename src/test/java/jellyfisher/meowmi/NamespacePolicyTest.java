@@ -0,0 +1,111 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Each namespace policy builds the keys of the element and attribute names as documented, through the tree and the
+ * streaming conversions
+ */
+public class NamespacePolicyTest {
+
+	// A prefixed root, a default namespace, two prefixes of one URI, a prefixed and a plain attribute, an element of another
+	// namespace with the same local name, and an element taken out of the default namespace
+	private static final String INVOICE = "<inv:Invoice xmlns:inv=\"urn:inv\" xmlns=\"urn:def\" xmlns:cbc=\"urn:cbc\" cbc:attr=\"1\""
+			+ " plain=\"2\"><cbc:ID>7</cbc:ID><x:ID xmlns:x=\"urn:cbc\">8</x:ID><Note>n</Note><o:Note xmlns:o=\"urn:o\">m</o:Note>"
+			+ "<free xmlns=\"\">f</free></inv:Invoice>";
+
+	@Test
+	public void keepUri() throws Exception {
+		String expected = "{\"{urn:inv}Invoice\":{\"@{urn:cbc}attr\":\"1\",\"@plain\":\"2\",\"{urn:cbc}ID\":[\"7\",\"8\"],"
+				+ "\"{urn:def}Note\":\"n\",\"{urn:o}Note\":\"m\",\"free\":\"f\"}}";
+
+		check(expected, null);
+		check(expected, NamespacePolicy.KEEP_URI);
+	}
+
+	@Test
+	public void dropUri() throws Exception {
+		// The names of different namespaces with the same local name are grouped
+		check("{\"Invoice\":{\"@attr\":\"1\",\"@plain\":\"2\",\"ID\":[\"7\",\"8\"],\"Note\":[\"n\",\"m\"],\"free\":\"f\"}}",
+				NamespacePolicy.DROP_URI);
+	}
+
+	@Test
+	public void usePrefix() throws Exception {
+		// Two prefixes of the same URI are two keys, the default namespace has no prefix
+		check("{\"inv:Invoice\":{\"@cbc:attr\":\"1\",\"@plain\":\"2\",\"cbc:ID\":\"7\",\"x:ID\":\"8\",\"Note\":\"n\","
+				+ "\"o:Note\":\"m\",\"free\":\"f\"}}", NamespacePolicy.USE_PREFIX);
+	}
+
+	@Test
+	public void aliases() throws Exception {
+		Map<String, String> aliases = new HashMap<String, String>();
+		aliases.put("urn:inv", "i");
+		aliases.put("urn:cbc", "c");
+		aliases.put("urn:def", "");
+
+		// A URI without an alias keeps its "{uri}local" key
+		check("{\"i:Invoice\":{\"@c:attr\":\"1\",\"@plain\":\"2\",\"c:ID\":[\"7\",\"8\"],\"Note\":\"n\",\"{urn:o}Note\":\"m\","
+				+ "\"free\":\"f\"}}", NamespacePolicy.aliases(aliases));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void nullAliasFails() {
+		Map<String, String> aliases = new HashMap<String, String>();
+		aliases.put("urn:inv", null);
+
+		NamespacePolicy.aliases(aliases);
+	}
+
+	@Test
+	public void policiesDontShareKeysOnOneThread() throws Exception {
+		// The name table of the thread is reused by each conversion, the keys of the previous policy must not be
+		for (int i = 0; i < 2; i++) {
+			usePrefix();
+			dropUri();
+			keepUri();
+		}
+	}
+
+	@Test
+	public void namesBeyondTheTableAreStillResolved() throws Exception {
+		// More distinct names than the name table caches
+		StringBuilder xml = new StringBuilder("<r xmlns:p=\"urn:p\">");
+		StringBuilder expected = new StringBuilder("{\"r\":{");
+
+		for (int i = 0; i < 5000; i++) {
+			xml.append("<p:n").append(i).append(" p:a=\"").append(i).append("\"/>");
+			if (i > 0) expected.append(',');
+			expected.append("\"p:n").append(i).append("\":{\"@p:a\":\"").append(i).append("\"}");
+		}
+
+		check(xml.append("</r>").toString(), expected.append("}}").toString(), NamespacePolicy.USE_PREFIX);
+	}
+
+	/**
+	 * Check the JSON of the invoice with a namespace policy
+	 */
+	private static void check(String expected, NamespacePolicy policy) throws Exception {
+		check(INVOICE, expected, policy);
+	}
+
+	/**
+	 * Check the JSON of a document with a namespace policy, through the tree and the streaming conversions
+	 */
+	private static void check(String xml, String expected, NamespacePolicy policy) throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setNamespacePolicy(policy);
+
+		assertEquals(expected, converter.convert(SampleDocuments.stream(xml)));
+
+		StringWriter writer = new StringWriter();
+		converter.convert(SampleDocuments.stream(xml), writer);
+		assertEquals(expected, writer.toString());
+	}
+}
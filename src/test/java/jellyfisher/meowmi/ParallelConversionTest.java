@@ -0,0 +1,77 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A document split at its records, converted in batches and merged gives the same JSON as XmlToJsonConverter.convert()
+ */
+public class ParallelConversionTest {
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+	private ExecutorService executor;
+
+	@Before
+	public void startExecutor() {
+		this.executor = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void stopExecutor() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void parallelOutputEqualsConvert() throws Exception {
+		// Large enough for many batches
+		File file = SampleDocuments.file(SampleDocuments.records(20000, 11), "UTF-8");
+
+		assertEquals(this.converter.convert(file), this.converter.convertParallel(file, "export/items/record", this.executor));
+		assertEquals(this.converter.convert(file), this.converter.convertParallel(file, "/export/items/record"));
+	}
+
+	@Test
+	public void markupHidingRecordTagsIsNotSplit() throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<m:export xmlns:m=\"urn:m\"><m:items>");
+
+		for (int i = 0; i < 6000; i++) {
+			xml.append("<!-- <m:record>commented</m:record> -->");
+			xml.append("<m:record a=\"x>y\" b='/m:record>'>");
+			xml.append("<![CDATA[</m:record><m:record>]]>").append(i);
+			xml.append("<?pi </m:record>?><m:record-like/><inner><m:record>nested</m:record></inner>");
+			xml.append("</m:record >\n");
+		}
+
+		File file = SampleDocuments.file(xml.append("</m:items></m:export>").toString(), "UTF-8");
+
+		assertEquals(this.converter.convert(file), this.converter.convertParallel(file, "export/items/record", this.executor));
+	}
+
+	@Test
+	public void childrenOfTheRootAreTheDefaultRecords() throws Exception {
+		StringBuilder xml = new StringBuilder("<log>");
+		for (int i = 0; i < 20000; i++) xml.append("<event n=\"").append(i).append("\"><level>info</level></event>");
+
+		File file = SampleDocuments.file(xml.append("<end/></log>").toString(), "UTF-8");
+
+		assertEquals(this.converter.convert(file), this.converter.convertParallel(file, null, this.executor));
+	}
+
+	@Test
+	public void documentsWhichCantBeSplitAreConvertedAsAWhole() throws Exception {
+		String records = SampleDocuments.records(3000, 13);
+
+		File utf16 = SampleDocuments.file(records.replace("UTF-8", "UTF-16"), "UTF-16");
+		assertEquals(this.converter.convert(utf16), this.converter.convertParallel(utf16, "export/items/record", this.executor));
+
+		File utf8 = SampleDocuments.file(records, "UTF-8");
+		assertEquals(this.converter.convert(utf8), this.converter.convertParallel(utf8, "export", this.executor));
+	}
+}
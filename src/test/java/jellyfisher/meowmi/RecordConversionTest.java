@@ -0,0 +1,71 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Each record handed out is the same JSON as XmlToJsonConverter.convert() of the record element on its own
+ */
+public class RecordConversionTest {
+
+	private static final Pattern RECORD = Pattern.compile("<record .*?</record>");
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void eachRecordEqualsItsOwnConversion() throws Exception {
+		String xml = SampleDocuments.records(500, 17);
+		final List<String> records = new ArrayList<String>();
+
+		this.converter.convertRecords(SampleDocuments.stream(xml), "export/items/record", new JsonRecordHandler() {
+			public void record(String json) {
+				records.add(json);
+			}
+		});
+
+		assertEquals(expectedRecords(xml), records);
+	}
+
+	@Test
+	public void iteratorAndJsonLinesEqualTheHandler() throws Exception {
+		String xml = SampleDocuments.records(500, 19);
+		List<String> expected = expectedRecords(xml);
+
+		List<String> records = new ArrayList<String>();
+		Iterator<String> iterator = this.converter.records(SampleDocuments.stream(xml), "export/items/record");
+		while (iterator.hasNext()) records.add(iterator.next());
+
+		assertEquals(expected, records);
+
+		StringWriter writer = new StringWriter();
+		this.converter.convertRecords(SampleDocuments.stream(xml), "export/items/record", writer);
+
+		StringBuilder lines = new StringBuilder();
+		for (String record : expected) lines.append(record).append('\n');
+
+		assertEquals(lines.toString(), writer.toString());
+	}
+
+	/**
+	 * Convert each record element of a SampleDocuments.records() document on its own, with the namespace declared by the root
+	 */
+	private List<String> expectedRecords(String xml) throws Exception {
+		List<String> records = new ArrayList<String>();
+		Matcher matcher = RECORD.matcher(xml);
+
+		while (matcher.find()) {
+			String record = matcher.group().replaceFirst("<record ", "<record xmlns:m=\"urn:m\" ");
+			records.add(this.converter.convert(SampleDocuments.stream(record)));
+		}
+
+		return records;
+	}
+}
@@ -0,0 +1,110 @@
+package jellyfisher.meowmi;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * XML documents shared by the tests, covering the shapes the conversions handle differently: data strings, attributes,
+ * runs of siblings, nested runs, mixed content, namespaces, CDATA and escaping
+ */
+class SampleDocuments {
+
+	static final String[] DOCUMENTS = {
+		"<a>x</a>",
+		"<a/>",
+		"<a k=\"1\"/>",
+		"<a k=\"1\">x</a>",
+		"<a><b>1</b><c>2</c></a>",
+		"<a><b>1</b><b>2</b><b>3</b></a>",
+		"<a><b><c>1</c></b><b><c>2</c></b></a>",
+		"<a><b><c>1</c></b><b>2</b></a>",
+		"<a>t<b>1</b></a>",
+		"<a><b>1</b>t</a>",
+		"<a>t<b>1</b>u<c/>v</a>",
+		"<a k=\"v\"><b>1</b></a>",
+		"<r><a><b>1</b></a><c><b>2</b></c></r>",
+		"<a><b/><b/></a>",
+		"<a><b k=\"1\"/><b k=\"2\"/></a>",
+		"<a><b k=\"1\">x</b><b k=\"2\">y</b></a>",
+		"<a><b>x &amp; y</b></a>",
+		"<a><b><c><d>1</d><d>2</d></c><e/></b><b><c><d>3</d></c></b></a>",
+		"<x:a xmlns:x=\"urn:x\" x:k=\"1\" j=\"2\"><x:b>1</x:b><x:b>3</x:b><b>2</b></x:a>",
+		"<a><![CDATA[x<y]]> z</a>",
+		"<a>line\nbreak \"quoted\" back\\slash é中</a>",
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?><!-- c --><a><?pi x?><b>1</b><!-- d --><b>2</b></a>",
+	};
+
+	/**
+	 * Build a record document: the root holds a header and a run of records, each with attributes, a nested run and mixed
+	 * content now and then
+	 *
+	 * @param records
+	 * Number of records
+	 *
+	 * @param seed
+	 * Seed of the random content, the same seed gives the same document
+	 */
+	static String records(int records, long seed) {
+		Random random = new Random(seed);
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<export xmlns:m=\"urn:m\" version=\"2\">");
+		xml.append("<header><created>2024-01-01</created></header><items>");
+
+		for (int i = 0; i < records; i++) {
+			xml.append("<record id=\"").append(i).append("\" m:kind=\"k").append(random.nextInt(3)).append("\">");
+			xml.append("<name>Name &amp; ").append(random.nextInt(1000)).append("</name>");
+
+			int tags = random.nextInt(4);
+			for (int t = 0; t < tags; t++) xml.append("<tag>t").append(t).append("</tag>");
+
+			if (random.nextInt(5) == 0) xml.append("<note>before<m:b>bold</m:b>after</note>");
+			if (random.nextInt(7) == 0) xml.append("<empty/>");
+			xml.append("<price>").append(random.nextInt(10000) / 100.0).append("</price>");
+			xml.append("</record>\n");
+		}
+
+		return xml.append("</items><footer count=\"").append(records).append("\"/></export>").toString();
+	}
+
+	/**
+	 * Write a document to a temporary file, deleted when the JVM exits
+	 *
+	 * @param xml
+	 * The document
+	 *
+	 * @param encoding
+	 * The encoding of the file, i.e. "UTF-8"
+	 */
+	static File file(String xml, String encoding) throws IOException {
+		File file = File.createTempFile("meowmi", ".xml");
+		file.deleteOnExit();
+
+		OutputStream outputStream = new FileOutputStream(file);
+
+		try {
+			outputStream.write(xml.getBytes(encoding));
+
+		} finally {
+			outputStream.close();
+		}
+
+		return file;
+	}
+
+	/**
+	 * Get the UTF-8 bytes of a document as an input stream
+	 */
+	static InputStream stream(String xml) {
+		try {
+			return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The streaming conversion gives the same JSON when its buffers are spilled to files, and leaves no file behind
+ */
+public class SpillTest {
+
+	private XmlToJsonConverter expected = new XmlToJsonConverter();
+	private File directory;
+
+	@Before
+	public void createDirectory() throws Exception {
+		this.directory = File.createTempFile("meowmi", "");
+		assertTrue(this.directory.delete() && this.directory.mkdir());
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) file.delete();
+		}
+
+		this.directory.delete();
+	}
+
+	@Test
+	public void spilledOutputEqualsConvert() throws Exception {
+		// From a budget where every buffer is spilled to one where only the first items of large runs are
+		for (int budget : new int[] {1, 16, 1000, 64 * 1024}) {
+			XmlToJsonConverter converter = new XmlToJsonConverter();
+			converter.setSpillBudget(budget, this.directory);
+
+			for (String xml : SampleDocuments.DOCUMENTS) check(converter, xml);
+			check(converter, SampleDocuments.records(3000, 43));
+			check(converter, largeFirstItem());
+
+			assertEquals(0, this.directory.list().length);
+		}
+	}
+
+	@Test
+	public void largeFirstItemIsSpilled() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setSpillBudget(1000, this.directory);
+
+		// The spilled item is copied to the writer from its file
+		final boolean[] spilled = new boolean[1];
+		StringWriter writer = new StringWriter() {
+			public void write(char[] chars, int offset, int length) {
+				if (SpillTest.this.directory.list().length > 0) spilled[0] = true;
+				super.write(chars, offset, length);
+			}
+		};
+
+		converter.convert(SampleDocuments.stream(largeFirstItem()), writer);
+
+		assertTrue(spilled[0]);
+		assertEquals(this.expected.convert(SampleDocuments.stream(largeFirstItem())), writer.toString());
+		assertEquals(0, this.directory.list().length);
+	}
+
+	@Test
+	public void filesAreDeletedWhenTheConversionFails() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setSpillBudget(16, this.directory);
+
+		// The first item of the run is spilled, then the document breaks
+		String xml = largeFirstItem();
+		xml = xml.substring(0, xml.length() - 20) + "<broken>";
+
+		try {
+			converter.convert(SampleDocuments.stream(xml), new StringWriter());
+			fail("The document is not well-formed");
+
+		} catch (Exception e) {
+			assertTrue(e.getMessage().startsWith("Encounter error when parsing the XML: "));
+		}
+
+		assertEquals(0, this.directory.list().length);
+	}
+
+	/**
+	 * Build a document whose first item of a run is most of the document, which is what the spilling bounds
+	 */
+	private static String largeFirstItem() {
+		StringBuilder xml = new StringBuilder("<a><b><c>");
+		for (int i = 0; i < 20000; i++) xml.append("<d n=\"").append(i).append("\">text ").append(i).append("</d>");
+
+		return xml.append("</c></b><b>2</b><e>end</e></a>").toString();
+	}
+
+	/**
+	 * Check that both streaming conversions of a document give the JSON of convert()
+	 */
+	private void check(XmlToJsonConverter converter, String xml) throws Exception {
+		String json = this.expected.convert(SampleDocuments.stream(xml));
+
+		StringWriter writer = new StringWriter();
+		converter.convert(SampleDocuments.stream(xml), writer);
+		assertEquals(xml, json, writer.toString());
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		converter.convert(SampleDocuments.stream(xml), outputStream);
+		assertEquals(xml, json, outputStream.toString("UTF-8"));
+	}
+}
@@ -0,0 +1,94 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * The streaming conversions write the same JSON as the tree conversion
+ */
+public class StreamingConversionTest {
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void writerOutputEqualsTreeOutput() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			assertEquals(xml, this.converter.convert(SampleDocuments.stream(xml)), stream(xml));
+		}
+
+		String records = SampleDocuments.records(500, 1);
+		assertEquals(this.converter.convert(SampleDocuments.stream(records)), stream(records));
+	}
+
+	@Test
+	public void outputStreamOutputEqualsTreeOutput() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			this.converter.convert(SampleDocuments.stream(xml), output);
+
+			assertEquals(xml, this.converter.convert(SampleDocuments.stream(xml)), output.toString("UTF-8"));
+		}
+	}
+
+	@Test
+	public void parseWriterEqualsParse() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			StringWriter writer = new StringWriter();
+			new XmlToJsonOutputString(SampleDocuments.stream(xml)).parse(writer);
+
+			assertEquals(xml, new XmlToJsonOutputString(SampleDocuments.stream(xml)).parse(), writer.toString());
+		}
+	}
+
+	@Test
+	public void repeatAfterDifferentSiblingFails() throws Exception {
+		String xml = "<r><x>1</x><w/><x>2</x></r>";
+		assertEquals("{\"r\":{\"x\":[\"1\",\"2\"],\"w\":\"\"}}", this.converter.convert(SampleDocuments.stream(xml)));
+
+		try {
+			stream(xml);
+			fail("the key \"x\" was written twice");
+
+		} catch (Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Encounter error when parsing the XML: the element \"x\" repeats"));
+		}
+
+		// Deeper down, inside a buffered element
+		try {
+			stream("<r><a><x>1</x><w/><x>2</x></a></r>");
+			fail("the key \"x\" was written twice");
+
+		} catch (Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("\"x\" repeats"));
+		}
+	}
+
+	@Test
+	public void sameKeyUnderDifferentParentsIsNotARepeat() throws Exception {
+		String xml = "<r><a><x>1</x></a><b><x>2</x></b><a><y/></a></r>";
+
+		try {
+			stream(xml);
+			fail("\"a\" repeats after \"b\"");
+
+		} catch (Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("\"a\" repeats"));
+		}
+
+		xml = "<r><a><x>1</x><y/></a><b><x>2</x><y/></b></r>";
+		assertEquals(this.converter.convert(SampleDocuments.stream(xml)), stream(xml));
+	}
+
+	private String stream(String xml) throws Exception {
+		StringWriter writer = new StringWriter();
+		this.converter.convert(SampleDocuments.stream(xml), writer);
+
+		return writer.toString();
+	}
+}
@@ -0,0 +1,126 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A data string reaching the threshold is written to the sidecar with its exact characters and replaced by its reference,
+ * in every output mode; a shorter data string stays in the JSON
+ */
+public class TextSidecarTest {
+
+	private static final int THRESHOLD = 100;
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+	private List<StringWriter> writers = new ArrayList<StringWriter>();
+
+	// Split by the parser into many character events, with entities, a CDATA section and characters beyond ASCII
+	private String large = largeText(20000);
+
+	@Before
+	public void setSidecar() {
+		this.converter.setTextSidecar(new TextSidecar() {
+			public Writer open() {
+				StringWriter writer = new StringWriter();
+				TextSidecarTest.this.writers.add(writer);
+				return writer;
+			}
+
+			public String close(Writer writer) {
+				return "sidecar:" + TextSidecarTest.this.writers.indexOf(writer);
+			}
+		}, THRESHOLD);
+	}
+
+	@Test
+	public void tree() throws Exception {
+		assertEquals(expectedDocument(), this.converter.convert(SampleDocuments.stream(document())));
+		checkSidecar();
+	}
+
+	@Test
+	public void streaming() throws Exception {
+		StringWriter writer = new StringWriter();
+		this.converter.convert(SampleDocuments.stream(document()), writer);
+
+		assertEquals(expectedDocument(), writer.toString());
+		checkSidecar();
+	}
+
+	@Test
+	public void records() throws Exception {
+		StringWriter writer = new StringWriter();
+		this.converter.convertRecords(SampleDocuments.stream(document()), null, writer);
+
+		assertEquals("{\"big\":\"sidecar:0\"}\n"
+				+ "{\"big\":{\"@id\":\"2\",\"#text\":\"sidecar:1\"}}\n"
+				+ "{\"small\":\"" + text(THRESHOLD - 1) + "\"}\n"
+				+ "{\"edge\":\"sidecar:2\"}\n", writer.toString());
+		checkSidecar();
+	}
+
+	@Test
+	public void threshold() throws Exception {
+		// The whitespace around the data string doesn't count
+		String xml = "<a><b>  " + text(THRESHOLD - 1) + "\n</b><c>" + text(THRESHOLD) + "</c></a>";
+
+		assertEquals("{\"a\":{\"b\":\"" + text(THRESHOLD - 1) + "\",\"c\":\"sidecar:0\"}}",
+				this.converter.convert(SampleDocuments.stream(xml)));
+		assertEquals(text(THRESHOLD), this.writers.get(0).toString());
+		assertEquals(1, this.writers.size());
+	}
+
+	/**
+	 * A document with two large data strings, one under the threshold and one at the threshold
+	 */
+	private String document() {
+		return "<a>"
+				+ "<big>\n  " + escape(this.large) + "  \n</big>"
+				+ "<big id=\"2\"><![CDATA[" + this.large + "]]></big>"
+				+ "<small>" + text(THRESHOLD - 1) + "</small>"
+				+ "<edge>" + text(THRESHOLD) + "</edge>"
+				+ "</a>";
+	}
+
+	private static String expectedDocument() {
+		return "{\"a\":{\"big\":[\"sidecar:0\",{\"@id\":\"2\",\"#text\":\"sidecar:1\"}],\"small\":\"" + text(THRESHOLD - 1)
+				+ "\",\"edge\":\"sidecar:2\"}}";
+	}
+
+	/**
+	 * Check that the sidecar received the exact characters of each data string, in the order they were read
+	 */
+	private void checkSidecar() {
+		assertEquals(3, this.writers.size());
+		assertEquals(this.large, this.writers.get(0).toString());
+		assertEquals(this.large, this.writers.get(1).toString());
+		assertEquals(text(THRESHOLD), this.writers.get(2).toString());
+	}
+
+	private static String text(int length) {
+		StringBuilder text = new StringBuilder(length);
+		while (text.length() < length) text.append((char) ('a' + text.length() % 26));
+
+		return text.toString();
+	}
+
+	private static String largeText(int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; text.length() < length; i++) {
+			text.append("line ").append(i).append(": \"quoted\" <tag> & café 中文\n\t");
+		}
+
+		return text.toString().trim();
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -0,0 +1,104 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * A projection keeps the selected elements and attributes with the structure around them, and skips everything else
+ */
+public class XmlProjectionTest {
+
+	private static final String ORDER = "<order id=\"7\" date=\"d\">head<customer><name>N</name><address><city>C</city></address>"
+			+ "</customer><items><item sku=\"1\"><qty>2</qty></item><item sku=\"2\"><qty>3</qty><deep><x>y</x></deep></item>"
+			+ "<note>n</note></items><skipped><item>no</item></skipped></order>";
+
+	@Test
+	public void selectedElementsKeepEverythingInside() throws Exception {
+		check("{\"order\":{\"items\":{\"item\":[{\"@sku\":\"1\",\"qty\":\"2\"},{\"@sku\":\"2\",\"qty\":\"3\",\"deep\":{\"x\":\"y\"}}]}}}",
+				"/order/items/item");
+	}
+
+	@Test
+	public void selectedAttributesOnly() throws Exception {
+		check("{\"order\":{\"@id\":\"7\"}}", "/order/@id");
+		check("{\"order\":{\"@id\":\"7\",\"@date\":\"d\"}}", "/order/@*");
+	}
+
+	@Test
+	public void ancestorsKeepTheirStructureOnly() throws Exception {
+		// The data string of the root and the attributes of the items are dropped
+		check("{\"order\":{\"customer\":{\"name\":\"N\"},\"items\":{\"item\":[{\"qty\":\"2\"},{\"qty\":\"3\"}]}}}",
+				"/order/customer/name", "/order/items/item/qty");
+
+		check("{\"order\":{\"customer\":{\"name\":\"N\"},\"items\":{\"item\":[{\"@sku\":\"1\"},{\"@sku\":\"2\"}]}}}",
+				"/order/customer/name", "/order/items/item/@sku");
+	}
+
+	@Test
+	public void wildcardSteps() throws Exception {
+		check("{\"order\":{\"customer\":{\"name\":\"N\",\"address\":{\"city\":\"C\"}},\"items\":{\"item\":[{\"@sku\":\"1\",\"qty\":\"2\"},"
+				+ "{\"@sku\":\"2\",\"qty\":\"3\",\"deep\":{\"x\":\"y\"}}],\"note\":\"n\"},\"skipped\":{\"item\":\"no\"}}}", "/order/*");
+
+		// Every child of the root is an ancestor of the paths, the items are selected in each of them
+		check("{\"order\":{\"customer\":\"\",\"items\":{\"item\":[{\"@sku\":\"1\",\"qty\":\"2\"},{\"@sku\":\"2\",\"qty\":\"3\","
+				+ "\"deep\":{\"x\":\"y\"}}]},\"skipped\":{\"item\":\"no\"}}}", "/order/*/item");
+	}
+
+	@Test
+	public void rootIsKeptWhenNothingMatches() throws Exception {
+		check("{\"order\":\"\"}", "/other");
+		check("{\"order\":\"\"}", "/order/missing");
+	}
+
+	@Test
+	public void skippedSubtreesAreNotRead() throws Exception {
+		// The skipped subtree is over the limits, which are only checked on what the reader passes on
+		StringBuilder xml = new StringBuilder("<a><big k=\"1\" j=\"2\">");
+		for (int i = 0; i < 1000; i++) xml.append("<x>").append(i).append("</x>");
+		xml.append("<deeper><deeper><deeper>text over the limit</deeper></deeper></deeper></big><b>1</b></a>");
+
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setProjection(new XmlProjection("/a/b"));
+		converter.setLimits(new ConversionLimits().setMaxDepth(2).setMaxAttributes(1).setMaxTextLength(5).setMaxOutputChars(100));
+
+		assertEquals("{\"a\":{\"b\":\"1\"}}", converter.convert(SampleDocuments.stream(xml.toString())));
+	}
+
+	@Test
+	public void projectionAppliesToRecords() throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setProjection(new XmlProjection("/order/items/item/qty"));
+
+		StringWriter records = new StringWriter();
+		converter.convertRecords(SampleDocuments.stream(ORDER), "order/items/item", records);
+
+		assertEquals("{\"item\":{\"qty\":\"2\"}}\n{\"item\":{\"qty\":\"3\"}}\n", records.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void attributeBeforeTheLastStepFails() {
+		new XmlProjection("/order/@id/item");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyStepFails() {
+		new XmlProjection("/order//item");
+	}
+
+	/**
+	 * Check the JSON of the order with a projection, through the tree and the streaming conversions
+	 */
+	private static void check(String expected, String... paths) throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setProjection(new XmlProjection(paths));
+
+		assertEquals(expected, converter.convert(SampleDocuments.stream(ORDER)));
+
+		StringWriter writer = new StringWriter();
+		converter.convert(SampleDocuments.stream(ORDER), writer);
+		assertEquals(expected, writer.toString());
+	}
+}
@@ -0,0 +1,124 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * The hints give the JSON the same shape whatever the data, the same way when streaming, and a typed value is scanned the
+ * same way from a String and from the collector of a data string
+ */
+public class XmlShapeHintsTest {
+
+	private static final String[] NUMBERS = {"0", "-0", "7", "-12", "0.5", "-0.25", "10.0", "1e3", "1E+3", "2.5e-10", "0e0"};
+
+	private static final String[] STRINGS = {"-", "+1", "007", "01.5", ".5", "5.", "1e", "1e+", "1.e3", "--1", "1-", "0x10",
+			"1 ", " 1", "NaN", "Infinity", "1,5", "tru", "true ", "False", "falsey", "nul", "null", "yes"};
+
+	@Test
+	public void typeOfAString() {
+		for (String value : NUMBERS) assertEquals(value, XmlShapeHints.NUMBER, XmlShapeHints.typeOf(value));
+		for (String value : STRINGS) assertEquals(value, XmlShapeHints.STRING, XmlShapeHints.typeOf(value));
+
+		assertEquals(XmlShapeHints.BOOLEAN, XmlShapeHints.typeOf("true"));
+		assertEquals(XmlShapeHints.BOOLEAN, XmlShapeHints.typeOf("false"));
+		assertEquals(XmlShapeHints.EMPTY, XmlShapeHints.typeOf(""));
+	}
+
+	@Test
+	public void typeOfACollectedDataString() throws Exception {
+		String[][] groups = {NUMBERS, STRINGS, {"true", "false", ""}};
+		TextCollector text = new TextCollector();
+
+		for (String[] values : groups) {
+			for (String value : values) {
+				// Collected in pieces of a larger array, without the whitespace around it
+				char[] chars = ("12 " + value + "\n\ttrue").toCharArray();
+				text.append(chars, 2, 1);
+				for (int i = 3; i < value.length() + 5; i++) text.append(chars, i, 1);
+
+				assertEquals(value, value.trim(), text.getText().toString());
+				assertEquals(value, XmlShapeHints.typeOf(value.trim()), XmlShapeHints.typeOf(text.getText()));
+				text.clear();
+			}
+		}
+	}
+
+	@Test
+	public void arrayHint() throws Exception {
+		XmlShapeHints hints = new XmlShapeHints().addArray("/order/items/item", "/order/note");
+
+		check(hints, "<order><items><item>1</item></items></order>", "{\"order\":{\"items\":{\"item\":[\"1\"]}}}");
+		check(hints, "<order><items><item>1</item><item>2</item></items><note/></order>",
+				"{\"order\":{\"items\":{\"item\":[\"1\",\"2\"]},\"note\":[\"\"]}}");
+		check(hints, "<order><items><item id=\"7\"><sku>a</sku></item></items></order>",
+				"{\"order\":{\"items\":{\"item\":[{\"@id\":\"7\",\"sku\":\"a\"}]}}}");
+	}
+
+	@Test
+	public void numberAndBooleanHints() throws Exception {
+		XmlShapeHints hints = new XmlShapeHints()
+				.addNumber("/order/quantity", "/order/price", "/order/code", "/order/@total")
+				.addBoolean("/order/@paid", "/order/gift", "/order/rush", "/order/answer");
+
+		check(hints, "<order paid=\"1\" total=\"-2.5e3\"><quantity>12</quantity><price> 0.5 </price><code>007</code>"
+				+ "<gift>false</gift><rush>0</rush><answer>yes</answer></order>",
+				"{\"order\":{\"@paid\":true,\"@total\":-2.5e3,\"quantity\":12,\"price\":0.5,\"code\":\"007\","
+				+ "\"gift\":false,\"rush\":false,\"answer\":\"yes\"}}");
+	}
+
+	@Test
+	public void textHint() throws Exception {
+		XmlShapeHints hints = new XmlShapeHints().addText("/doc/t");
+
+		// The attributes are skipped, the data of the inner elements is kept without their tags
+		check(hints, "<doc><t a=\"x\">hi<b>z</b>there</t><u>1</u></doc>", "{\"doc\":{\"t\":\"hizthere\",\"u\":\"1\"}}");
+		check(hints, "<doc><t><b c=\"d\"><e>deep</e></b></t></doc>", "{\"doc\":{\"t\":\"deep\"}}");
+		check(hints, "<doc><t a=\"x\"/></doc>", "{\"doc\":{\"t\":\"\"}}");
+	}
+
+	@Test
+	public void loadProperties() throws Exception {
+		String properties = "# Shape of the orders\n"
+				+ "/order/items/item = array\n"
+				+ "/order/items/item/quantity = number\n"
+				+ "/order/@paid = boolean\n"
+				+ "/order/note = text, array\n";
+
+		XmlShapeHints hints = XmlShapeHints.load(new ByteArrayInputStream(properties.getBytes("ISO-8859-1")));
+
+		check(hints, "<order paid=\"true\"><items><item><quantity>3</quantity></item></items><note>a<b>b</b></note></order>",
+				"{\"order\":{\"@paid\":true,\"items\":{\"item\":[{\"quantity\":3}]},\"note\":[\"ab\"]}}");
+
+		String[] invalid = {"/order/items = list\n", "/order/@paid = array\n", "/order/@paid = text\n"};
+
+		for (String each : invalid) {
+			try {
+				XmlShapeHints.load(new ByteArrayInputStream(each.getBytes("ISO-8859-1")));
+				fail(each);
+
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Check the JSON of a document under the hints, converted as a whole and streamed
+	 */
+	private static void check(XmlShapeHints hints, String xml, String expected) throws Exception {
+		XmlToJsonConverter converter = new XmlToJsonConverter();
+		converter.setShapeHints(hints);
+
+		assertEquals(xml, expected, converter.convert(SampleDocuments.stream(xml)));
+
+		StringWriter writer = new StringWriter();
+		converter.convert(SampleDocuments.stream(xml), writer);
+
+		assertEquals(xml, expected, writer.toString());
+	}
+}
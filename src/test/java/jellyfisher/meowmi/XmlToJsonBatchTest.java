@@ -0,0 +1,217 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The batch finds the XML files of a directory, a file or a glob, writes each JSON file at the same relative path, and
+ * deletes the JSON file of a file which fails
+ */
+public class XmlToJsonBatchTest {
+
+	private static final String FIRST = "<a><b>1</b><b>2</b></a>";
+	private static final String SECOND = "<c d=\"x\"><e>text</e></c>";
+	private static final String NESTED = SampleDocuments.records(200, 47);
+	private static final String MALFORMED = "<a><b>1</b><b>2</b>";
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+	private File directory;
+	private File input;
+	private File output;
+
+	@Before
+	public void createFiles() throws Exception {
+		this.directory = File.createTempFile("meowmi", "");
+		assertTrue(this.directory.delete() && this.directory.mkdir());
+
+		this.input = new File(this.directory, "in");
+		this.output = new File(this.directory, "out");
+
+		write("first.xml", FIRST);
+		write("second.xml", SECOND);
+		write("notes.txt", "not XML");
+		write("nested/deep/third.xml", NESTED);
+	}
+
+	@After
+	public void deleteFiles() {
+		delete(this.directory);
+	}
+
+	@Test
+	public void directoryInput() throws Exception {
+		XmlToJsonBatch batch = new XmlToJsonBatch(this.converter, 2);
+		batch.convert(this.input.getPath(), this.output);
+
+		assertEquals(3, batch.getFileCount());
+		assertEquals(0, batch.getFailureCount());
+		assertEquals(FIRST.length() + SECOND.length() + NESTED.length(), batch.getByteCount());
+
+		checkJson("first.json", FIRST);
+		checkJson("second.json", SECOND);
+		checkJson("nested/deep/third.json", NESTED);
+		assertFalse(new File(this.output, "notes.json").exists());
+	}
+
+	@Test
+	public void fileInput() throws Exception {
+		XmlToJsonBatch batch = new XmlToJsonBatch(this.converter, 1);
+		batch.convert(new File(this.input, "nested/deep/third.xml").getPath(), this.output);
+
+		// Relative to the directory of the file
+		assertEquals(1, batch.getFileCount());
+		checkJson("third.json", NESTED);
+		assertEquals(1, this.output.list().length);
+	}
+
+	@Test
+	public void globInput() throws Exception {
+		String base = this.input.getPath().replace(File.separatorChar, '/');
+
+		// "*" stays within the directory
+		checkGlob(base + "/*.xml", "first.xml", "second.xml");
+		checkGlob(base + "/f?rst.xml", "first.xml");
+
+		// "**" matches across directories, "**/" also matches no directory at all
+		checkGlob(base + "/**.xml", "first.xml", "nested/deep/third.xml", "second.xml");
+		checkGlob(base + "/**/third.xml", "nested/deep/third.xml");
+		checkGlob(base + "/nested/**/*.xml", "nested/deep/third.xml");
+		checkGlob(base + "/**/first.xml", "first.xml");
+
+		// The paths of the JSON files are relative to the directory before the first wildcard
+		XmlToJsonBatch batch = new XmlToJsonBatch(this.converter, 2);
+		batch.convert(base + "/nes*/**.xml", this.output);
+
+		assertEquals(1, batch.getFileCount());
+		checkJson("nested/deep/third.json", NESTED);
+	}
+
+	@Test
+	public void missingInput() throws Exception {
+		String[] inputs = {new File(this.input, "missing.xml").getPath(), this.directory.getPath() + "/missing/*.xml"};
+
+		for (String input : inputs) {
+			try {
+				XmlToJsonBatch.findFiles(input, new ArrayList<File>());
+				fail(input);
+
+			} catch (FileNotFoundException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void failedFileIsDeleted() throws Exception {
+		write("nested/broken.xml", MALFORMED);
+
+		for (boolean streaming : new boolean[] {false, true}) {
+			delete(this.output);
+
+			XmlToJsonBatch batch = new XmlToJsonBatch(this.converter, 2);
+			batch.setStreaming(streaming);
+			batch.convert(this.input.getPath(), this.output);
+
+			// The other files are converted anyway
+			assertEquals(4, batch.getFileCount());
+			assertEquals(1, batch.getFailureCount());
+			assertFalse(new File(this.output, "nested/broken.json").exists());
+
+			checkJson("first.json", FIRST);
+			checkJson("second.json", SECOND);
+			checkJson("nested/deep/third.json", NESTED);
+		}
+	}
+
+	@Test
+	public void exitCode() throws Exception {
+		String input = this.input.getPath();
+		String output = this.output.getPath();
+
+		assertEquals(0, XmlToJsonBatch.run(new String[] {input, output}));
+		assertEquals(0, XmlToJsonBatch.run(new String[] {"-stream", "-threads", "3", input, output}));
+		checkJson("nested/deep/third.json", NESTED);
+
+		// A file failed
+		write("broken.xml", MALFORMED);
+		assertEquals(1, XmlToJsonBatch.run(new String[] {"-threads", "2", input, output}));
+
+		// The command line is wrong, or the input isn't found
+		assertEquals(2, XmlToJsonBatch.run(new String[] {input}));
+		assertEquals(2, XmlToJsonBatch.run(new String[] {"-threads", "0", input, output}));
+		assertEquals(2, XmlToJsonBatch.run(new String[] {"-threads", "many", input, output}));
+		assertEquals(2, XmlToJsonBatch.run(new String[] {"-verbose", input, output}));
+		assertEquals(2, XmlToJsonBatch.run(new String[] {new File(this.input, "missing.xml").getPath(), output}));
+	}
+
+	/**
+	 * Check the files found by a glob, relative to the input directory
+	 */
+	private void checkGlob(String glob, String... expected) throws Exception {
+		ArrayList<File> xmlFiles = new ArrayList<File>();
+		File baseDirectory = XmlToJsonBatch.findFiles(glob, xmlFiles);
+
+		ArrayList<String> paths = new ArrayList<String>();
+		for (File xmlFile : xmlFiles) {
+			String path = xmlFile.getAbsolutePath().substring(this.input.getAbsolutePath().length() + 1);
+			paths.add(path.replace(File.separatorChar, '/'));
+		}
+
+		assertEquals(glob, Arrays.asList(expected), paths);
+		assertTrue(glob, xmlFiles.isEmpty() || baseDirectory.isDirectory());
+	}
+
+	/**
+	 * Check that a JSON file of the output directory is the conversion of an XML document
+	 */
+	private void checkJson(String path, String xml) throws Exception {
+		File file = new File(this.output, path);
+		assertTrue(path, file.isFile());
+
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			assertEquals(bytes.length, stream.read(bytes));
+		} finally {
+			stream.close();
+		}
+
+		assertEquals(path, new XmlToJsonConverter().convert(SampleDocuments.stream(xml)), new String(bytes, "UTF-8"));
+	}
+
+	private void write(String path, String text) throws Exception {
+		File file = new File(this.input, path);
+		assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File each : files) delete(each);
+		}
+
+		file.delete();
+	}
+}
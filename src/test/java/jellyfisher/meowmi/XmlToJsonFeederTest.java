@@ -0,0 +1,51 @@
+package jellyfisher.meowmi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * A document fed in pieces gives the same JSON as XmlToJsonConverter.convert()
+ */
+public class XmlToJsonFeederTest {
+
+	private XmlToJsonConverter converter = new XmlToJsonConverter();
+
+	@Test
+	public void feederOutputEqualsConvert() throws Exception {
+		String xml = SampleDocuments.records(2000, 7);
+		String expected = this.converter.convert(SampleDocuments.stream(xml));
+		byte[] bytes = xml.getBytes("UTF-8");
+
+		for (int piece : new int[] {1, 7, 4096, bytes.length}) {
+			XmlToJsonFeeder feeder = this.converter.newFeeder("export/items/record");
+
+			for (int offset = 0; offset < bytes.length; offset += piece) {
+				feeder.feed(bytes, offset, Math.min(piece, bytes.length - offset));
+			}
+
+			assertEquals("Pieces of " + piece + " bytes", expected, feeder.end());
+		}
+	}
+
+	@Test
+	public void directBufferOutputEqualsConvert() throws Exception {
+		for (String xml : SampleDocuments.DOCUMENTS) {
+			byte[] bytes = xml.getBytes("UTF-8");
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+			buffer.put(bytes).flip();
+
+			XmlToJsonFeeder feeder = this.converter.newFeeder();
+			feeder.feed(buffer);
+
+			assertEquals(xml, this.converter.convert(SampleDocuments.stream(xml)), feeder.end());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void recordPathAtTheRootFails() {
+		this.converter.newFeeder("export");
+	}
+}